@@ -0,0 +1,184 @@
+/*
+ * ao-messaging-api - Asynchronous bidirectional messaging over various protocols API.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-messaging-api.
+ *
+ * ao-messaging-api is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-messaging-api is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-messaging-api.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoapps.messaging;
+
+import com.aoapps.lang.io.function.IOSupplier;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Reads and writes whole files with {@link AsynchronousFileChannel}, so no thread blocks on the file I/O.
+ */
+final class AsyncFiles {
+
+  /** Make no instances. */
+  private AsyncFiles() {
+    throw new AssertionError();
+  }
+
+  private static final Set<StandardOpenOption> READ = EnumSet.of(StandardOpenOption.READ);
+
+  private static final Set<StandardOpenOption> WRITE = EnumSet.of(
+      StandardOpenOption.WRITE,
+      StandardOpenOption.CREATE,
+      StandardOpenOption.TRUNCATE_EXISTING
+  );
+
+  /**
+   * Runs blocking work on the given executor, failing the future with any {@link IOException}.
+   */
+  static <T> CompletableFuture<T> supplyAsync(IOSupplier<? extends T> supplier, Executor executor) {
+    return CompletableFuture.supplyAsync(
+        () -> {
+          try {
+            return supplier.get();
+          } catch (IOException e) {
+            throw new CompletionException(e);
+          }
+        },
+        executor
+    );
+  }
+
+  /**
+   * Opens a channel, using the executor for its I/O completions when it is an {@link ExecutorService}, or the
+   * default thread pool otherwise.
+   */
+  private static AsynchronousFileChannel open(Path path, Set<? extends OpenOption> options, Executor executor)
+      throws IOException {
+    return AsynchronousFileChannel.open(
+        path,
+        options,
+        (executor instanceof ExecutorService) ? (ExecutorService) executor : null
+    );
+  }
+
+  /**
+   * Reads a whole file.  The future fails with {@link IOException} when the file is too large for a
+   * {@link ByteArray}.
+   */
+  static CompletableFuture<ByteArray> readAll(Path path, Executor executor) {
+    CompletableFuture<ByteArray> future = new CompletableFuture<>();
+    AsynchronousFileChannel channel;
+    ByteBuffer buffer;
+    try {
+      channel = open(path, READ, executor);
+      try {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+          throw new IOException("File too large for " + ByteArray.class.getSimpleName() + ": " + size);
+        }
+        buffer = ByteBuffer.allocate((int) size);
+      } catch (Throwable t) {
+        channel.close();
+        throw t;
+      }
+    } catch (Throwable t) {
+      future.completeExceptionally(t);
+      return future;
+    }
+    channel.read(buffer, 0, null, new CompletionHandler<Integer, Void>() {
+      @Override
+      public void completed(Integer count, Void attachment) {
+        if (count == -1) {
+          failed(new IOException("File changed size while encoding: " + path), null);
+        } else if (buffer.hasRemaining()) {
+          channel.read(buffer, buffer.position(), null, this);
+        } else {
+          try {
+            channel.close();
+            future.complete(new ByteArray(buffer.array()));
+          } catch (Throwable t) {
+            future.completeExceptionally(t);
+          }
+        }
+      }
+
+      @Override
+      public void failed(Throwable t, Void attachment) {
+        try {
+          channel.close();
+        } catch (Throwable t2) {
+          t.addSuppressed(t2);
+        }
+        future.completeExceptionally(t);
+      }
+    });
+    return future;
+  }
+
+  /**
+   * Writes the remaining bytes of a buffer as a whole file, replacing any existing content.
+   * The position of the buffer is not changed.
+   */
+  static CompletableFuture<Void> writeAll(Path path, ByteBuffer content, Executor executor) {
+    CompletableFuture<Void> future = new CompletableFuture<>();
+    ByteBuffer buffer = content.duplicate();
+    AsynchronousFileChannel channel;
+    try {
+      channel = open(path, WRITE, executor);
+    } catch (Throwable t) {
+      future.completeExceptionally(t);
+      return future;
+    }
+    final int start = buffer.position();
+    channel.write(buffer, 0, null, new CompletionHandler<Integer, Void>() {
+      @Override
+      public void completed(Integer count, Void attachment) {
+        if (buffer.hasRemaining()) {
+          channel.write(buffer, buffer.position() - start, null, this);
+        } else {
+          try {
+            channel.close();
+            future.complete(null);
+          } catch (Throwable t) {
+            future.completeExceptionally(t);
+          }
+        }
+      }
+
+      @Override
+      public void failed(Throwable t, Void attachment) {
+        try {
+          channel.close();
+        } catch (Throwable t2) {
+          t.addSuppressed(t2);
+        }
+        future.completeExceptionally(t);
+      }
+    });
+    return future;
+  }
+}
@@ -0,0 +1,252 @@
+/*
+ * ao-messaging-api - Asynchronous bidirectional messaging over various protocols API.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-messaging-api.
+ *
+ * ao-messaging-api is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-messaging-api is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-messaging-api.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoapps.messaging;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * The Base-64 encoding used by the string encodings of binary messages.
+ *
+ * <p>This is the standard alphabet of <a href="https://datatracker.ietf.org/doc/html/rfc4648#section-4">RFC 4648</a>,
+ * with padding and without line separators, as implemented by {@link Base64}.  Encoded bytes are always ASCII, so they
+ * are copied directly into Latin-1 strings without an intermediate {@code char[]}.</p>
+ *
+ * <p>Decoding does not require the final padding, but is otherwise as strict as encoding.</p>
+ */
+final class Base64Codec {
+
+  /** Make no instances. */
+  private Base64Codec() {
+    throw new AssertionError();
+  }
+
+  private static final Base64.Encoder ENCODER = Base64.getEncoder();
+
+  private static final Base64.Decoder DECODER = Base64.getDecoder();
+
+  /**
+   * The number of bytes encoded per chunk while streaming.  This is a multiple of three, so only the final chunk
+   * is padded.
+   */
+  private static final int CHUNK_SIZE = 3 * 1024;
+
+  /**
+   * The number of characters decoded per chunk while streaming.  This is a multiple of four, so only the final chunk
+   * may be padded.
+   */
+  private static final int ENCODED_CHUNK_SIZE = CHUNK_SIZE / 3 * 4;
+
+  private static final byte PAD = '=';
+
+  /**
+   * Gets the exact number of characters that encode the given number of bytes, including padding.
+   */
+  static long getEncodedLength(long size) {
+    return ((size + 2) / 3) * 4;
+  }
+
+  /**
+   * Base-64 encodes the bytes.
+   */
+  static String encodeToString(ByteArray bytes) {
+    if (bytes.size == 0) {
+      return "";
+    }
+    ByteBuffer encoded = ENCODER.encode(ByteBuffer.wrap(bytes.array, bytes.offset, bytes.size));
+    assert encoded.arrayOffset() == 0 && encoded.remaining() == encoded.array().length;
+    return new String(encoded.array(), StandardCharsets.ISO_8859_1);
+  }
+
+  /**
+   * Base-64 encodes the bytes in chunks, appending each chunk.
+   */
+  static void encode(ByteArray bytes, Appendable out) throws IOException {
+    if (bytes.size == 0) {
+      return;
+    }
+    Chunker chunker = new Chunker(out, bytes.size);
+    for (int pos = 0; pos < bytes.size; pos += CHUNK_SIZE) {
+      int len = Math.min(CHUNK_SIZE, bytes.size - pos);
+      System.arraycopy(bytes.array, bytes.offset + pos, chunker.src, 0, len);
+      chunker.encode(len);
+    }
+  }
+
+  /**
+   * Base-64 encodes exactly {@code size} bytes from the given stream in chunks, appending each chunk.
+   *
+   * @throws  EOFException  when the input ends before {@code size} bytes are encoded
+   */
+  static void encode(InputStream in, long size, Appendable out) throws IOException {
+    if (size == 0) {
+      return;
+    }
+    Chunker chunker = new Chunker(out, size);
+    for (long pos = 0; pos < size; pos += CHUNK_SIZE) {
+      int len = (int) Math.min(CHUNK_SIZE, size - pos);
+      IoHelper.readFully(in, chunker.src, 0, len);
+      chunker.encode(len);
+    }
+  }
+
+  /**
+   * Encodes chunks through buffers that are reused for all but the final, partial chunk.
+   */
+  private static final class Chunker {
+
+    private final Appendable out;
+    private final byte[] src;
+    private final byte[] dst;
+    private final char[] chars;
+
+    private Chunker(Appendable out, long size) {
+      this.out = out;
+      int chunkSize = (int) Math.min(CHUNK_SIZE, size);
+      src = new byte[chunkSize];
+      int encodedChunkSize = (int) getEncodedLength(chunkSize);
+      dst = new byte[encodedChunkSize];
+      chars = new char[encodedChunkSize];
+    }
+
+    /**
+     * Encodes and appends the first {@code len} bytes of {@link #src}.
+     */
+    private void encode(int len) throws IOException {
+      int encodedLen = ENCODER.encode(len == src.length ? src : Arrays.copyOf(src, len), dst);
+      for (int i = 0; i < encodedLen; i++) {
+        chars[i] = (char) dst[i];
+      }
+      if (out instanceof Writer) {
+        ((Writer) out).write(chars, 0, encodedLen);
+      } else if (out instanceof StringBuilder) {
+        ((StringBuilder) out).append(chars, 0, encodedLen);
+      } else {
+        out.append(CharBuffer.wrap(chars, 0, encodedLen));
+      }
+    }
+  }
+
+  /**
+   * Gets a stream that Base-64 encodes everything written to it, appending the encoding.
+   * Closing the stream appends the final, possibly padded, characters, but does not close the output.
+   */
+  static OutputStream wrap(Appendable out) {
+    return ENCODER.wrap(new AppendableOutputStream(out));
+  }
+
+  /**
+   * Appends each Base-64 encoded byte as a character.
+   */
+  private static final class AppendableOutputStream extends OutputStream {
+
+    private final Appendable out;
+    private char[] chars;
+
+    private AppendableOutputStream(Appendable out) {
+      this.out = out;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.append((char) (b & 0xff));
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (chars == null || chars.length < len) {
+        chars = new char[Math.max(len, ENCODED_CHUNK_SIZE)];
+      }
+      for (int i = 0; i < len; i++) {
+        chars[i] = (char) (b[off + i] & 0xff);
+      }
+      if (out instanceof Writer) {
+        ((Writer) out).write(chars, 0, len);
+      } else if (out instanceof StringBuilder) {
+        ((StringBuilder) out).append(chars, 0, len);
+      } else {
+        out.append(CharBuffer.wrap(chars, 0, len));
+      }
+    }
+  }
+
+  /**
+   * Base-64 decodes a range of characters.
+   *
+   * @throws  IllegalArgumentException  when the range is not a valid Base-64 encoding
+   */
+  static byte[] decode(CharSequence encoded, int start, int end) {
+    return DECODER.decode(toAscii(encoded, start, end));
+  }
+
+  /**
+   * Base-64 decodes a range of characters in chunks, writing each chunk.
+   *
+   * @return  the number of bytes written
+   *
+   * @throws  IllegalArgumentException  when the range is not a valid Base-64 encoding
+   */
+  static long decode(CharSequence encoded, int start, int end, OutputStream out) throws IOException {
+    long written = 0;
+    byte[] dst = null;
+    for (int pos = start; pos < end; pos += ENCODED_CHUNK_SIZE) {
+      int chunkEnd = Math.min(pos + ENCODED_CHUNK_SIZE, end);
+      byte[] src = toAscii(encoded, pos, chunkEnd);
+      if (chunkEnd < end && src[src.length - 1] == PAD) {
+        throw new IllegalArgumentException("Input byte array has incorrect ending byte at " + (chunkEnd - 1 - start));
+      }
+      if (dst == null) {
+        dst = new byte[CHUNK_SIZE];
+      }
+      int len = DECODER.decode(src, dst);
+      out.write(dst, 0, len);
+      written += len;
+    }
+    return written;
+  }
+
+  /**
+   * Gets the bytes of a range of characters, rejecting any non-ASCII character.
+   * The standard {@link StandardCharsets#US_ASCII} encoding would silently replace them instead.
+   */
+  private static byte[] toAscii(CharSequence encoded, int start, int end) {
+    byte[] bytes = new byte[end - start];
+    for (int i = start; i < end; i++) {
+      char ch = encoded.charAt(i);
+      if (ch > 0x7f) {
+        throw new IllegalArgumentException("Illegal base64 character " + Integer.toHexString(ch));
+      }
+      bytes[i - start] = (byte) ch;
+    }
+    return bytes;
+  }
+}
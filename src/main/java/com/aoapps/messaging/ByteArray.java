@@ -1,6 +1,6 @@
 /*
  * ao-messaging-api - Asynchronous bidirectional messaging over various protocols API.
- * Copyright (C) 2014, 2015, 2016, 2020, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2014, 2015, 2016, 2020, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -23,17 +23,32 @@
 
 package com.aoapps.messaging;
 
-import com.aoapps.collections.AoArrays;
 import com.aoapps.lang.EmptyArrays;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 /**
- * Encapsulates a byte[] and the number of bytes used.
+ * Encapsulates a byte[], the offset of the first byte used, and the number of bytes used.
+ *
+ * <p>A byte array may be a view into a larger array, such as the messages decoded by
+ * {@link MultiMessage#decode(com.aoapps.messaging.ByteArray, com.aoapps.lang.io.function.IOSupplier)}.
+ * The bytes used are always <code>array[offset]</code> through <code>array[offset + size - 1]</code>.</p>
+ *
+ * <p><strong>Incompatible change in 4.0.0:</strong> before {@link #offset} was added, the bytes used were always
+ * <code>array[0]</code> through <code>array[size - 1]</code>.  Code written for that layout still compiles, but reads
+ * the wrong bytes from any view with a non-zero offset.  All direct access to {@link #array} must now start at
+ * {@link #offset}, or use {@link #toByteBuffer()}.</p>
  */
 public class ByteArray {
 
   public static final ByteArray EMPTY_BYTE_ARRAY = new ByteArray(EmptyArrays.EMPTY_BYTE_ARRAY);
 
   public final byte[] array;
+
+  /**
+   * The index of the first byte used in {@link #array}, which may be non-zero.
+   */
+  public final int offset;
   public final int size;
 
   /**
@@ -47,14 +62,53 @@ public class ByteArray {
    * Creates a new byte array wrapper.
    */
   public ByteArray(byte[] array, int size) {
+    this(array, 0, size);
+  }
+
+  /**
+   * Creates a new byte array wrapper that is a view into a range of the given array.
+   * The array is not copied.
+   */
+  public ByteArray(byte[] array, int offset, int size) {
     this.array = array;
+    this.offset = offset;
     this.size = size;
-    assert size <= array.length;
+    assert offset >= 0 && size >= 0 && offset + size <= array.length;
+  }
+
+  /**
+   * Adds a reference to this byte array, which must be balanced by an additional call to {@link #release()}.
+   * This allows a byte array from a {@link ByteArrayPool} to be shared, such as when written to multiple transports.
+   *
+   * @return  this byte array
+   *
+   * @throws  IllegalStateException  when already released
+   */
+  public ByteArray retain() throws IllegalStateException {
+    return this;
+  }
+
+  /**
+   * Releases a reference to this byte array.  When this byte array was encoded using a {@link ByteArrayPool},
+   * its array is returned to the pool once all references are released, and must not be accessed afterward.
+   * Byte arrays not from a pool are unaffected.
+   *
+   * @throws  IllegalStateException  when already released
+   */
+  public void release() throws IllegalStateException {
+    // Nothing to do
+  }
+
+  /**
+   * Gets a {@link ByteBuffer} view of the bytes used.  The array is not copied.
+   */
+  public ByteBuffer toByteBuffer() {
+    return ByteBuffer.wrap(array, offset, size).slice();
   }
 
   /**
    * Two ByteArray are equal when they have the same size and each byte
-   * within the first <code>size</code> bytes are equal.
+   * within the <code>size</code> bytes starting at their offsets are equal.
    */
   @Override
   public boolean equals(Object o) {
@@ -68,14 +122,31 @@ public class ByteArray {
     if (size != other.size) {
       return false;
     }
-    return AoArrays.equals(array, other.array, 0, size);
+    return Arrays.equals(array, offset, offset + size, other.array, other.offset, other.offset + size);
   }
 
   /**
-   * The hashCode is created from the first <code>size</code> bytes.
+   * The hashCode is created from the <code>size</code> bytes starting at <code>offset</code>.
+   * This is the same as {@link Arrays#hashCode(byte[])} of the bytes used.
    */
   @Override
   public int hashCode() {
-    return AoArrays.hashCode(array, 0, size);
+    int hashCode = 1;
+    for (int i = offset, end = offset + size; i < end; i++) {
+      hashCode = 31 * hashCode + array[i];
+    }
+    return hashCode;
+  }
+
+  /**
+   * Computes the same hash code as {@link #hashCode()} from the remaining bytes of a buffer.
+   * The position of the buffer is not changed.
+   */
+  static int hashCode(ByteBuffer buffer) {
+    int hashCode = 1;
+    for (int i = buffer.position(), limit = buffer.limit(); i < limit; i++) {
+      hashCode = 31 * hashCode + buffer.get(i);
+    }
+    return hashCode;
   }
 }
@@ -23,7 +23,10 @@
 
 package com.aoapps.messaging;
 
-import com.aoapps.hodgepodge.util.Base64Coder;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
 
 /**
  * A message that is a byte[].
@@ -36,14 +39,36 @@ public class ByteArrayMessage implements Message {
    * Base-64 decodes the message.
    */
   public static ByteArrayMessage decode(String encodedMessage) {
-    if (encodedMessage.isEmpty()) {
+    return decode(encodedMessage, 0, encodedMessage.length());
+  }
+
+  /**
+   * Base-64 decodes the message from a range of characters.
+   */
+  static ByteArrayMessage decode(CharSequence encodedMessage, int start, int end) {
+    if (start == end) {
       return EMPTY_BYTE_ARRAY_MESSAGE;
     }
 
-    return new ByteArrayMessage(Base64Coder.decode(encodedMessage));
+    return new ByteArrayMessage(Base64Codec.decode(encodedMessage, start, end));
   }
 
-  private final ByteArray message;
+  /**
+   * The bytes of an on-heap message, or {@code null} until copied to the heap for a buffer-backed message.
+   */
+  private volatile ByteArray message;
+
+  /**
+   * The bytes of a buffer-backed message, or {@code null} for an on-heap message.
+   */
+  private final ByteBuffer buffer;
+
+  /**
+   * The Base-64 encoding, cached on first use so that a message sent to many recipients is only encoded once.
+   * It is softly referenced so that it may be reclaimed under memory pressure, in which case it is simply encoded
+   * again.
+   */
+  private volatile SoftReference<String> encodedString;
 
   /**
    * Creates a new {@link ByteArrayMessage}.
@@ -57,15 +82,32 @@ public class ByteArrayMessage implements Message {
    */
   public ByteArrayMessage(ByteArray message) {
     this.message = message;
+    this.buffer = null;
+  }
+
+  /**
+   * Creates a new {@link ByteArrayMessage} from the remaining bytes of a buffer, which may be off-heap.
+   * The content is not copied, and the position and limit of the buffer are not changed.
+   * The content of the buffer must not be modified afterward.
+   */
+  public ByteArrayMessage(ByteBuffer message) {
+    if (message.hasArray()) {
+      this.message = new ByteArray(message.array(), message.arrayOffset() + message.position(), message.remaining());
+      this.buffer = null;
+    } else {
+      this.message = null;
+      this.buffer = message.slice();
+    }
   }
 
   @Override
   public String toString() {
-    return "ByteArrayMessage(" + message.size + ")";
+    return "ByteArrayMessage(" + getSize() + ")";
   }
 
   @Override
   public boolean equals(Object o) {
+    o = SharedMessage.unwrap(o);
     if (this == o) {
       return true;
     }
@@ -73,12 +115,16 @@ public class ByteArrayMessage implements Message {
       return false;
     }
     ByteArrayMessage other = (ByteArrayMessage) o;
-    return message.equals(other.message);
+    if (buffer == null && other.buffer == null) {
+      return message.equals(other.message);
+    } else {
+      return encodeAsByteBuffer().equals(other.encodeAsByteBuffer());
+    }
   }
 
   @Override
   public int hashCode() {
-    return message.hashCode();
+    return (buffer == null) ? message.hashCode() : ByteArray.hashCode(buffer);
   }
 
   @Override
@@ -87,20 +133,70 @@ public class ByteArrayMessage implements Message {
   }
 
   /**
-   * Base-64 encodes the message.
+   * Base-64 encodes the message.  The encoding is cached.
    */
   @Override
   public String encodeAsString() {
-    if (message.size == 0) {
-      return "";
+    String str = getCachedString();
+    if (str == null) {
+      // Concurrent callers may each encode, but all results are equal
+      str = Base64Codec.encodeToString(getMessage());
+      encodedString = new SoftReference<>(str);
     }
+    return str;
+  }
 
-    return new String(Base64Coder.encode(message.array, message.size));
+  /**
+   * Appends the cached encoding when available, otherwise Base-64 encodes the message in chunks without caching.
+   */
+  @Override
+  public void appendTo(Appendable out) throws IOException {
+    String str = getCachedString();
+    if (str != null) {
+      out.append(str);
+    } else {
+      Base64Codec.encode(getMessage(), out);
+    }
+  }
+
+  /**
+   * Gets the cached Base-64 encoding, if available.
+   */
+  private String getCachedString() {
+    SoftReference<String> ref = encodedString;
+    return (ref == null) ? null : ref.get();
+  }
+
+  @Override
+  public long getEncodedStringLength() {
+    return Base64Codec.getEncodedLength(getSize());
   }
 
   @Override
   public ByteArray encodeAsByteArray() {
-    return message;
+    return getMessage();
+  }
+
+  @Override
+  public long getEncodedByteArrayLength() {
+    return getSize();
+  }
+
+  /**
+   * Gets the message without copying, including off-heap messages.
+   */
+  @Override
+  public ByteBuffer encodeAsByteBuffer() {
+    return (buffer == null) ? message.toByteBuffer() : buffer.duplicate();
+  }
+
+  @Override
+  public void writeTo(OutputStream out) throws IOException {
+    if (buffer == null) {
+      out.write(message.array, message.offset, message.size);
+    } else {
+      IoHelper.write(out, buffer);
+    }
   }
 
   @Override
@@ -108,7 +204,26 @@ public class ByteArrayMessage implements Message {
     // Nothing to do
   }
 
+  /**
+   * Gets the number of bytes in the message.
+   */
+  public int getSize() {
+    return (buffer == null) ? message.size : buffer.remaining();
+  }
+
+  /**
+   * Gets the message.  An off-heap message is copied to the heap on first call.
+   *
+   * @see  #encodeAsByteBuffer()
+   */
   public ByteArray getMessage() {
-    return message;
+    ByteArray bytes = message;
+    if (bytes == null) {
+      byte[] array = new byte[buffer.remaining()];
+      buffer.duplicate().get(array);
+      bytes = new ByteArray(array);
+      message = bytes;
+    }
+    return bytes;
   }
 }
@@ -0,0 +1,178 @@
+/*
+ * ao-messaging-api - Asynchronous bidirectional messaging over various protocols API.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-messaging-api.
+ *
+ * ao-messaging-api is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-messaging-api is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-messaging-api.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoapps.messaging;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An opt-in pool of byte arrays used by encoders, such as
+ * {@link Message#encodeAsByteArray(com.aoapps.messaging.ByteArrayPool)}.
+ *
+ * <p>Arrays are pooled in power-of-two size classes.  The pool is striped by thread to reduce contention,
+ * and arrays may be released on a different thread than acquired.  Arrays larger than the maximum pooled size
+ * are allocated but never pooled, and the total size of pooled arrays is bounded.</p>
+ *
+ * <p>Encoders that use a pool return a {@link ByteArray} that must be {@link ByteArray#release() released}
+ * once it is no longer needed, such as after being written to the transport.</p>
+ */
+public class ByteArrayPool {
+
+  /**
+   * The default maximum size of a pooled array.
+   */
+  public static final int DEFAULT_MAX_ARRAY_SIZE = 16 << 20; // 16 MiB
+
+  /**
+   * The default maximum total size of all pooled arrays.
+   */
+  public static final long DEFAULT_MAX_POOL_SIZE = 64L << 20; // 64 MiB
+
+  /**
+   * The smallest size class.
+   */
+  private static final int MIN_ARRAY_SIZE = 1 << 10; // 1 KiB
+
+  private static final int MIN_SIZE_CLASS = Integer.numberOfTrailingZeros(MIN_ARRAY_SIZE);
+
+  private final int maxArraySize;
+  private final long maxPoolSize;
+  private final AtomicLong poolSize = new AtomicLong();
+
+  /**
+   * The arrays of one size class within one stripe.
+   */
+  private static final class SizeClass {
+    private final ArrayDeque<byte[]> arrays = new ArrayDeque<>();
+  }
+
+  private final SizeClass[][] stripes;
+  private final int stripeMask;
+
+  /**
+   * Creates a new pool with {@link #DEFAULT_MAX_ARRAY_SIZE} and {@link #DEFAULT_MAX_POOL_SIZE}.
+   */
+  public ByteArrayPool() {
+    this(DEFAULT_MAX_ARRAY_SIZE, DEFAULT_MAX_POOL_SIZE);
+  }
+
+  /**
+   * Creates a new pool.
+   *
+   * @param  maxArraySize  The maximum size of a pooled array, rounded up to a power of two
+   * @param  maxPoolSize   The maximum total size of all arrays held by the pool
+   */
+  public ByteArrayPool(int maxArraySize, long maxPoolSize) {
+    if (maxArraySize < MIN_ARRAY_SIZE || maxArraySize > (1 << 30)) {
+      throw new IllegalArgumentException("maxArraySize out of range: " + maxArraySize);
+    }
+    if (maxPoolSize < 0) {
+      throw new IllegalArgumentException("maxPoolSize < 0: " + maxPoolSize);
+    }
+    this.maxArraySize = roundUp(maxArraySize);
+    this.maxPoolSize = maxPoolSize;
+    int numStripes = roundUp(Runtime.getRuntime().availableProcessors());
+    int numSizeClasses = sizeClass(this.maxArraySize) + 1;
+    stripes = new SizeClass[numStripes][numSizeClasses];
+    for (SizeClass[] stripe : stripes) {
+      for (int i = 0; i < numSizeClasses; i++) {
+        stripe[i] = new SizeClass();
+      }
+    }
+    stripeMask = numStripes - 1;
+  }
+
+  /**
+   * Rounds up to a power of two.
+   */
+  private static int roundUp(int size) {
+    return (size <= 1) ? 1 : Integer.highestOneBit(size - 1) << 1;
+  }
+
+  /**
+   * Gets the size class for a power of two size no smaller than {@link #MIN_ARRAY_SIZE}.
+   */
+  private static int sizeClass(int size) {
+    return Integer.numberOfTrailingZeros(size) - MIN_SIZE_CLASS;
+  }
+
+  private SizeClass getSizeClass(int size) {
+    return stripes[(int) Thread.currentThread().getId() & stripeMask][sizeClass(size)];
+  }
+
+  /**
+   * Gets the maximum size of a pooled array.
+   */
+  public int getMaxArraySize() {
+    return maxArraySize;
+  }
+
+  /**
+   * Gets the total size of arrays currently held by the pool.
+   */
+  public long getPoolSize() {
+    return poolSize.get();
+  }
+
+  /**
+   * Acquires an array of at least the given size.  The array may contain data from a previous use.
+   * Arrays larger than {@link #getMaxArraySize()} are allocated exactly and will not be pooled on release.
+   */
+  public byte[] acquire(int minSize) {
+    if (minSize > maxArraySize) {
+      return new byte[minSize];
+    }
+    int size = Math.max(MIN_ARRAY_SIZE, roundUp(minSize));
+    SizeClass sizeClass = getSizeClass(size);
+    byte[] array;
+    synchronized (sizeClass) {
+      array = sizeClass.arrays.pollFirst();
+    }
+    if (array == null) {
+      array = new byte[size];
+    } else {
+      poolSize.addAndGet(-size);
+    }
+    return array;
+  }
+
+  /**
+   * Releases an array back to the pool.  Arrays not acquired from a pool, or beyond the maximum size of the
+   * pool, are discarded.  The array must not be used after release.
+   */
+  public void release(byte[] array) {
+    final int size = array.length;
+    if (size >= MIN_ARRAY_SIZE && size <= maxArraySize && Integer.bitCount(size) == 1) {
+      long newPoolSize = poolSize.addAndGet(size);
+      if (newPoolSize <= maxPoolSize) {
+        SizeClass sizeClass = getSizeClass(size);
+        synchronized (sizeClass) {
+          sizeClass.arrays.addFirst(array);
+        }
+      } else {
+        poolSize.addAndGet(-size);
+      }
+    }
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * ao-messaging-api - Asynchronous bidirectional messaging over various protocols API.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-messaging-api.
+ *
+ * ao-messaging-api is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-messaging-api is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-messaging-api.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoapps.messaging;
+
+import java.time.Duration;
+
+/**
+ * How a socket coalesces outbound messages into batches, where each batch is sent as a single frame, such as one
+ * {@link MultiMessage} or one long-poll response.  Waiting briefly for more messages trades latency for fewer,
+ * larger writes when producers send one message at a time.
+ *
+ * <p>A batch is sent once its oldest message has waited the maximum delay, once the maximum messages or bytes are
+ * queued, or on {@link Socket#flush()}.</p>
+ *
+ * @see  SocketContext#getCoalescingPolicy()
+ * @see  Socket#getCoalescingPolicy()
+ * @see  OutboundQueue#pollBatch(long)
+ */
+public final class CoalescingPolicy {
+
+  /**
+   * No coalescing: whatever is queued is sent without waiting, which is the behavior of sockets that do not coalesce.
+   */
+  public static final CoalescingPolicy NONE = new CoalescingPolicy(Duration.ZERO, Integer.MAX_VALUE, Long.MAX_VALUE);
+
+  private final Duration maxDelay;
+  private final long maxDelayNanos;
+  private final int maxMessages;
+  private final long maxBytes;
+
+  /**
+   * Creates a new coalescing policy.
+   *
+   * @param  maxDelay     the maximum time a message waits for more messages to be queued
+   * @param  maxMessages  the maximum number of messages in a batch, which is sent without further delay once reached
+   * @param  maxBytes     the maximum bytes of a batch, which is sent without further delay once reached.  A single
+   *                      message larger than this is sent as a batch by itself.
+   */
+  public CoalescingPolicy(Duration maxDelay, int maxMessages, long maxBytes) {
+    if (maxDelay.isNegative()) {
+      throw new IllegalArgumentException("maxDelay < 0: " + maxDelay);
+    }
+    if (maxMessages < 1) {
+      throw new IllegalArgumentException("maxMessages < 1: " + maxMessages);
+    }
+    if (maxBytes < 1) {
+      throw new IllegalArgumentException("maxBytes < 1: " + maxBytes);
+    }
+    this.maxDelay = maxDelay;
+    long nanos;
+    try {
+      nanos = maxDelay.toNanos();
+    } catch (ArithmeticException e) {
+      nanos = Long.MAX_VALUE;
+    }
+    this.maxDelayNanos = nanos;
+    this.maxMessages = maxMessages;
+    this.maxBytes = maxBytes;
+  }
+
+  @Override
+  public String toString() {
+    return "CoalescingPolicy(maxDelay = " + maxDelay + ", maxMessages = " + maxMessages + ", maxBytes = " + maxBytes
+        + ")";
+  }
+
+  /**
+   * Gets the maximum time a message waits for more messages to be queued.
+   */
+  public Duration getMaxDelay() {
+    return maxDelay;
+  }
+
+  long getMaxDelayNanos() {
+    return maxDelayNanos;
+  }
+
+  /**
+   * Gets the maximum number of messages in a batch.
+   */
+  public int getMaxMessages() {
+    return maxMessages;
+  }
+
+  /**
+   * Gets the maximum bytes of a batch.
+   */
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+}
@@ -0,0 +1,953 @@
+/*
+ * ao-messaging-api - Asynchronous bidirectional messaging over various protocols API.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-messaging-api.
+ *
+ * ao-messaging-api is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-messaging-api is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-messaging-api.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoapps.messaging;
+
+import com.aoapps.lang.io.AoByteArrayOutputStream;
+import com.aoapps.lang.io.function.IOSupplier;
+import com.aoapps.tempfiles.TempFileContext;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.Cleaner;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A message that wraps any other message, compressing its binary encoding with {@link Deflater}.
+ * Messages smaller than a threshold are stored without compression, as are messages that do not become smaller
+ * when compressed.
+ *
+ * <p>The binary encoding is a method byte, the type byte of the wrapped message, then either the binary encoding of the
+ * wrapped message when stored, or the length of the binary encoding of the wrapped message followed by its
+ * <a href="https://www.rfc-editor.org/rfc/rfc1950">zlib</a> compression when deflated.</p>
+ *
+ * <p>The string encoding is a method character, the type character of the wrapped message, then either the string
+ * encoding of the wrapped message when stored, or the Base-64 encoding of the deflated portion of the binary encoding
+ * when deflated.</p>
+ *
+ * <p>A {@link FileMessage} is compressed in a stream directly from its file, and is decompressed in a stream directly
+ * into a temporary file, so it is never held in memory.  Since this requires compressing it without knowing the result,
+ * a file at or above the threshold is always deflated.  Once its encoded length is needed, such as for the framing of a
+ * {@link MultiMessage}, it is compressed once into a temporary file that is deleted when this message is closed or
+ * becomes unreachable.  The temporary file is created by the {@link TempFileContext temporary file context} supplier
+ * given when created or decoded.  Without one, such as for a message created only to be sent, it is created in the
+ * default temporary directory instead, since there is no context to create it in.</p>
+ *
+ * <p>When decoding, an uncompressed length beyond what {@link Deflater} can produce from the compressed length is
+ * rejected before anything is allocated, memory grows only as data is actually inflated, and the message is rejected
+ * when it inflates to more or less than its uncompressed length.</p>
+ */
+public class CompressedMessage implements Message {
+
+  /**
+   * The default size, in bytes of the binary encoding of the wrapped message, below which it is not compressed.
+   * Small messages rarely compress enough to be worth the time and the framing.
+   */
+  public static final int DEFAULT_THRESHOLD = 1024;
+
+  private static final byte METHOD_STORED = 0;
+  private static final byte METHOD_DEFLATED = 1;
+
+  private static final char METHOD_STORED_CHAR = '0';
+  private static final char METHOD_DEFLATED_CHAR = '1';
+
+  /**
+   * The number of bytes of the method and type.
+   */
+  private static final int HEADER_SIZE = 2;
+
+  /**
+   * The number of bytes of the method, type, and uncompressed length of a deflated message.
+   */
+  private static final int DEFLATED_HEADER_SIZE = HEADER_SIZE + Long.BYTES;
+
+  /**
+   * The greatest ratio of uncompressed to compressed length that {@link Deflater} can achieve, which is 258 bytes per
+   * shortest match of two bits.  An uncompressed length beyond this ratio can only come from a forged or corrupt
+   * message, and is rejected before anything is allocated.
+   */
+  static final int MAX_DEFLATE_RATIO = 1032;
+
+  /**
+   * Deletes the spool of a message that is not closed once it becomes unreachable.
+   */
+  private static final Cleaner cleaner = Cleaner.create();
+
+  /**
+   * The initial capacity when inflating into memory, which grows as the data actually arrives.
+   */
+  private static final int MAX_INITIAL_CAPACITY = IoHelper.BUFFER_SIZE;
+
+  /**
+   * Decodes the message from a range of characters, using the provided
+   * {@link TempFileContext temporary file context} supplier as-needed.
+   */
+  static CompressedMessage decode(
+      CharSequence encodedMessage,
+      int start,
+      int end,
+      IOSupplier<TempFileContext> tempFileContextSupplier
+  ) throws IOException {
+    if (end - start < HEADER_SIZE) {
+      throw new IOException("Compressed message too short: " + (end - start));
+    }
+    char method = encodedMessage.charAt(start);
+    MessageType type = MessageType.getFromTypeChar(encodedMessage.charAt(start + 1));
+    switch (method) {
+      case METHOD_STORED_CHAR:
+        return decoded(
+            type.decode(encodedMessage, start + HEADER_SIZE, end, tempFileContextSupplier),
+            tempFileContextSupplier
+        );
+      case METHOD_DEFLATED_CHAR:
+        byte[] deflated = Base64Codec.decode(encodedMessage, start + HEADER_SIZE, end);
+        return inflate(new ByteArrayInputStream(deflated), deflated.length, type, tempFileContextSupplier);
+      default:
+        throw new IOException("Invalid compression method: " + method);
+    }
+  }
+
+  /**
+   * Decodes the message, possibly using temporary files with {@link File#deleteOnExit()} as-needed.
+   *
+   * @deprecated  Please use {@link TempFileContext} supplier since {@link File#deleteOnExit()} is prone to memory leaks
+   *              in long-running applications.
+   */
+  @Deprecated(forRemoval = true)
+  static CompressedMessage decode(String encodedMessage) throws IOException {
+    if (encodedMessage.length() < HEADER_SIZE) {
+      throw new IOException("Compressed message too short: " + encodedMessage.length());
+    }
+    char method = encodedMessage.charAt(0);
+    MessageType type = MessageType.getFromTypeChar(encodedMessage.charAt(1));
+    switch (method) {
+      case METHOD_STORED_CHAR:
+        return new CompressedMessage(type.decode(encodedMessage.substring(HEADER_SIZE)));
+      case METHOD_DEFLATED_CHAR:
+        byte[] deflated = Base64Codec.decode(encodedMessage, HEADER_SIZE, encodedMessage.length());
+        return new CompressedMessage(type.decode(inflate(new ByteArrayInputStream(deflated), deflated.length)));
+      default:
+        throw new IOException("Invalid compression method: " + method);
+    }
+  }
+
+  /**
+   * Decodes the message using the provided {@link TempFileContext temporary file context} supplier as-needed.
+   * A stored message may be backed by the given bytes without copying, so they must not be modified afterward.
+   */
+  static CompressedMessage decode(ByteArray encodedMessage, IOSupplier<TempFileContext> tempFileContextSupplier)
+      throws IOException {
+    if (encodedMessage.size < HEADER_SIZE) {
+      throw new IOException("Compressed message too short: " + encodedMessage.size);
+    }
+    byte method = encodedMessage.array[encodedMessage.offset];
+    MessageType type = MessageType.getFromTypeByte(encodedMessage.array[encodedMessage.offset + 1]);
+    switch (method) {
+      case METHOD_STORED:
+        return decoded(type.decode(stored(encodedMessage), tempFileContextSupplier), tempFileContextSupplier);
+      case METHOD_DEFLATED:
+        return inflate(
+            new ByteArrayInputStream(
+                encodedMessage.array,
+                encodedMessage.offset + HEADER_SIZE,
+                encodedMessage.size - HEADER_SIZE
+            ),
+            encodedMessage.size - HEADER_SIZE,
+            type,
+            tempFileContextSupplier
+        );
+      default:
+        throw new IOException("Invalid compression method: " + method);
+    }
+  }
+
+  /**
+   * Decodes the message, possibly using temporary files with {@link File#deleteOnExit()} as-needed.
+   *
+   * @deprecated  Please use {@link TempFileContext} supplier since {@link File#deleteOnExit()} is prone to memory leaks
+   *              in long-running applications.
+   */
+  @Deprecated(forRemoval = true)
+  static CompressedMessage decode(ByteArray encodedMessage) throws IOException {
+    if (encodedMessage.size < HEADER_SIZE) {
+      throw new IOException("Compressed message too short: " + encodedMessage.size);
+    }
+    byte method = encodedMessage.array[encodedMessage.offset];
+    MessageType type = MessageType.getFromTypeByte(encodedMessage.array[encodedMessage.offset + 1]);
+    switch (method) {
+      case METHOD_STORED:
+        return new CompressedMessage(type.decode(stored(encodedMessage)));
+      case METHOD_DEFLATED:
+        return new CompressedMessage(type.decode(inflate(
+            new ByteArrayInputStream(
+                encodedMessage.array,
+                encodedMessage.offset + HEADER_SIZE,
+                encodedMessage.size - HEADER_SIZE
+            ),
+            encodedMessage.size - HEADER_SIZE
+        )));
+      default:
+        throw new IOException("Invalid compression method: " + method);
+    }
+  }
+
+  /**
+   * Gets the binary encoding of the wrapped message of a stored message.
+   */
+  private static ByteArray stored(ByteArray encodedMessage) {
+    return new ByteArray(encodedMessage.array, encodedMessage.offset + HEADER_SIZE, encodedMessage.size - HEADER_SIZE);
+  }
+
+  /**
+   * Decodes the message by reading exactly {@code size} bytes from the given stream, using the provided
+   * {@link TempFileContext temporary file context} supplier as-needed.  A deflated {@link FileMessage} is decompressed
+   * in a stream directly into its temporary file.
+   */
+  static CompressedMessage decode(InputStream in, int size, IOSupplier<TempFileContext> tempFileContextSupplier)
+      throws IOException {
+    if (size < HEADER_SIZE) {
+      throw new IOException("Compressed message too short: " + size);
+    }
+    byte[] header = new byte[HEADER_SIZE];
+    IoHelper.readFully(in, header, 0, HEADER_SIZE);
+    byte method = header[0];
+    MessageType type = MessageType.getFromTypeByte(header[1]);
+    switch (method) {
+      case METHOD_STORED:
+        return decoded(type.decode(in, size - HEADER_SIZE, tempFileContextSupplier), tempFileContextSupplier);
+      case METHOD_DEFLATED:
+        return inflate(in, size - HEADER_SIZE, type, tempFileContextSupplier);
+      default:
+        throw new IOException("Invalid compression method: " + method);
+    }
+  }
+
+  /**
+   * Decompresses the deflated portion of the binary encoding, which is the uncompressed length followed by the
+   * compressed bytes, reading exactly {@code size} bytes from the given stream.
+   */
+  private static CompressedMessage inflate(
+      InputStream in,
+      int size,
+      MessageType type,
+      IOSupplier<TempFileContext> tempFileContextSupplier
+  ) throws IOException {
+    if (type == MessageType.FILE) {
+      IoHelper.LimitedInputStream limited = new IoHelper.LimitedInputStream(in, size);
+      long length = readLength(limited, size);
+      File file = MessageType.createTempFile(tempFileContextSupplier);
+      Inflater inflater = new Inflater();
+      try {
+        InflaterInputStream inflaterIn = new InflaterInputStream(limited, inflater, IoHelper.BUFFER_SIZE);
+        FileMessage message = FileMessage.decode(inflaterIn, length, file);
+        try {
+          checkEnd(inflaterIn, inflater, limited);
+          return decoded(message, tempFileContextSupplier);
+        } catch (Throwable t) {
+          message.close();
+          throw t;
+        }
+      } finally {
+        inflater.end();
+      }
+    } else {
+      ByteArray inflated = inflate(in, size);
+      return decoded(type.decode(inflated, tempFileContextSupplier), tempFileContextSupplier);
+    }
+  }
+
+  /**
+   * Decompresses the deflated portion of the binary encoding into memory, reading exactly {@code size} bytes from the
+   * given stream.  The array grows as the data is inflated, so a forged uncompressed length does not allocate more
+   * than the compressed data actually produces.
+   */
+  private static ByteArray inflate(InputStream in, int size) throws IOException {
+    IoHelper.LimitedInputStream limited = new IoHelper.LimitedInputStream(in, size);
+    long length = readLength(limited, size);
+    if (length > Integer.MAX_VALUE) {
+      throw new IOException("Compressed message too large for " + ByteArray.class.getSimpleName() + ": " + length);
+    }
+    Inflater inflater = new Inflater();
+    try {
+      InflaterInputStream inflaterIn = new InflaterInputStream(limited, inflater, IoHelper.BUFFER_SIZE);
+      byte[] inflated = new byte[(int) Math.min(length, MAX_INITIAL_CAPACITY)];
+      int pos = 0;
+      while (pos < length) {
+        if (pos == inflated.length) {
+          inflated = Arrays.copyOf(inflated, (int) Math.min(length, 2L * inflated.length));
+        }
+        int count = inflaterIn.read(inflated, pos, inflated.length - pos);
+        if (count == -1) {
+          throw new EOFException("Compressed message ended before its uncompressed length: " + pos + " < " + length);
+        }
+        pos += count;
+      }
+      checkEnd(inflaterIn, inflater, limited);
+      return new ByteArray(inflated);
+    } finally {
+      inflater.end();
+    }
+  }
+
+  /**
+   * Reads the uncompressed length, which must be possible for the {@code size} bytes of the deflated portion.
+   *
+   * @throws  IOException  when the length is negative or beyond the {@link #MAX_DEFLATE_RATIO maximum ratio}
+   */
+  private static long readLength(InputStream in, int size) throws IOException {
+    byte[] bytes = new byte[Long.BYTES];
+    IoHelper.readFully(in, bytes, 0, Long.BYTES);
+    long length = ByteBuffer.wrap(bytes).getLong();
+    if (length < 0) {
+      throw new IOException("Invalid uncompressed length: " + length);
+    }
+    long maxLength = (long) (size - Long.BYTES) * MAX_DEFLATE_RATIO;
+    if (length > maxLength) {
+      throw new IOException("Uncompressed length exceeds the maximum for its compressed length: " + length + " > "
+          + maxLength);
+    }
+    return length;
+  }
+
+  /**
+   * Verifies the compressed stream ends exactly where both the uncompressed length and the encoded message end.
+   */
+  private static void checkEnd(InputStream inflaterIn, Inflater inflater, InputStream limited) throws IOException {
+    if (
+        inflaterIn.read() != -1
+            || !inflater.finished()
+            || inflater.getRemaining() != 0
+            || limited.read() != -1
+    ) {
+      throw new IOException("Compressed message does not match its uncompressed length");
+    }
+  }
+
+  /**
+   * The deflated portion of a deflated file, spooled to a temporary file, along with the file attributes it was
+   * compressed for.
+   */
+  private static final class DeflatedFile {
+
+    private final long length;
+    private final long lastModified;
+    private final File spool;
+    private final long deflatedLength;
+    private final Cleaner.Cleanable cleanable;
+
+    /**
+     * The number of writes copying from the spool, guarded by the owning message.
+     */
+    private int readers;
+
+    /**
+     * Set once no longer the spool of the owning message, guarded by the owning message.  The spool is deleted once
+     * there are no {@link #readers}.
+     */
+    private boolean retired;
+
+    private DeflatedFile(CompressedMessage owner, long length, long lastModified, File spool, long deflatedLength) {
+      this.length = length;
+      this.lastModified = lastModified;
+      this.spool = spool;
+      this.deflatedLength = deflatedLength;
+      this.cleanable = cleaner.register(owner, spool::delete);
+    }
+
+    private boolean isCurrent(long length, long lastModified) {
+      return this.length == length && this.lastModified == lastModified;
+    }
+  }
+
+  private final Message message;
+  private final int threshold;
+  private final int level;
+  private final IOSupplier<TempFileContext> tempFileContextSupplier;
+
+  /**
+   * The binary encoding of a message other than a {@link FileMessage}, cached on first use.
+   * It is softly referenced so that it may be reclaimed under memory pressure, in which case it is simply compressed
+   * again.
+   */
+  private volatile SoftReference<ByteArray> encodedByteArray;
+
+  /**
+   * The compressed form of a deflated {@link FileMessage}, spooled once its length is needed, since the length is only
+   * known by compressing it.  It is then streamed from the spool instead of compressing again.
+   */
+  private DeflatedFile deflatedFile;
+
+  private boolean closed;
+
+  /**
+   * Creates a new {@link CompressedMessage} with the {@link #DEFAULT_THRESHOLD default threshold} and
+   * {@link Deflater#DEFAULT_COMPRESSION default compression level}.
+   */
+  public CompressedMessage(Message message) {
+    this(message, DEFAULT_THRESHOLD);
+  }
+
+  /**
+   * Creates a new {@link CompressedMessage} with the {@link Deflater#DEFAULT_COMPRESSION default compression level}.
+   *
+   * @param  threshold  the size, in bytes of the binary encoding of the wrapped message, below which it is not
+   *                    compressed
+   */
+  public CompressedMessage(Message message, int threshold) {
+    this(message, threshold, Deflater.DEFAULT_COMPRESSION);
+  }
+
+  /**
+   * Creates a new {@link CompressedMessage}.
+   *
+   * @param  threshold  the size, in bytes of the binary encoding of the wrapped message, below which it is not
+   *                    compressed
+   * @param  level      the compression level, from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION},
+   *                    or {@link Deflater#DEFAULT_COMPRESSION}
+   */
+  public CompressedMessage(Message message, int threshold, int level) {
+    this(message, threshold, level, null);
+  }
+
+  /**
+   * Creates a new {@link CompressedMessage}.
+   *
+   * @param  threshold                the size, in bytes of the binary encoding of the wrapped message, below which it
+   *                                  is not compressed
+   * @param  level                    the compression level, from {@link Deflater#BEST_SPEED} to
+   *                                  {@link Deflater#BEST_COMPRESSION}, or {@link Deflater#DEFAULT_COMPRESSION}
+   * @param  tempFileContextSupplier  creates the temporary file a {@link FileMessage} is compressed into, or
+   *                                  {@code null} to create it in the default temporary directory
+   */
+  public CompressedMessage(
+      Message message,
+      int threshold,
+      int level,
+      IOSupplier<TempFileContext> tempFileContextSupplier
+  ) {
+    if (message == null) {
+      throw new IllegalArgumentException("message == null");
+    }
+    if (threshold < 0) {
+      throw new IllegalArgumentException("threshold < 0: " + threshold);
+    }
+    if (
+        (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION)
+            && level != Deflater.DEFAULT_COMPRESSION
+    ) {
+      throw new IllegalArgumentException("Invalid compression level: " + level);
+    }
+    this.message = message;
+    this.threshold = threshold;
+    this.level = level;
+    this.tempFileContextSupplier = tempFileContextSupplier;
+  }
+
+  /**
+   * Creates a decoded message, which compresses into the temporary file context it was decoded with.
+   */
+  private static CompressedMessage decoded(Message message, IOSupplier<TempFileContext> tempFileContextSupplier) {
+    return new CompressedMessage(message, DEFAULT_THRESHOLD, Deflater.DEFAULT_COMPRESSION, tempFileContextSupplier);
+  }
+
+  @Override
+  public String toString() {
+    return "CompressedMessage(" + message + ")";
+  }
+
+  /**
+   * Compressed messages are equal when their wrapped messages are equal, regardless of how they are compressed.
+   */
+  @Override
+  public boolean equals(Object o) {
+    o = SharedMessage.unwrap(o);
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof CompressedMessage)) {
+      return false;
+    }
+    return message.equals(((CompressedMessage) o).message);
+  }
+
+  @Override
+  public int hashCode() {
+    return message.hashCode();
+  }
+
+  @Override
+  public MessageType getMessageType() {
+    return MessageType.COMPRESSED;
+  }
+
+  @Override
+  public String encodeAsString() throws IOException {
+    StringBuilder sb = new StringBuilder(MultiMessage.toArrayLength(getEncodedStringLength()));
+    appendTo(sb);
+    return sb.toString();
+  }
+
+  /**
+   * Streams the Base-64 encoding of a deflated {@link FileMessage} directly from its file.
+   */
+  @Override
+  public void appendTo(Appendable out) throws IOException {
+    append(out);
+  }
+
+  /**
+   * Appends exactly {@code length} characters.  This is used when the length has already been written, such as in a
+   * {@link MultiMessage} frame.
+   *
+   * @throws  IOException  when the message does not encode to exactly {@code length} characters
+   */
+  void appendTo(Appendable out, long length) throws IOException {
+    if (append(out) != length) {
+      throw new IOException("Message changed size while encoding: " + message);
+    }
+  }
+
+  /**
+   * Appends the string encoding.
+   *
+   * @return  the number of characters appended
+   */
+  private long append(Appendable out) throws IOException {
+    if (message instanceof FileMessage) {
+      FileMessage fileMessage = (FileMessage) message;
+      long length = fileMessage.getMessage().length();
+      if (length < threshold) {
+        out.append(METHOD_STORED_CHAR).append(MessageType.FILE.getTypeChar());
+        fileMessage.appendTo(out, length);
+        return HEADER_SIZE + Base64Codec.getEncodedLength(length);
+      } else {
+        out.append(METHOD_DEFLATED_CHAR).append(MessageType.FILE.getTypeChar());
+        long deflatedLength;
+        try (OutputStream base64 = Base64Codec.wrap(out)) {
+          deflatedLength = writeDeflatedFile(base64, fileMessage, length);
+        }
+        return HEADER_SIZE + Base64Codec.getEncodedLength(deflatedLength);
+      }
+    } else {
+      ByteArray encoded = getEncoded();
+      if (encoded.array[encoded.offset] == METHOD_STORED) {
+        long length = message.getEncodedStringLength();
+        out.append(METHOD_STORED_CHAR).append(message.getMessageType().getTypeChar());
+        message.appendTo(out);
+        return HEADER_SIZE + length;
+      } else {
+        ByteArray deflated = deflated(encoded);
+        out.append(METHOD_DEFLATED_CHAR).append(message.getMessageType().getTypeChar());
+        Base64Codec.encode(deflated, out);
+        return HEADER_SIZE + Base64Codec.getEncodedLength(deflated.size);
+      }
+    }
+  }
+
+  @Override
+  public long getEncodedStringLength() throws IOException {
+    if (message instanceof FileMessage) {
+      FileMessage fileMessage = (FileMessage) message;
+      long length = fileMessage.getMessage().length();
+      if (length < threshold) {
+        return HEADER_SIZE + Base64Codec.getEncodedLength(length);
+      }
+    } else {
+      ByteArray encoded = getEncoded();
+      if (encoded.array[encoded.offset] == METHOD_STORED) {
+        return HEADER_SIZE + message.getEncodedStringLength();
+      }
+    }
+    return HEADER_SIZE + Base64Codec.getEncodedLength(getEncodedByteArrayLength() - HEADER_SIZE);
+  }
+
+  /**
+   * Compresses the message when at or above the threshold.  The encoding of a message other than a
+   * {@link FileMessage} is cached.
+   */
+  @Override
+  public ByteArray encodeAsByteArray() throws IOException {
+    if (message instanceof FileMessage) {
+      AoByteArrayOutputStream bout = new AoByteArrayOutputStream(
+          MultiMessage.toArrayLength(getEncodedByteArrayLength())
+      );
+      try {
+        writeTo(bout);
+      } finally {
+        bout.close();
+      }
+      return new ByteArray(bout.getInternalByteArray(), bout.size());
+    } else {
+      return getEncoded();
+    }
+  }
+
+  /**
+   * Gets the exact length without encoding, except a deflated {@link FileMessage} is compressed once to find its
+   * length.  The compressed form is spooled to a temporary file, which is then used for encoding until the file
+   * changes or this message is {@link #close() closed}.
+   */
+  @Override
+  public long getEncodedByteArrayLength() throws IOException {
+    if (message instanceof FileMessage) {
+      FileMessage fileMessage = (FileMessage) message;
+      long length = fileMessage.getMessage().length();
+      if (length < threshold) {
+        return HEADER_SIZE + length;
+      }
+      DeflatedFile spooled = spool(fileMessage, length);
+      return HEADER_SIZE + (
+          (spooled != null)
+              ? spooled.deflatedLength
+              : deflateFile(OutputStream.nullOutputStream(), fileMessage, length)
+      );
+    } else {
+      return getEncoded().size;
+    }
+  }
+
+  /**
+   * Gets an upper bound of {@link #getEncodedByteArrayLength()} without compressing.  This is exact when stored below
+   * the threshold or already compressed.  Otherwise, a message is stored when it does not compress, and a file is
+   * bounded by the worst-case expansion of DEFLATE.
+   *
+   * @see  OutboundQueue#getEncodedByteArrayLengthBound(com.aoapps.messaging.Message)
+   */
+  long getEncodedByteArrayLengthBound() throws IOException {
+    if (message instanceof FileMessage) {
+      File file = ((FileMessage) message).getMessage();
+      long length = file.length();
+      if (length < threshold) {
+        return HEADER_SIZE + length;
+      }
+      DeflatedFile spooled = getSpooled(file, length);
+      return (spooled != null)
+          ? (HEADER_SIZE + spooled.deflatedLength)
+          : (DEFLATED_HEADER_SIZE + getDeflateBound(length));
+    } else {
+      SoftReference<ByteArray> ref = encodedByteArray;
+      ByteArray encoded = (ref == null) ? null : ref.get();
+      return (encoded != null)
+          ? encoded.size
+          : (HEADER_SIZE + OutboundQueue.getEncodedByteArrayLengthBound(message));
+    }
+  }
+
+  /**
+   * Gets the maximum length compressed by DEFLATE, including its zlib wrapper, which is the {@code deflateBound} of
+   * zlib.
+   */
+  private static long getDeflateBound(long length) {
+    return length + (length >> 12) + (length >> 14) + (length >> 25) + 13 + 6;
+  }
+
+  /**
+   * Streams a {@link FileMessage} directly from its file, compressing as it goes.
+   */
+  @Override
+  public void writeTo(OutputStream out) throws IOException {
+    write(out);
+  }
+
+  /**
+   * Streams exactly {@code length} bytes.  This is used when the length has already been written, such as in a
+   * {@link MultiMessage} frame.
+   *
+   * @throws  IOException  when the message does not encode to exactly {@code length} bytes
+   */
+  void writeTo(OutputStream out, long length) throws IOException {
+    if (write(out) != length) {
+      throw new IOException("Message changed size while encoding: " + message);
+    }
+  }
+
+  /**
+   * Streams the binary encoding.
+   *
+   * @return  the number of bytes written
+   */
+  private long write(OutputStream out) throws IOException {
+    if (message instanceof FileMessage) {
+      FileMessage fileMessage = (FileMessage) message;
+      long length = fileMessage.getMessage().length();
+      if (length < threshold) {
+        out.write(METHOD_STORED);
+        out.write(MessageType.FILE.getTypeByte());
+        fileMessage.writeTo(out, length);
+        return HEADER_SIZE + length;
+      } else {
+        out.write(METHOD_DEFLATED);
+        out.write(MessageType.FILE.getTypeByte());
+        return HEADER_SIZE + writeDeflatedFile(out, fileMessage, length);
+      }
+    } else {
+      ByteArray encoded = getEncoded();
+      out.write(encoded.array, encoded.offset, encoded.size);
+      return encoded.size;
+    }
+  }
+
+  /**
+   * Writes the deflated portion of a deflated file, copying from the spool when current, or compressing directly.
+   * The spool is not deleted while being copied, even when this message is closed concurrently.
+   *
+   * @return  the number of bytes written
+   */
+  private long writeDeflatedFile(OutputStream out, FileMessage fileMessage, long length) throws IOException {
+    DeflatedFile spooled = acquireSpooled(fileMessage.getMessage(), length);
+    if (spooled == null) {
+      return deflateFile(out, fileMessage, length);
+    }
+    try {
+      return copySpool(spooled, out);
+    } finally {
+      releaseSpooled(spooled);
+    }
+  }
+
+  /**
+   * Writes the uncompressed length then compresses exactly {@code length} bytes of the file.
+   *
+   * @return  the number of bytes written
+   */
+  private long deflateFile(OutputStream out, FileMessage fileMessage, long length) throws IOException {
+    out.write(ByteBuffer.allocate(Long.BYTES).putLong(length).array());
+    IoHelper.CountingOutputStream counter = new IoHelper.CountingOutputStream(out);
+    Deflater deflater = new Deflater(level);
+    try {
+      DeflaterOutputStream deflaterOut = new DeflaterOutputStream(counter, deflater, IoHelper.BUFFER_SIZE);
+      fileMessage.writeTo(deflaterOut, length);
+      deflaterOut.finish();
+    } finally {
+      deflater.end();
+    }
+    return Long.BYTES + counter.getCount();
+  }
+
+  /**
+   * Gets the spooled compressed form of the file, compressing it into a new spool when there is none or the file has
+   * changed.
+   *
+   * @return  the spool or {@code null} when closed, in which case nothing more is spooled
+   */
+  private synchronized DeflatedFile spool(FileMessage fileMessage, long length) throws IOException {
+    if (closed) {
+      return null;
+    }
+    long lastModified = fileMessage.getMessage().lastModified();
+    DeflatedFile spooled = deflatedFile;
+    if (spooled != null) {
+      if (spooled.isCurrent(length, lastModified)) {
+        return spooled;
+      }
+      deflatedFile = null;
+      if (retire(spooled)) {
+        spooled.cleanable.clean();
+      }
+    }
+    File spool = (tempFileContextSupplier != null)
+        ? MessageType.createTempFile(tempFileContextSupplier)
+        : Files.createTempFile("CompressedMessage_", null).toFile();
+    boolean success = false;
+    try {
+      long deflatedLength;
+      try (OutputStream out = new BufferedOutputStream(new FileOutputStream(spool), IoHelper.BUFFER_SIZE)) {
+        deflatedLength = deflateFile(out, fileMessage, length);
+      }
+      spooled = new DeflatedFile(this, length, lastModified, spool, deflatedLength);
+      deflatedFile = spooled;
+      success = true;
+      return spooled;
+    } finally {
+      if (!success) {
+        Files.deleteIfExists(spool.toPath());
+      }
+    }
+  }
+
+  /**
+   * Gets the spooled compressed form of the file when it has already been spooled and the file has not changed since.
+   *
+   * @return  the spool or {@code null} to compress directly
+   */
+  private synchronized DeflatedFile getSpooled(File file, long length) {
+    DeflatedFile spooled = deflatedFile;
+    return (spooled != null && spooled.isCurrent(length, file.lastModified())) ? spooled : null;
+  }
+
+  /**
+   * Gets the spooled compressed form of the file, like {@link #getSpooled(java.io.File, long)}, keeping it until
+   * {@linkplain #releaseSpooled(com.aoapps.messaging.CompressedMessage.DeflatedFile) released}.
+   */
+  private synchronized DeflatedFile acquireSpooled(File file, long length) {
+    DeflatedFile spooled = getSpooled(file, length);
+    if (spooled != null) {
+      spooled.readers++;
+    }
+    return spooled;
+  }
+
+  /**
+   * Releases a spool acquired by {@link #acquireSpooled(java.io.File, long)}, deleting it when retired meanwhile.
+   */
+  private void releaseSpooled(DeflatedFile spooled) {
+    boolean clean;
+    synchronized (this) {
+      clean = --spooled.readers == 0 && spooled.retired;
+    }
+    if (clean) {
+      spooled.cleanable.clean();
+    }
+  }
+
+  /**
+   * Retires a spool that is no longer used by this message.
+   *
+   * @return  {@code true} when it should be deleted now, or {@code false} when deleted once its last reader releases
+   *          it
+   */
+  private boolean retire(DeflatedFile spooled) {
+    assert Thread.holdsLock(this);
+    spooled.retired = true;
+    return spooled.readers == 0;
+  }
+
+  /**
+   * Copies the deflated portion from the spool.
+   *
+   * @return  the number of bytes written
+   */
+  private static long copySpool(DeflatedFile spooled, OutputStream out) throws IOException {
+    long copied = Files.copy(spooled.spool.toPath(), out);
+    if (copied != spooled.deflatedLength) {
+      throw new IOException("Spool changed size: " + copied + " != " + spooled.deflatedLength);
+    }
+    return copied;
+  }
+
+  /**
+   * Gets the deflated portion of a deflated binary encoding.
+   */
+  private static ByteArray deflated(ByteArray encoded) {
+    return new ByteArray(encoded.array, encoded.offset + HEADER_SIZE, encoded.size - HEADER_SIZE);
+  }
+
+  /**
+   * Gets the binary encoding of a message other than a {@link FileMessage}, compressing on first use.
+   */
+  private ByteArray getEncoded() throws IOException {
+    SoftReference<ByteArray> ref = encodedByteArray;
+    ByteArray encoded = (ref == null) ? null : ref.get();
+    if (encoded == null) {
+      // Concurrent callers may each encode, but all results are equal
+      encoded = encode();
+      encodedByteArray = new SoftReference<>(encoded);
+    }
+    return encoded;
+  }
+
+  private ByteArray encode() throws IOException {
+    ByteArray child = message.encodeAsByteArray();
+    byte typeByte = message.getMessageType().getTypeByte();
+    if (child.size >= threshold) {
+      AoByteArrayOutputStream bout = new AoByteArrayOutputStream(HEADER_SIZE + child.size);
+      try {
+        bout.write(METHOD_DEFLATED);
+        bout.write(typeByte);
+        bout.write(ByteBuffer.allocate(Long.BYTES).putLong(child.size).array());
+        Deflater deflater = new Deflater(level);
+        try {
+          DeflaterOutputStream deflaterOut = new DeflaterOutputStream(bout, deflater, IoHelper.BUFFER_SIZE);
+          deflaterOut.write(child.array, child.offset, child.size);
+          deflaterOut.finish();
+        } finally {
+          deflater.end();
+        }
+      } finally {
+        bout.close();
+      }
+      if (bout.size() < HEADER_SIZE + child.size) {
+        return new ByteArray(bout.getInternalByteArray(), bout.size());
+      }
+      // Did not compress, store instead
+    }
+    byte[] stored = new byte[HEADER_SIZE + child.size];
+    stored[0] = METHOD_STORED;
+    stored[1] = typeByte;
+    System.arraycopy(child.array, child.offset, stored, HEADER_SIZE, child.size);
+    return new ByteArray(stored);
+  }
+
+  /**
+   * Deletes the spooled compressed form of a {@link FileMessage}, if any, then closes the wrapped message.  A spool
+   * being copied by a concurrent write is deleted once the write completes.
+   */
+  @Override
+  public void close() throws IOException {
+    DeflatedFile spooled;
+    boolean clean;
+    synchronized (this) {
+      closed = true;
+      spooled = deflatedFile;
+      deflatedFile = null;
+      clean = spooled != null && retire(spooled);
+    }
+    if (clean) {
+      spooled.cleanable.clean();
+    }
+    message.close();
+  }
+
+  /**
+   * Gets the wrapped message.
+   */
+  public Message getMessage() {
+    return message;
+  }
+
+  /**
+   * Gets the size, in bytes of the binary encoding of the wrapped message, below which it is not compressed.
+   */
+  public int getThreshold() {
+    return threshold;
+  }
+
+  /**
+   * Gets the compression level.
+   */
+  public int getLevel() {
+    return level;
+  }
+}
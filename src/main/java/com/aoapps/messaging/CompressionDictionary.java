@@ -0,0 +1,168 @@
+/*
+ * ao-messaging-api - Asynchronous bidirectional messaging over various protocols API.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-messaging-api.
+ *
+ * ao-messaging-api is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-messaging-api is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-messaging-api.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoapps.messaging;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A versioned, preset deflate dictionary shared by both ends of a connection.  Small messages with nearly identical
+ * structure compress poorly on their own, since there is nothing yet to refer back to.  Priming the compressor with
+ * representative content lets even the first message refer back to the common parts.
+ *
+ * <p>Both ends must have the exact same dictionary for a given version.  Each end offers the versions it has through
+ * {@link SocketContext#getCompressionDictionaries()}, and the connection uses the highest version both ends have, as
+ * selected by {@link #negotiate(java.util.Collection, java.util.Collection)}.</p>
+ *
+ * <p>A socket implementation compresses between {@link Socket#sendMessages(java.util.Collection)} and its transport
+ * with a {@link DictionaryCompressor}, and decompresses before decoding with a {@link DictionaryDecompressor}.</p>
+ */
+public final class CompressionDictionary {
+
+  /**
+   * The maximum number of bytes used from a dictionary, which is the size of the deflate window.
+   */
+  public static final int MAX_SIZE = 32 * 1024;
+
+  /**
+   * Builds a dictionary from a sample of representative messages, such as those recently sent.
+   * The binary encodings of the samples are concatenated, keeping the last {@link #MAX_SIZE} bytes, since deflate
+   * most cheaply refers to content nearest the end of its dictionary.  The most common content should be last.
+   */
+  public static CompressionDictionary build(int version, Iterable<? extends Message> samples) throws IOException {
+    byte[] buffer = new byte[MAX_SIZE];
+    int size = 0;
+    for (Message sample : samples) {
+      ByteArray encoded = sample.encodeAsByteArray();
+      if (encoded.size >= MAX_SIZE) {
+        System.arraycopy(encoded.array, encoded.offset + encoded.size - MAX_SIZE, buffer, 0, MAX_SIZE);
+        size = MAX_SIZE;
+      } else {
+        int keep = Math.min(size, MAX_SIZE - encoded.size);
+        System.arraycopy(buffer, size - keep, buffer, 0, keep);
+        System.arraycopy(encoded.array, encoded.offset, buffer, keep, encoded.size);
+        size = keep + encoded.size;
+      }
+    }
+    return new CompressionDictionary(version, Arrays.copyOf(buffer, size));
+  }
+
+  /**
+   * Selects the dictionary to use for a connection: the highest version both ends have.
+   *
+   * @param  supported       the dictionaries of this end
+   * @param  remoteVersions  the dictionary versions offered by the remote end
+   *
+   * @return  the highest version in common or {@code null} when there is none and messages are sent without a
+   *          dictionary
+   */
+  public static CompressionDictionary negotiate(
+      Collection<? extends CompressionDictionary> supported,
+      Collection<Integer> remoteVersions
+  ) {
+    CompressionDictionary selected = null;
+    for (CompressionDictionary dictionary : supported) {
+      if (
+          (selected == null || dictionary.version > selected.version)
+              && remoteVersions.contains(dictionary.version)
+      ) {
+        selected = dictionary;
+      }
+    }
+    return selected;
+  }
+
+  private final int version;
+  private final byte[] dictionary;
+
+  /**
+   * Creates a new dictionary.  Only the last {@link #MAX_SIZE} bytes are used.
+   *
+   * @param  version     the version identifying this exact content, which must be positive
+   * @param  dictionary  the content, which is copied
+   */
+  public CompressionDictionary(int version, byte[] dictionary) {
+    if (version <= 0) {
+      throw new IllegalArgumentException("version <= 0: " + version);
+    }
+    this.version = version;
+    this.dictionary = (dictionary.length > MAX_SIZE)
+        ? Arrays.copyOfRange(dictionary, dictionary.length - MAX_SIZE, dictionary.length)
+        : dictionary.clone();
+  }
+
+  @Override
+  public String toString() {
+    return "CompressionDictionary(" + version + ", " + dictionary.length + ")";
+  }
+
+  /**
+   * Gets the version identifying this exact content.
+   */
+  public int getVersion() {
+    return version;
+  }
+
+  /**
+   * Gets a copy of the content.
+   */
+  public byte[] getDictionary() {
+    return dictionary.clone();
+  }
+
+  void setDictionary(Deflater deflater) {
+    deflater.setDictionary(dictionary);
+  }
+
+  void setDictionary(Inflater inflater) {
+    inflater.setDictionary(dictionary);
+  }
+
+  /**
+   * Creates a new compressor for one direction of one connection.
+   *
+   * @param  rollingWindow  when {@code true}, each message may also refer back to the messages before it, which
+   *                        compresses best but requires every compressed message be decompressed exactly once and
+   *                        in order.  When {@code false}, each message is compressed only with the dictionary.
+   *
+   * @see  #newDecompressor(boolean)
+   */
+  public DictionaryCompressor newCompressor(boolean rollingWindow) {
+    return new DictionaryCompressor(this, rollingWindow);
+  }
+
+  /**
+   * Creates a new decompressor for one direction of one connection.
+   *
+   * @param  rollingWindow  must match the compressor
+   *
+   * @see  #newCompressor(boolean)
+   */
+  public DictionaryDecompressor newDecompressor(boolean rollingWindow) {
+    return new DictionaryDecompressor(this, rollingWindow);
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * ao-messaging-api - Asynchronous bidirectional messaging over various protocols API.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-messaging-api.
+ *
+ * ao-messaging-api is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-messaging-api is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-messaging-api.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoapps.messaging;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses the encoded messages of one direction of one connection with a {@link CompressionDictionary}.
+ * Each compressed frame is the dictionary version, as a varint, followed by raw deflate data ending in a sync flush,
+ * with the final empty stored block (<code>00 00 ff ff</code>) removed since it is always the same.
+ *
+ * <p>Calls are synchronized, since with a rolling window the order of frames matters.</p>
+ *
+ * @see  CompressionDictionary#newCompressor(boolean)
+ * @see  DictionaryDecompressor
+ */
+public final class DictionaryCompressor implements Closeable {
+
+  /**
+   * The empty stored block that ends each sync flush.
+   */
+  static final byte[] SYNC_FLUSH_TAIL = {0, 0, (byte) 0xff, (byte) 0xff};
+
+  private final CompressionDictionary dictionary;
+  private final boolean rollingWindow;
+  private final Deflater deflater;
+
+  private boolean started;
+  private boolean closed;
+
+  DictionaryCompressor(CompressionDictionary dictionary, boolean rollingWindow) {
+    this.dictionary = dictionary;
+    this.rollingWindow = rollingWindow;
+    this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+  }
+
+  /**
+   * Gets the dictionary used by this compressor.
+   */
+  public CompressionDictionary getDictionary() {
+    return dictionary;
+  }
+
+  /**
+   * Compresses one frame of encoded messages, such as the binary encoding of a {@link MultiMessage}.
+   *
+   * @throws  IllegalStateException  when closed
+   */
+  public synchronized ByteArray compress(ByteArray encoded) throws IllegalStateException {
+    if (closed) {
+      throw new IllegalStateException("Closed");
+    }
+    if (!rollingWindow || !started) {
+      deflater.reset();
+      dictionary.setDictionary(deflater);
+      started = true;
+    }
+    deflater.setInput(encoded.array, encoded.offset, encoded.size);
+    // Small messages are the point, so start small and grow as-needed
+    byte[] buffer = new byte[WireFormat.MAX_FRAMING_LENGTH + Math.max(64, encoded.size / 2)];
+    final int versionLength = WireFormat.putVarint(buffer, 0, dictionary.getVersion());
+    int size = versionLength;
+    while (true) {
+      size += deflater.deflate(buffer, size, buffer.length - size, Deflater.SYNC_FLUSH);
+      if (size < buffer.length) {
+        break;
+      }
+      buffer = Arrays.copyOf(buffer, buffer.length * 2);
+    }
+    if (size == versionLength) {
+      // Nothing to flush: the header of an empty stored block, which the tail completes
+      buffer[size++] = 0;
+      return new ByteArray(buffer, size);
+    }
+    assert size - versionLength > SYNC_FLUSH_TAIL.length
+        && Arrays.equals(buffer, size - SYNC_FLUSH_TAIL.length, size, SYNC_FLUSH_TAIL, 0, SYNC_FLUSH_TAIL.length);
+    return new ByteArray(buffer, size - SYNC_FLUSH_TAIL.length);
+  }
+
+  @Override
+  public synchronized void close() {
+    closed = true;
+    deflater.end();
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * ao-messaging-api - Asynchronous bidirectional messaging over various protocols API.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-messaging-api.
+ *
+ * ao-messaging-api is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-messaging-api is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-messaging-api.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoapps.messaging;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decompresses the frames of one direction of one connection, as compressed by a {@link DictionaryCompressor}.
+ *
+ * <p>Calls are synchronized, since with a rolling window the order of frames matters.</p>
+ *
+ * @see  CompressionDictionary#newDecompressor(boolean)
+ */
+public final class DictionaryDecompressor implements Closeable {
+
+  private final CompressionDictionary dictionary;
+  private final boolean rollingWindow;
+  private final Inflater inflater;
+
+  private boolean started;
+  private boolean closed;
+  private boolean failed;
+
+  DictionaryDecompressor(CompressionDictionary dictionary, boolean rollingWindow) {
+    this.dictionary = dictionary;
+    this.rollingWindow = rollingWindow;
+    this.inflater = new Inflater(true);
+  }
+
+  /**
+   * Gets the dictionary used by this decompressor.
+   */
+  public CompressionDictionary getDictionary() {
+    return dictionary;
+  }
+
+  /**
+   * Decompresses one frame.
+   *
+   * @param  maxSize  the maximum number of decompressed bytes accepted, which protects against frames that
+   *                  decompress to an excessive size
+   *
+   * @throws  IOException  when the frame was compressed with a different dictionary version, is not valid, or
+   *                       decompresses to more than {@code maxSize} bytes.  With a rolling window, no further frames
+   *                       may be decompressed.
+   *
+   * @throws  IllegalStateException  when closed
+   */
+  public synchronized ByteArray decompress(ByteArray compressed, int maxSize)
+      throws IOException, IllegalStateException {
+    if (closed) {
+      throw new IllegalStateException("Closed");
+    }
+    if (failed) {
+      throw new IOException("A previous frame failed to decompress");
+    }
+    boolean success = false;
+    try {
+      ByteBuffer buffer = compressed.toByteBuffer();
+      long version;
+      try {
+        version = WireFormat.getVarint(buffer);
+      } catch (IllegalArgumentException e) {
+        throw new IOException(e);
+      }
+      if (version != dictionary.getVersion()) {
+        throw new IOException("Frame compressed with dictionary version " + version + ", expected "
+            + dictionary.getVersion());
+      }
+      if (!rollingWindow || !started) {
+        inflater.reset();
+        dictionary.setDictionary(inflater);
+        started = true;
+      }
+      byte[] out = new byte[Math.min(maxSize, Math.max(64, compressed.size * 4))];
+      int size = 0;
+      for (int pass = 0; pass < 2; pass++) {
+        if (pass == 0) {
+          inflater.setInput(compressed.array, compressed.offset + buffer.position(), buffer.remaining());
+        } else {
+          inflater.setInput(DictionaryCompressor.SYNC_FLUSH_TAIL);
+        }
+        while (true) {
+          if (size == out.length) {
+            if (size == maxSize) {
+              if (inflater.inflate(new byte[1]) != 0) {
+                throw new IOException("Frame decompresses to more than " + maxSize + " bytes");
+              }
+            } else {
+              out = Arrays.copyOf(out, (int) Math.min(maxSize, 2L * out.length));
+            }
+          }
+          int count = (size == out.length) ? 0 : inflater.inflate(out, size, out.length - size);
+          if (count == 0) {
+            if (inflater.needsInput()) {
+              break;
+            }
+            // A final block, or trailing data after one
+            throw new IOException("Invalid frame");
+          }
+          size += count;
+        }
+      }
+      success = true;
+      return new ByteArray(out, size);
+    } catch (DataFormatException e) {
+      throw new IOException(e);
+    } finally {
+      if (!success && rollingWindow) {
+        failed = true;
+      }
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    closed = true;
+    inflater.end();
+  }
+}
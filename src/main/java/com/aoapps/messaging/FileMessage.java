@@ -23,11 +23,10 @@
 
 package com.aoapps.messaging;
 
-import com.aoapps.hodgepodge.util.Base64Coder;
 import com.aoapps.lang.io.AoByteArrayOutputStream;
-import com.aoapps.lang.io.FileUtils;
 import com.aoapps.lang.io.IoUtils;
 import com.aoapps.tempfiles.TempFileContext;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -35,7 +34,18 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * A message that is a file.
@@ -48,16 +58,18 @@ public class FileMessage implements Message {
    * @see FileMessage#decode(com.aoapps.messaging.ByteArray, java.io.File)
    */
   public static FileMessage decode(String encodedMessage, File file) throws IOException {
-    return decode(
-        encodedMessage.isEmpty()
-            ? ByteArray.EMPTY_BYTE_ARRAY
-            : new ByteArray(
-            Base64Coder.decode(
-                encodedMessage
-            )
-        ),
-        file
-    );
+    return decode(encodedMessage, 0, encodedMessage.length(), file);
+  }
+
+  /**
+   * Base-64 decodes the message from a range of characters into the provided file.
+   * The message is decoded in chunks, so the decoded bytes are never held in memory.
+   */
+  static FileMessage decode(CharSequence encodedMessage, int start, int end, File file) throws IOException {
+    try (OutputStream out = new FileOutputStream(file)) {
+      Base64Codec.decode(encodedMessage, start, end, out);
+    }
+    return new FileMessage(true, file);
   }
 
   /**
@@ -73,11 +85,7 @@ public class FileMessage implements Message {
     return decode(
         encodedMessage.isEmpty()
             ? ByteArray.EMPTY_BYTE_ARRAY
-            : new ByteArray(
-            Base64Coder.decode(
-                encodedMessage
-            )
-        )
+            : new ByteArray(Base64Codec.decode(encodedMessage, 0, encodedMessage.length()))
     );
   }
 
@@ -88,7 +96,87 @@ public class FileMessage implements Message {
    */
   public static FileMessage decode(ByteArray encodedMessage, File file) throws IOException {
     try (OutputStream out = new FileOutputStream(file)) {
-      out.write(encodedMessage.array, 0, encodedMessage.size);
+      out.write(encodedMessage.array, encodedMessage.offset, encodedMessage.size);
+    }
+    return new FileMessage(true, file);
+  }
+
+  /**
+   * Restores this message into the provided file asynchronously with
+   * {@link java.nio.channels.AsynchronousFileChannel}, which uses the executor for its I/O completions when it is an
+   * {@link java.util.concurrent.ExecutorService}.
+   *
+   * @see  FileMessage#decode(com.aoapps.messaging.ByteArray, java.io.File)
+   */
+  public static CompletableFuture<FileMessage> decodeAsync(ByteArray encodedMessage, File file, Executor executor) {
+    return AsyncFiles.writeAll(file.toPath(), encodedMessage.toByteBuffer(), executor)
+        .thenApply(v -> new FileMessage(true, file));
+  }
+
+  /**
+   * Restores this message into the provided file from the remaining bytes of a buffer, which may be off-heap.
+   * The position of the buffer is not changed.
+   *
+   * @see  FileMessage#decode(com.aoapps.messaging.ByteArray, java.io.File)
+   */
+  public static FileMessage decode(ByteBuffer encodedMessage, File file) throws IOException {
+    try (FileChannel out = FileChannel.open(
+        file.toPath(),
+        StandardOpenOption.WRITE,
+        StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING
+    )) {
+      IoHelper.writeFully(out, encodedMessage.duplicate());
+    }
+    return new FileMessage(true, file);
+  }
+
+  /**
+   * Restores this message into the provided file by reading exactly {@code size} bytes from the given stream.
+   * The content is streamed directly into the file without being held in memory.
+   *
+   * @see  FileMessage#decode(com.aoapps.messaging.ByteArray, java.io.File)
+   */
+  public static FileMessage decode(InputStream in, long size, File file) throws IOException {
+    try (OutputStream out = new FileOutputStream(file)) {
+      IoHelper.copy(in, out, size);
+    }
+    return new FileMessage(true, file);
+  }
+
+  /**
+   * Restores this message into the provided file by reading exactly {@code size} bytes from the given channel.
+   * The content is transferred with
+   * {@link FileChannel#transferFrom(java.nio.channels.ReadableByteChannel, long, long)}, which allows the operating
+   * system to move the content without passing through the Java heap.
+   * The channel must be in blocking mode.
+   *
+   * @see  FileMessage#decode(java.io.InputStream, long, java.io.File)
+   */
+  public static FileMessage decode(ReadableByteChannel in, long size, File file) throws IOException {
+    try (FileChannel out = FileChannel.open(
+        file.toPath(),
+        StandardOpenOption.WRITE,
+        StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING
+    )) {
+      long position = 0;
+      while (position < size) {
+        long count = out.transferFrom(in, position, size - position);
+        if (count > 0) {
+          position += count;
+        } else {
+          // transferFrom does not distinguish end-of-stream, read through a buffer to find out
+          ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(IoHelper.BUFFER_SIZE, size - position));
+          if (in.read(buffer) == -1) {
+            throw new EOFException("Expected " + (size - position) + " more bytes");
+          }
+          buffer.flip();
+          while (buffer.hasRemaining()) {
+            position += out.write(buffer, position);
+          }
+        }
+      }
     }
     return new FileMessage(true, file);
   }
@@ -108,9 +196,34 @@ public class FileMessage implements Message {
     return decode(encodedMessage, file);
   }
 
+  /**
+   * A hash code of file contents along with the file attributes it was computed for.
+   */
+  private static final class ContentHashCode {
+
+    private final long size;
+    private final FileTime lastModifiedTime;
+    private final Object fileKey;
+    private final int hashCode;
+
+    private ContentHashCode(BasicFileAttributes attributes, int hashCode) {
+      this.size = attributes.size();
+      this.lastModifiedTime = attributes.lastModifiedTime();
+      this.fileKey = attributes.fileKey();
+      this.hashCode = hashCode;
+    }
+
+    private boolean isValid(BasicFileAttributes attributes) {
+      return size == attributes.size()
+          && lastModifiedTime.equals(attributes.lastModifiedTime())
+          && Objects.equals(fileKey, attributes.fileKey());
+    }
+  }
+
   private final boolean isTemp;
   private final Object lock = new Object();
   private File file;
+  private volatile ContentHashCode contentHashCode;
 
   /**
    * Creates a new {@link FileMessage}.
@@ -129,8 +242,14 @@ public class FileMessage implements Message {
     return "FileMessage(\"" + file.getPath() + "\")";
   }
 
+  /**
+   * Compares the file contents, mapped or read in chunks by size, first checking the lengths and whether
+   * both refer to the same file.  When both messages have cached hash codes, differing hash codes are
+   * not equal without reading the files.
+   */
   @Override
   public boolean equals(Object o) {
+    o = SharedMessage.unwrap(o);
     if (this == o) {
       return true;
     }
@@ -139,21 +258,58 @@ public class FileMessage implements Message {
     }
     FileMessage other = (FileMessage) o;
     try {
-      return FileUtils.contentEquals(file, other.file);
+      Path path = file.toPath();
+      Path otherPath = other.file.toPath();
+      BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+      BasicFileAttributes otherAttributes = Files.readAttributes(otherPath, BasicFileAttributes.class);
+      ContentHashCode cached = getCachedContentHashCode(attributes);
+      if (cached != null) {
+        ContentHashCode otherCached = other.getCachedContentHashCode(otherAttributes);
+        if (otherCached != null && cached.hashCode != otherCached.hashCode) {
+          return false;
+        }
+      }
+      return MappedFiles.contentEquals(path, attributes, otherPath, otherAttributes);
     } catch (IOException e) {
       throw new UncheckedIOException(e);
     }
   }
 
+  /**
+   * The hash code is computed from the file contents, mapped or read in chunks by size.  It is cached
+   * while the file has the same size and last modified time.
+   */
   @Override
   public int hashCode() {
     try {
-      return FileUtils.contentHashCode(file);
+      Path path = file.toPath();
+      BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+      ContentHashCode cached = getCachedContentHashCode(attributes);
+      if (cached != null) {
+        return cached.hashCode;
+      }
+      int hashCode = MappedFiles.contentHashCode(path);
+      // Only cache when the file was not modified while hashing
+      ContentHashCode computed = new ContentHashCode(attributes, hashCode);
+      if (computed.isValid(Files.readAttributes(path, BasicFileAttributes.class))) {
+        contentHashCode = computed;
+      }
+      return hashCode;
     } catch (IOException e) {
       throw new UncheckedIOException(e);
     }
   }
 
+  /**
+   * Gets the cached hash code when still valid for the given file attributes.
+   *
+   * @return  the cached hash code or {@code null} when not cached or no longer valid
+   */
+  private ContentHashCode getCachedContentHashCode(BasicFileAttributes attributes) {
+    ContentHashCode cached = contentHashCode;
+    return (cached != null && cached.isValid(attributes)) ? cached : null;
+  }
+
   @Override
   public MessageType getMessageType() {
     return MessageType.FILE;
@@ -164,11 +320,45 @@ public class FileMessage implements Message {
    */
   @Override
   public String encodeAsString() throws IOException {
-    ByteArray byteArray = encodeAsByteArray();
-    if (byteArray.size == 0) {
-      return "";
+    long length = file.length();
+    StringBuilder sb = new StringBuilder(MultiMessage.toArrayLength(Base64Codec.getEncodedLength(length)));
+    appendTo(sb, length);
+    return sb.toString();
+  }
+
+  /**
+   * Base-64 encodes the file in chunks, so the file is never held in memory.
+   */
+  @Override
+  public void appendTo(Appendable out) throws IOException {
+    appendTo(out, file.length());
+  }
+
+  /**
+   * Base-64 encodes exactly {@code length} bytes of the file in chunks.  This is used
+   * when the encoded length has already been written, such as in a {@link MultiMessage} frame.
+   *
+   * @throws  IOException  when the file does not contain exactly {@code length} bytes
+   */
+  void appendTo(Appendable out, long length) throws IOException {
+    try (InputStream in = new FileInputStream(file)) {
+      Base64Codec.encode(in, length, out);
+      if (in.read() != -1) {
+        throw new IOException("File changed size while encoding: " + file);
+      }
+    } catch (EOFException e) {
+      throw new IOException("File changed size while encoding: " + file, e);
     }
-    return new String(Base64Coder.encode(byteArray.array, byteArray.size));
+  }
+
+  @Override
+  public long getEncodedStringLength() {
+    return Base64Codec.getEncodedLength(file.length());
+  }
+
+  @Override
+  public long getEncodedByteArrayLength() {
+    return file.length();
   }
 
   @Override
@@ -185,6 +375,145 @@ public class FileMessage implements Message {
     }
   }
 
+  /**
+   * Reads the file into an array from the pool.
+   */
+  @Override
+  public ByteArray encodeAsByteArray(ByteArrayPool pool) throws IOException {
+    try (InputStream in = new FileInputStream(file)) {
+      long len = file.length();
+      if (len > Integer.MAX_VALUE) {
+        throw new IOException("File too large for " + ByteArray.class.getSimpleName() + ": " + len);
+      }
+      final int size = (int) len;
+      byte[] array = pool.acquire(size);
+      try {
+        if (in.readNBytes(array, 0, size) != size || in.read() != -1) {
+          throw new IOException("File changed size while encoding: " + file);
+        }
+      } catch (Throwable t) {
+        pool.release(array);
+        throw t;
+      }
+      return new PooledByteArray(pool, array, size);
+    }
+  }
+
+  /**
+   * Reads the file with {@link java.nio.channels.AsynchronousFileChannel}, so no thread blocks on the read.
+   */
+  @Override
+  public CompletableFuture<ByteArray> encodeAsByteArrayAsync(Executor executor) {
+    return AsyncFiles.readAll(file.toPath(), executor);
+  }
+
+  /**
+   * Reads the file with {@link java.nio.channels.AsynchronousFileChannel}, then Base-64 encodes on the given
+   * executor.
+   */
+  @Override
+  public CompletableFuture<String> encodeAsStringAsync(Executor executor) {
+    return encodeAsByteArrayAsync(executor).thenApplyAsync(Base64Codec::encodeToString, executor);
+  }
+
+  /**
+   * Files smaller than this are read by {@link #encodeAsByteBuffer()} instead of mapped, since mapping has a higher
+   * fixed cost.
+   */
+  private static final int MAP_THRESHOLD = 64 << 10; // 64 KiB
+
+  /**
+   * Maps a file of at least 64 KiB into memory, so its content is not copied onto the heap.  Temporary files and
+   * smaller files are read onto the heap instead.
+   *
+   * <p>A mapping is not released when the channel is closed, but only once the returned buffer is garbage collected.
+   * Until then the file remains open, and on some platforms, such as Windows, cannot be deleted.  Temporary files
+   * are never mapped, so {@link #close()} can always delete them.</p>
+   */
+  @Override
+  public ByteBuffer encodeAsByteBuffer() throws IOException {
+    try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      long size = in.size();
+      if (size > Integer.MAX_VALUE) {
+        throw new IOException("File too large for " + ByteBuffer.class.getSimpleName() + ": " + size);
+      }
+      if (isTemp || size < MAP_THRESHOLD) {
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        while (buffer.hasRemaining()) {
+          if (in.read(buffer, buffer.position()) == -1) {
+            throw new IOException("File changed size while encoding: " + file);
+          }
+        }
+        return buffer.flip();
+      }
+      return in.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+  }
+
+  /**
+   * Streams the file directly to the output without buffering the whole file in memory.
+   */
+  @Override
+  public void writeTo(OutputStream out) throws IOException {
+    Files.copy(file.toPath(), out);
+  }
+
+  /**
+   * Transfers the file directly to the output using
+   * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}, which allows the operating
+   * system to move the content without passing through the Java heap.
+   */
+  @Override
+  public void writeTo(WritableByteChannel out) throws IOException {
+    try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      transferTo(in, in.size(), out);
+    }
+  }
+
+  /**
+   * Streams exactly {@code length} bytes of the file to the output.  This is used
+   * when the length has already been written, such as in a {@link MultiMessage} frame.
+   *
+   * @throws  IOException  when the file does not contain exactly {@code length} bytes
+   */
+  void writeTo(OutputStream out, long length) throws IOException {
+    try (InputStream in = new FileInputStream(file)) {
+      IoHelper.copy(in, out, length);
+      if (in.read() != -1) {
+        throw new IOException("File changed size while encoding: " + file);
+      }
+    } catch (EOFException e) {
+      throw new IOException("File changed size while encoding: " + file, e);
+    }
+  }
+
+  /**
+   * Transfers exactly {@code length} bytes of the file to the output.  This is used
+   * when the length has already been written, such as in a {@link MultiMessage} frame.
+   *
+   * @throws  IOException  when the file does not contain exactly {@code length} bytes
+   */
+  void writeTo(WritableByteChannel out, long length) throws IOException {
+    try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      if (in.size() != length) {
+        throw new IOException("File changed size while encoding: " + file);
+      }
+      transferTo(in, length, out);
+    }
+  }
+
+  private void transferTo(FileChannel in, long length, WritableByteChannel out) throws IOException {
+    long position = 0;
+    while (position < length) {
+      long count = in.transferTo(position, length - position, out);
+      if (count <= 0) {
+        // Nothing transferred to a blocking channel: file truncated
+        throw new IOException("File changed size while encoding: " + file);
+      }
+      position += count;
+    }
+  }
+
   @Override
   public void close() throws IOException {
     synchronized (lock) {
@@ -0,0 +1,230 @@
+/*
+ * ao-messaging-api - Asynchronous bidirectional messaging over various protocols API.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-messaging-api.
+ *
+ * ao-messaging-api is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-messaging-api is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-messaging-api.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoapps.messaging;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * I/O utilities shared by the streaming encoders and decoders.
+ */
+final class IoHelper {
+
+  /** Make no instances. */
+  private IoHelper() {
+    throw new AssertionError();
+  }
+
+  /**
+   * The size of buffers used while streaming content.
+   */
+  static final int BUFFER_SIZE = 8192;
+
+  /**
+   * Writes all remaining bytes of the buffer to the given blocking channel.
+   */
+  static void writeFully(WritableByteChannel out, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      out.write(buffer);
+    }
+  }
+
+  /**
+   * Writes all remaining bytes of the buffer to the given stream.
+   * The position of the buffer is not changed.
+   */
+  static void write(OutputStream out, ByteBuffer buffer) throws IOException {
+    if (buffer.hasArray()) {
+      out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+    } else {
+      ByteBuffer source = buffer.duplicate();
+      byte[] buff = new byte[Math.min(BUFFER_SIZE, source.remaining())];
+      while (source.hasRemaining()) {
+        int count = Math.min(buff.length, source.remaining());
+        source.get(buff, 0, count);
+        out.write(buff, 0, count);
+      }
+    }
+  }
+
+  /**
+   * Reads exactly {@code len} bytes from the given stream.
+   *
+   * @throws  EOFException  when the input ends before {@code len} bytes are read
+   */
+  static void readFully(InputStream in, byte[] b, int off, int len) throws IOException {
+    if (in.readNBytes(b, off, len) != len) {
+      throw new EOFException("Expected " + len + " bytes");
+    }
+  }
+
+  /**
+   * Reads exactly {@code len} bytes from the given stream into a new array.  The array grows as the bytes actually
+   * arrive, so a forged length does not allocate more than the stream provides.
+   *
+   * @throws  EOFException  when the input ends before {@code len} bytes are read
+   */
+  static byte[] readFully(InputStream in, int len) throws IOException {
+    byte[] b = new byte[Math.min(len, BUFFER_SIZE)];
+    int pos = 0;
+    while (pos < len) {
+      if (pos == b.length) {
+        b = Arrays.copyOf(b, (int) Math.min(len, 2L * b.length));
+      }
+      int count = in.read(b, pos, b.length - pos);
+      if (count == -1) {
+        throw new EOFException("Expected " + len + " bytes");
+      }
+      pos += count;
+    }
+    return b;
+  }
+
+  /**
+   * Copies exactly {@code length} bytes from the given stream.
+   *
+   * @throws  EOFException  when the input ends before {@code length} bytes are copied
+   */
+  static void copy(InputStream in, OutputStream out, long length) throws IOException {
+    byte[] buff = new byte[(int) Math.min(BUFFER_SIZE, length)];
+    long remaining = length;
+    while (remaining > 0) {
+      int count = in.read(buff, 0, (int) Math.min(buff.length, remaining));
+      if (count == -1) {
+        throw new EOFException("Expected " + remaining + " more bytes");
+      }
+      out.write(buff, 0, count);
+      remaining -= count;
+    }
+  }
+
+  /**
+   * Counts the bytes written.  The wrapped stream is neither flushed nor closed on close.
+   */
+  static final class CountingOutputStream extends FilterOutputStream {
+
+    private long count;
+
+    CountingOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      count += len;
+    }
+
+    @Override
+    public void close() {
+      // Do not close the wrapped stream
+    }
+
+    /**
+     * Gets the number of bytes written.
+     */
+    long getCount() {
+      return count;
+    }
+  }
+
+  /**
+   * Reads at most a given number of bytes.  The wrapped stream is not closed on close.
+   */
+  static final class LimitedInputStream extends FilterInputStream {
+
+    private long remaining;
+
+    LimitedInputStream(InputStream in, long limit) {
+      super(in);
+      this.remaining = limit;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (remaining <= 0) {
+        return -1;
+      }
+      int b = in.read();
+      if (b != -1) {
+        remaining--;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (remaining <= 0) {
+        return (len == 0) ? 0 : -1;
+      }
+      int count = in.read(b, off, (int) Math.min(len, remaining));
+      if (count > 0) {
+        remaining -= count;
+      }
+      return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = in.skip(Math.min(n, remaining));
+      remaining -= skipped;
+      return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+      return (int) Math.min(in.available(), remaining);
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    @Override
+    public void close() {
+      // Do not close the wrapped stream
+    }
+
+    /**
+     * Gets the number of bytes that have not been read.
+     */
+    long getRemaining() {
+      return remaining;
+    }
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * ao-messaging-api - Asynchronous bidirectional messaging over various protocols API.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-messaging-api.
+ *
+ * ao-messaging-api is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-messaging-api is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-messaging-api.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoapps.messaging;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+
+/**
+ * Compares and hashes file contents, through a single memory-mapped window for files up to
+ * {@link #MAP_LIMIT} and through reused read buffers for larger files.
+ *
+ * <p>A mapping is only released once garbage collected, so larger files are not mapped: mapping a multi-gigabyte
+ * file window by window would leave every window mapped, and the file open, until collected.</p>
+ */
+final class MappedFiles {
+
+  /** Make no instances. */
+  private MappedFiles() {
+    throw new AssertionError();
+  }
+
+  /**
+   * Files larger than this are read through reused buffers instead of mapped.
+   */
+  private static final long MAP_LIMIT = 64L << 20; // 64 MiB
+
+  /**
+   * Files smaller than this are read instead of mapped, since mapping has a higher fixed cost.
+   */
+  private static final int MAP_THRESHOLD = 64 << 10; // 64 KiB
+
+  /**
+   * The size of each buffer used to read files larger than {@link #MAP_LIMIT}.
+   */
+  private static final int READ_BUFFER_SIZE = 1 << 20; // 1 MiB
+
+  /**
+   * Compares the contents of two files.  The lengths are compared first, then two paths to the same file
+   * (including hard links to the same inode) are equal without reading them.
+   */
+  static boolean contentEquals(
+      Path path1, BasicFileAttributes attributes1,
+      Path path2, BasicFileAttributes attributes2
+  ) throws IOException {
+    if (attributes1.size() != attributes2.size()) {
+      return false;
+    }
+    Object fileKey1 = attributes1.fileKey();
+    if (fileKey1 != null && Objects.equals(fileKey1, attributes2.fileKey())) {
+      return true;
+    }
+    if (Files.isSameFile(path1, path2)) {
+      return true;
+    }
+    try (
+        FileChannel channel1 = FileChannel.open(path1, StandardOpenOption.READ);
+        FileChannel channel2 = FileChannel.open(path2, StandardOpenOption.READ)
+    ) {
+      final long size = channel1.size();
+      if (size != channel2.size()) {
+        return false;
+      }
+      if (size <= MAP_LIMIT) {
+        // ByteBuffer.equals uses a vectorized mismatch
+        return window(channel1, size).equals(window(channel2, size));
+      }
+      ByteBuffer buffer1 = ByteBuffer.allocate(READ_BUFFER_SIZE);
+      ByteBuffer buffer2 = ByteBuffer.allocate(READ_BUFFER_SIZE);
+      for (long position = 0; position < size; position += READ_BUFFER_SIZE) {
+        if (!read(channel1, position, buffer1).equals(read(channel2, position, buffer2))) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Computes a hash code of the contents of a file.
+   * This is the same as {@link java.util.Arrays#hashCode(byte[])} of the contents.
+   */
+  static int contentHashCode(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      final long size = channel.size();
+      if (size <= MAP_LIMIT) {
+        return hashCode(1, window(channel, size));
+      }
+      ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+      int hashCode = 1;
+      for (long position = 0; position < size; position += READ_BUFFER_SIZE) {
+        hashCode = hashCode(hashCode, read(channel, position, buffer));
+      }
+      return hashCode;
+    }
+  }
+
+  /**
+   * Continues a hash code over the remaining bytes of a buffer.
+   */
+  private static int hashCode(int hashCode, ByteBuffer buffer) {
+    for (int i = buffer.position(), limit = buffer.limit(); i < limit; i++) {
+      hashCode = 31 * hashCode + buffer.get(i);
+    }
+    return hashCode;
+  }
+
+  /**
+   * Gets the whole file of at most {@link #MAP_LIMIT} bytes, mapped when large enough.
+   */
+  private static ByteBuffer window(FileChannel channel, long size) throws IOException {
+    assert size <= MAP_LIMIT;
+    if (size < MAP_THRESHOLD) {
+      return read(channel, 0, ByteBuffer.allocate((int) size));
+    } else {
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+  }
+
+  /**
+   * Reads from the given position until the buffer is full or the end of the file, reusing the buffer.
+   *
+   * @return  the buffer, flipped for reading
+   */
+  private static ByteBuffer read(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+    buffer.clear();
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) == -1) {
+        // File truncated: compare what was read
+        break;
+      }
+    }
+    return buffer.flip();
+  }
+}
@@ -1,6 +1,6 @@
 /*
  * ao-messaging-api - Asynchronous bidirectional messaging over various protocols API.
- * Copyright (C) 2014, 2015, 2016, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2014, 2015, 2016, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -25,6 +25,11 @@ package com.aoapps.messaging;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * Any type of encapsulated message.
@@ -53,11 +58,111 @@ public interface Message extends Closeable {
    */
   String encodeAsString() throws IOException;
 
+  /**
+   * Appends the string representation of this message.
+   * This is the same encoding as {@link #encodeAsString()}, but implementations may
+   * stream their content without first holding the entire encoding in memory.
+   *
+   * <p>When the output is a {@link java.io.Writer}, it is neither flushed nor closed.</p>
+   */
+  default void appendTo(Appendable out) throws IOException {
+    out.append(encodeAsString());
+  }
+
   /**
    * Gets a binary representation of this message.
    */
   ByteArray encodeAsByteArray() throws IOException;
 
+  /**
+   * Gets the exact length of {@link #encodeAsString()}.  Implementations compute this without encoding,
+   * which allows encoders to allocate exactly once and transports to write a length before the content.
+   */
+  default long getEncodedStringLength() throws IOException {
+    return encodeAsString().length();
+  }
+
+  /**
+   * Gets the exact length of {@link #encodeAsByteArray()}.  Implementations compute this without encoding,
+   * which allows encoders to allocate exactly once and transports to write a length before the content.
+   *
+   * <p>This default implementation encodes.  {@link ByteArrayMessage}, {@link StringMessage}, and {@link FileMessage}
+   * are sized without encoding, and a {@link MultiMessage} sums its messages.  A {@link CompressedMessage} at or above
+   * its threshold is compressed to be sized, then keeps the result for encoding.  A {@link SharedMessage} is sized as
+   * the message it shares until encoded.</p>
+   */
+  default long getEncodedByteArrayLength() throws IOException {
+    return encodeAsByteArray().size;
+  }
+
+  /**
+   * Gets a binary representation of this message, using arrays from the given pool where the encoding
+   * requires a new array.  This is the same encoding as {@link #encodeAsByteArray()}.
+   *
+   * <p>The returned byte array must be {@link ByteArray#release() released} once no longer needed,
+   * after which it must not be accessed.</p>
+   */
+  default ByteArray encodeAsByteArray(ByteArrayPool pool) throws IOException {
+    return encodeAsByteArray();
+  }
+
+  /**
+   * Gets a binary representation of this message as a buffer, which may be off-heap.
+   * This is the same encoding as {@link #encodeAsByteArray()}.
+   *
+   * <p>The content of the returned buffer must not be modified.</p>
+   */
+  default ByteBuffer encodeAsByteBuffer() throws IOException {
+    return encodeAsByteArray().toByteBuffer();
+  }
+
+  /**
+   * Writes the binary representation of this message to the given stream.
+   * This is the same encoding as {@link #encodeAsByteArray()}, but implementations may
+   * stream their content without first holding the entire encoding in memory.
+   *
+   * <p>The stream is neither flushed nor closed.</p>
+   */
+  default void writeTo(OutputStream out) throws IOException {
+    ByteArray byteArray = encodeAsByteArray();
+    out.write(byteArray.array, byteArray.offset, byteArray.size);
+  }
+
+  /**
+   * Writes the binary representation of this message to the given channel.
+   * This is the same encoding as {@link #encodeAsByteArray()}, but implementations may
+   * stream their content without first holding the entire encoding in memory.
+   *
+   * <p>The channel must be in blocking mode.  The channel is not closed.</p>
+   */
+  default void writeTo(WritableByteChannel out) throws IOException {
+    IoHelper.writeFully(out, encodeAsByteBuffer());
+  }
+
+  /**
+   * Gets a String representation of this message asynchronously.
+   * This is the same encoding as {@link #encodeAsString()}.
+   *
+   * <p>This default implementation encodes on the given executor.</p>
+   *
+   * @see  #encodeAsByteArrayAsync(java.util.concurrent.Executor)
+   */
+  default CompletableFuture<String> encodeAsStringAsync(Executor executor) {
+    return AsyncFiles.supplyAsync(this::encodeAsString, executor);
+  }
+
+  /**
+   * Gets a binary representation of this message asynchronously, so that a non-blocking caller, such as the I/O thread
+   * of a {@link Socket}, does not wait on file I/O.  This is the same encoding as {@link #encodeAsByteArray()}.
+   *
+   * <p>This default implementation encodes on the given executor.  A {@link FileMessage} is read with
+   * {@link java.nio.channels.AsynchronousFileChannel} instead, which uses the executor for its I/O completions
+   * when it is an {@link java.util.concurrent.ExecutorService}.</p>
+   */
+  default CompletableFuture<ByteArray> encodeAsByteArrayAsync(Executor executor) {
+    return AsyncFiles.supplyAsync(this::encodeAsByteArray, executor);
+  }
+
   /**
    * The message should be closed when it is no longer needed.
    */
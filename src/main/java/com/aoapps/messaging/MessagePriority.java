@@ -0,0 +1,50 @@
+/*
+ * ao-messaging-api - Asynchronous bidirectional messaging over various protocols API.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-messaging-api.
+ *
+ * ao-messaging-api is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-messaging-api is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-messaging-api.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoapps.messaging;
+
+/**
+ * The priority of outbound messages.  Higher priority messages are sent ahead of any lower priority messages still
+ * queued, such as heartbeats and control messages ahead of bulk {@link FileMessage} data.  Messages of the same
+ * priority are sent in order.
+ *
+ * @see  Socket#sendMessages(java.util.Collection, com.aoapps.messaging.MessagePriority, java.time.Duration)
+ * @see  OutboundQueue#offer(java.util.Collection, com.aoapps.messaging.MessagePriority, java.time.Duration,
+ *       java.util.concurrent.CompletableFuture)
+ */
+public enum MessagePriority {
+  /**
+   * Sent ahead of all other messages, such as heartbeats and control messages.
+   */
+  HIGH,
+
+  /**
+   * The priority of messages sent without a priority.
+   */
+  NORMAL,
+
+  /**
+   * Sent only when no other messages are queued, such as bulk data.
+   */
+  LOW
+}
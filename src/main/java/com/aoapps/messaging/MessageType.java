@@ -1,6 +1,6 @@
 /*
  * ao-messaging-api - Asynchronous bidirectional messaging over various protocols API.
- * Copyright (C) 2014, 2015, 2016, 2017, 2018, 2020, 2021, 2022, 2024, 2025  AO Industries, Inc.
+ * Copyright (C) 2014, 2015, 2016, 2017, 2018, 2020, 2021, 2022, 2024, 2025, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -27,6 +27,12 @@ import com.aoapps.lang.io.function.IOSupplier;
 import com.aoapps.tempfiles.TempFileContext;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * The types of serializations.
@@ -55,6 +61,19 @@ public enum MessageType {
       return ByteArrayMessage.decode(encodedMessage);
     }
 
+    /**
+     * Decodes the message in place, without first copying the range into a new {@link String}.
+     */
+    @Override
+    public ByteArrayMessage decode(
+        CharSequence encodedMessage,
+        int start,
+        int end,
+        IOSupplier<TempFileContext> tempFileContextSupplier
+    ) {
+      return ByteArrayMessage.decode(encodedMessage, start, end);
+    }
+
     @Override
     public ByteArrayMessage decode(ByteArray encodedMessage, IOSupplier<TempFileContext> tempFileContextSupplier) {
       return new ByteArrayMessage(encodedMessage);
@@ -65,6 +84,11 @@ public enum MessageType {
     public ByteArrayMessage decode(ByteArray encodedMessage) {
       return new ByteArrayMessage(encodedMessage);
     }
+
+    @Override
+    public ByteArrayMessage decode(ByteBuffer encodedMessage, IOSupplier<TempFileContext> tempFileContextSupplier) {
+      return new ByteArrayMessage(encodedMessage);
+    }
   },
   FILE {
     @Override
@@ -79,18 +103,7 @@ public enum MessageType {
 
     @Override
     public FileMessage decode(String encodedMessage, IOSupplier<TempFileContext> tempFileContextSupplier) throws IOException {
-      if (tempFileContextSupplier == null) {
-        throw new IllegalArgumentException(
-            "No " + IOSupplier.class.getSimpleName() + "<" + TempFileContext.class.getSimpleName() + ">");
-      }
-      TempFileContext tempFileContext = tempFileContextSupplier.get();
-      if (tempFileContext == null) {
-        throw new IllegalStateException("No " + TempFileContext.class.getSimpleName());
-      }
-      return FileMessage.decode(
-          encodedMessage,
-          tempFileContext.createTempFile("FileMessage_").getFile()
-      );
+      return FileMessage.decode(encodedMessage, createTempFile(tempFileContextSupplier));
     }
 
     @Override
@@ -99,20 +112,23 @@ public enum MessageType {
       return FileMessage.decode(encodedMessage);
     }
 
+    /**
+     * Decodes the message in chunks directly into a temporary file, without first copying the range into a new
+     * {@link String}.
+     */
+    @Override
+    public FileMessage decode(
+        CharSequence encodedMessage,
+        int start,
+        int end,
+        IOSupplier<TempFileContext> tempFileContextSupplier
+    ) throws IOException {
+      return FileMessage.decode(encodedMessage, start, end, createTempFile(tempFileContextSupplier));
+    }
+
     @Override
     public FileMessage decode(ByteArray encodedMessage, IOSupplier<TempFileContext> tempFileContextSupplier) throws IOException {
-      if (tempFileContextSupplier == null) {
-        throw new IllegalArgumentException(
-            "No " + IOSupplier.class.getSimpleName() + "<" + TempFileContext.class.getSimpleName() + ">");
-      }
-      TempFileContext tempFileContext = tempFileContextSupplier.get();
-      if (tempFileContext == null) {
-        throw new IllegalStateException("No " + TempFileContext.class.getSimpleName());
-      }
-      return FileMessage.decode(
-          encodedMessage,
-          tempFileContext.createTempFile("FileMessage_").getFile()
-      );
+      return FileMessage.decode(encodedMessage, createTempFile(tempFileContextSupplier));
     }
 
     @Override
@@ -120,6 +136,67 @@ public enum MessageType {
     public FileMessage decode(ByteArray encodedMessage) throws IOException {
       return FileMessage.decode(encodedMessage);
     }
+
+    @Override
+    public FileMessage decode(ByteBuffer encodedMessage, IOSupplier<TempFileContext> tempFileContextSupplier)
+        throws IOException {
+      return FileMessage.decode(encodedMessage, createTempFile(tempFileContextSupplier));
+    }
+
+    /**
+     * Spools the encoded message directly into a temporary file.
+     */
+    @Override
+    public FileMessage decode(InputStream in, int size, IOSupplier<TempFileContext> tempFileContextSupplier)
+        throws IOException {
+      return FileMessage.decode(in, size, createTempFile(tempFileContextSupplier));
+    }
+
+    /**
+     * Base-64 decodes on the given executor, then writes the temporary file asynchronously.
+     *
+     * @see  FileMessage#decodeAsync(com.aoapps.messaging.ByteArray, java.io.File, java.util.concurrent.Executor)
+     */
+    @Override
+    public CompletableFuture<Message> decodeAsync(
+        String encodedMessage,
+        IOSupplier<TempFileContext> tempFileContextSupplier,
+        Executor executor
+    ) {
+      return AsyncFiles.supplyAsync(
+          () -> new FileWithContent(
+              createTempFile(tempFileContextSupplier),
+              new ByteArray(Base64Codec.decode(encodedMessage, 0, encodedMessage.length()))
+          ),
+          executor
+      ).thenCompose(decoded -> FileMessage.decodeAsync(decoded.content, decoded.file, executor))
+          .thenApply(message -> message);
+    }
+
+    /**
+     * Writes the temporary file asynchronously.
+     *
+     * @see  FileMessage#decodeAsync(com.aoapps.messaging.ByteArray, java.io.File, java.util.concurrent.Executor)
+     */
+    @Override
+    public CompletableFuture<Message> decodeAsync(
+        ByteArray encodedMessage,
+        IOSupplier<TempFileContext> tempFileContextSupplier,
+        Executor executor
+    ) {
+      return AsyncFiles.supplyAsync(() -> createTempFile(tempFileContextSupplier), executor)
+          .thenCompose(file -> FileMessage.decodeAsync(encodedMessage, file, executor))
+          .thenApply(message -> message);
+    }
+
+    /**
+     * Transfers the encoded message directly into a temporary file.
+     */
+    @Override
+    public FileMessage decode(ReadableByteChannel in, int size, IOSupplier<TempFileContext> tempFileContextSupplier)
+        throws IOException {
+      return FileMessage.decode(in, size, createTempFile(tempFileContextSupplier));
+    }
   },
   STRING {
     @Override
@@ -143,6 +220,20 @@ public enum MessageType {
       return new StringMessage(encodedMessage);
     }
 
+    @Override
+    public StringMessage decode(
+        CharSequence encodedMessage,
+        int start,
+        int end,
+        IOSupplier<TempFileContext> tempFileContextSupplier
+    ) {
+      return StringMessage.decode(encodedMessage, start, end);
+    }
+
+    /**
+     * Decodes into an independent {@link String}, so the given bytes may be reused afterward.
+     * Use {@link StringMessage#decodeLazy(com.aoapps.messaging.ByteArray)} to keep the original bytes instead.
+     */
     @Override
     public StringMessage decode(ByteArray encodedMessage, IOSupplier<TempFileContext> tempFileContextSupplier) {
       return StringMessage.decode(encodedMessage);
@@ -153,6 +244,11 @@ public enum MessageType {
     public StringMessage decode(ByteArray encodedMessage) {
       return StringMessage.decode(encodedMessage);
     }
+
+    @Override
+    public StringMessage decode(ByteBuffer encodedMessage, IOSupplier<TempFileContext> tempFileContextSupplier) {
+      return StringMessage.decode(encodedMessage);
+    }
   },
   MULTI {
     @Override
@@ -176,6 +272,19 @@ public enum MessageType {
       return MultiMessage.decode(encodedMessage);
     }
 
+    /**
+     * Decodes the messages in place, without first copying the range into a new {@link String}.
+     */
+    @Override
+    public MultiMessage decode(
+        CharSequence encodedMessage,
+        int start,
+        int end,
+        IOSupplier<TempFileContext> tempFileContextSupplier
+    ) throws IOException {
+      return MultiMessage.decode(encodedMessage, start, end, tempFileContextSupplier);
+    }
+
     @Override
     public MultiMessage decode(ByteArray encodedMessage, IOSupplier<TempFileContext> tempFileContextSupplier) throws IOException {
       return MultiMessage.decode(encodedMessage, tempFileContextSupplier);
@@ -186,8 +295,119 @@ public enum MessageType {
     public MultiMessage decode(ByteArray encodedMessage) throws IOException {
       return MultiMessage.decode(encodedMessage);
     }
+
+    @Override
+    public MultiMessage decode(ByteBuffer encodedMessage, IOSupplier<TempFileContext> tempFileContextSupplier)
+        throws IOException {
+      return MultiMessage.decode(encodedMessage, tempFileContextSupplier);
+    }
+
+    /**
+     * Decodes the messages incrementally, without first reading the encoded messages into memory.
+     */
+    @Override
+    public MultiMessage decode(InputStream in, int size, IOSupplier<TempFileContext> tempFileContextSupplier)
+        throws IOException {
+      return MultiMessage.decode(in, size, tempFileContextSupplier);
+    }
+
+    /**
+     * Decodes the messages incrementally, without first reading the encoded messages into memory.
+     */
+    @Override
+    public MultiMessage decode(ReadableByteChannel in, int size, IOSupplier<TempFileContext> tempFileContextSupplier)
+        throws IOException {
+      return MultiMessage.decode(in, size, tempFileContextSupplier);
+    }
+  },
+  COMPRESSED {
+    @Override
+    public byte getTypeByte() {
+      return 4;
+    }
+
+    @Override
+    public char getTypeChar() {
+      return 'c';
+    }
+
+    @Override
+    public CompressedMessage decode(String encodedMessage, IOSupplier<TempFileContext> tempFileContextSupplier)
+        throws IOException {
+      return CompressedMessage.decode(encodedMessage, 0, encodedMessage.length(), tempFileContextSupplier);
+    }
+
+    @Override
+    @Deprecated(forRemoval = true)
+    public CompressedMessage decode(String encodedMessage) throws IOException {
+      return CompressedMessage.decode(encodedMessage);
+    }
+
+    /**
+     * Decodes the message in place, without first copying the range into a new {@link String}.
+     */
+    @Override
+    public CompressedMessage decode(
+        CharSequence encodedMessage,
+        int start,
+        int end,
+        IOSupplier<TempFileContext> tempFileContextSupplier
+    ) throws IOException {
+      return CompressedMessage.decode(encodedMessage, start, end, tempFileContextSupplier);
+    }
+
+    @Override
+    public CompressedMessage decode(ByteArray encodedMessage, IOSupplier<TempFileContext> tempFileContextSupplier)
+        throws IOException {
+      return CompressedMessage.decode(encodedMessage, tempFileContextSupplier);
+    }
+
+    @Override
+    @Deprecated(forRemoval = true)
+    public CompressedMessage decode(ByteArray encodedMessage) throws IOException {
+      return CompressedMessage.decode(encodedMessage);
+    }
+
+    /**
+     * Decompresses a {@link FileMessage} directly into its temporary file, without first reading the encoded message
+     * into memory.
+     */
+    @Override
+    public CompressedMessage decode(InputStream in, int size, IOSupplier<TempFileContext> tempFileContextSupplier)
+        throws IOException {
+      return CompressedMessage.decode(in, size, tempFileContextSupplier);
+    }
   };
 
+  /**
+   * Creates a new temporary file from the given {@link TempFileContext temporary file context} supplier.
+   */
+  static File createTempFile(IOSupplier<TempFileContext> tempFileContextSupplier) throws IOException {
+    if (tempFileContextSupplier == null) {
+      throw new IllegalArgumentException(
+          "No " + IOSupplier.class.getSimpleName() + "<" + TempFileContext.class.getSimpleName() + ">");
+    }
+    TempFileContext tempFileContext = tempFileContextSupplier.get();
+    if (tempFileContext == null) {
+      throw new IllegalStateException("No " + TempFileContext.class.getSimpleName());
+    }
+    return tempFileContext.createTempFile("FileMessage_").getFile();
+  }
+
+  /**
+   * A temporary file along with the content to be written to it.
+   */
+  private static final class FileWithContent {
+
+    private final File file;
+    private final ByteArray content;
+
+    private FileWithContent(File file, ByteArray content) {
+      this.file = file;
+      this.content = content;
+    }
+  }
+
   /**
    * Gets the message type for its numeric code.
    */
@@ -201,6 +421,8 @@ public enum MessageType {
         return STRING;
       case 3:
         return MULTI;
+      case 4:
+        return COMPRESSED;
       default:
         throw new IllegalArgumentException("Invalid type byte: " + typeByte);
     }
@@ -219,6 +441,8 @@ public enum MessageType {
         return STRING;
       case 'm':
         return MULTI;
+      case 'c':
+        return COMPRESSED;
       default:
         throw new IllegalArgumentException("Invalid type char: " + typeChar);
     }
@@ -265,13 +489,68 @@ public enum MessageType {
   @Deprecated(forRemoval = true)
   public abstract Message decode(String encodedMessage) throws IOException;
 
+  /**
+   * Constructs a message of this type from a range of characters containing its string encoding, using the provided
+   * {@link TempFileContext temporary file context} supplier as-needed.
+   *
+   * <p>This default implementation copies the range into a new {@link String}.  {@link #BYTE_ARRAY} and {@link #FILE}
+   * Base-64 decode in place, {@link #STRING} only creates the {@link String} of the decoded message, and
+   * {@link #MULTI} and {@link #COMPRESSED} decode their messages in place.</p>
+   *
+   * @see  MessageType#decode(java.lang.String, com.aoapps.lang.io.function.IOSupplier)
+   */
+  public Message decode(
+      CharSequence encodedMessage,
+      int start,
+      int end,
+      IOSupplier<TempFileContext> tempFileContextSupplier
+  ) throws IOException {
+    return decode(encodedMessage.subSequence(start, end).toString(), tempFileContextSupplier);
+  }
+
   /**
    * Constructs a message of this type from its byte array encoding using the provided
    * {@link TempFileContext temporary file context} supplier as-needed.
+   *
+   * <p>The message may be backed by the given bytes without copying, so they must not be modified afterward.</p>
    */
   public abstract Message decode(ByteArray encodedMessage, IOSupplier<TempFileContext> tempFileContextSupplier)
       throws IOException;
 
+  /**
+   * Constructs a message of this type from its string encoding asynchronously, so that a non-blocking caller does not
+   * wait on file I/O.
+   *
+   * <p>This default implementation decodes on the given executor.  {@link #FILE} writes its temporary file with
+   * {@link java.nio.channels.AsynchronousFileChannel}.</p>
+   *
+   * @see  MessageType#decode(java.lang.String, com.aoapps.lang.io.function.IOSupplier)
+   */
+  public CompletableFuture<Message> decodeAsync(
+      String encodedMessage,
+      IOSupplier<TempFileContext> tempFileContextSupplier,
+      Executor executor
+  ) {
+    return AsyncFiles.supplyAsync(() -> decode(encodedMessage, tempFileContextSupplier), executor);
+  }
+
+  /**
+   * Constructs a message of this type from its byte array encoding asynchronously, so that a non-blocking caller does
+   * not wait on file I/O.
+   *
+   * <p>This default implementation decodes on the given executor.  {@link #FILE} writes its temporary file with
+   * {@link java.nio.channels.AsynchronousFileChannel}.</p>
+   *
+   * @see  MessageType#decode(com.aoapps.messaging.ByteArray, com.aoapps.lang.io.function.IOSupplier)
+   */
+  public CompletableFuture<Message> decodeAsync(
+      ByteArray encodedMessage,
+      IOSupplier<TempFileContext> tempFileContextSupplier,
+      Executor executor
+  ) {
+    return AsyncFiles.supplyAsync(() -> decode(encodedMessage, tempFileContextSupplier), executor);
+  }
+
   /**
    * Constructs a message of this type from its byte array encoding using the provided
    * {@link TempFileContext temporary file context} as-needed.
@@ -295,4 +574,63 @@ public enum MessageType {
    */
   @Deprecated(forRemoval = true)
   public abstract Message decode(ByteArray encodedMessage) throws IOException;
+
+  /**
+   * Constructs a message of this type by reading exactly {@code size} bytes of its byte array encoding
+   * from the given stream, using the provided {@link TempFileContext temporary file context} supplier as-needed.
+   *
+   * <p>This default implementation reads the encoded message into memory, growing as the bytes arrive instead of
+   * allocating {@code size} up-front.  {@link #FILE} spools directly into its temporary file, {@link #MULTI} decodes
+   * its messages incrementally, and {@link #COMPRESSED} decompresses a file directly into its temporary file.</p>
+   *
+   * @see  MessageType#decode(com.aoapps.messaging.ByteArray, com.aoapps.lang.io.function.IOSupplier)
+   */
+  public Message decode(InputStream in, int size, IOSupplier<TempFileContext> tempFileContextSupplier)
+      throws IOException {
+    return decode(new ByteArray(IoHelper.readFully(in, size)), tempFileContextSupplier);
+  }
+
+  /**
+   * Constructs a message of this type by reading exactly {@code size} bytes of its byte array encoding
+   * from the given channel, using the provided {@link TempFileContext temporary file context} supplier as-needed.
+   * The channel must be in blocking mode.
+   *
+   * <p>This default implementation reads from the channel as a stream.  {@link #FILE} transfers directly
+   * into its temporary file, and {@link #MULTI} decodes its messages incrementally.</p>
+   *
+   * @see  MessageType#decode(java.io.InputStream, int, com.aoapps.lang.io.function.IOSupplier)
+   */
+  public Message decode(ReadableByteChannel in, int size, IOSupplier<TempFileContext> tempFileContextSupplier)
+      throws IOException {
+    return decode(Channels.newInputStream(in), size, tempFileContextSupplier);
+  }
+
+  /**
+   * Constructs a message of this type from the remaining bytes of its binary encoding in a buffer, which may be
+   * off-heap, using the provided {@link TempFileContext temporary file context} supplier as-needed.
+   * The position of the buffer is not changed.
+   *
+   * <p>This default implementation copies off-heap content onto the heap.  The standard types decode without
+   * copying onto the heap, except where the decoded message requires it, such as the characters of a
+   * {@link StringMessage}.</p>
+   *
+   * @see  MessageType#decode(com.aoapps.messaging.ByteArray, com.aoapps.lang.io.function.IOSupplier)
+   */
+  public Message decode(ByteBuffer encodedMessage, IOSupplier<TempFileContext> tempFileContextSupplier)
+      throws IOException {
+    if (encodedMessage.hasArray()) {
+      return decode(
+          new ByteArray(
+              encodedMessage.array(),
+              encodedMessage.arrayOffset() + encodedMessage.position(),
+              encodedMessage.remaining()
+          ),
+          tempFileContextSupplier
+      );
+    } else {
+      byte[] array = new byte[encodedMessage.remaining()];
+      encodedMessage.duplicate().get(array);
+      return decode(new ByteArray(array), tempFileContextSupplier);
+    }
+  }
 }
@@ -1,6 +1,6 @@
 /*
  * ao-messaging-api - Asynchronous bidirectional messaging over various protocols API.
- * Copyright (C) 2014, 2015, 2016, 2017, 2019, 2020, 2021, 2022, 2025  AO Industries, Inc.
+ * Copyright (C) 2014, 2015, 2016, 2017, 2019, 2020, 2021, 2022, 2025, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -24,26 +24,58 @@
 package com.aoapps.messaging;
 
 import com.aoapps.collections.AoCollections;
-import com.aoapps.lang.io.AoByteArrayInputStream;
 import com.aoapps.lang.io.AoByteArrayOutputStream;
+import com.aoapps.lang.io.IoUtils;
 import com.aoapps.lang.io.function.IOSupplier;
 import com.aoapps.tempfiles.TempFileContext;
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.ConcurrentModificationException;
 import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * A message that is a combination of multiple messages.
  */
 public class MultiMessage implements Message {
 
-  private static final char DELIMITER = ',';
+  static final char DELIMITER = ',';
+
+  /**
+   * The number of bytes before each message: one type byte followed by an int capacity.
+   */
+  private static final int HEADER_SIZE = Byte.BYTES + Integer.BYTES;
+
+  /**
+   * The maximum initial capacity of the list of messages while decoding incrementally.
+   */
+  private static final int MAX_INITIAL_CAPACITY = 1024;
+
+  /**
+   * The maximum size of an array, which is slightly less than {@link Integer#MAX_VALUE} on some VMs.
+   */
+  private static final int MAX_ARRAY_LENGTH = Integer.MAX_VALUE - 8;
+
+  static final String END_OF_MESSAGES = "Unexpected end of encoded messages";
 
   public static final MultiMessage EMPTY_MULTI_MESSAGE = new MultiMessage(Collections.emptyList(), null);
 
@@ -52,30 +84,88 @@ public class MultiMessage implements Message {
    */
   public static MultiMessage decode(String encodedMessages, IOSupplier<TempFileContext> tempFileContextSupplier)
       throws IOException {
+    return decode(encodedMessages, 0, encodedMessages.length(), tempFileContextSupplier);
+  }
+
+  /**
+   * Decodes the messages using the provided {@link TempFileContext temporary file context} supplier as-needed,
+   * Base-64 decoding each {@link FileMessage} into its temporary file on the given executor while the remaining
+   * messages are decoded.
+   *
+   * @see  #decode(com.aoapps.messaging.ByteArray, com.aoapps.lang.io.function.IOSupplier, java.util.concurrent.Executor)
+   */
+  public static MultiMessage decode(
+      String encodedMessages,
+      IOSupplier<TempFileContext> tempFileContextSupplier,
+      Executor executor
+  ) throws IOException {
     if (encodedMessages.isEmpty()) {
       return EMPTY_MULTI_MESSAGE;
     }
+    return new MultiMessage(
+        new LazyStringMessages(encodedMessages, 0, encodedMessages.length(), tempFileContextSupplier)
+            .decodeAll(executor),
+        null
+    );
+  }
 
-    int pos = encodedMessages.indexOf(DELIMITER);
-    if (pos == -1) {
-      throw new IllegalArgumentException("Delimiter not found");
+  /**
+   * Decodes the messages from a range of characters using the provided {@link TempFileContext temporary file context}
+   * supplier as-needed.
+   *
+   * <p>The counts and lengths are parsed in place, and each message is decoded from its range of characters.
+   * A {@link String} is only created where the decoded message requires one.</p>
+   *
+   * @see  MultiMessage#decode(java.lang.String, com.aoapps.lang.io.function.IOSupplier)
+   */
+  static MultiMessage decode(
+      CharSequence encodedMessages,
+      int start,
+      int end,
+      IOSupplier<TempFileContext> tempFileContextSupplier
+  ) throws IOException {
+    if (start == end) {
+      return EMPTY_MULTI_MESSAGE;
     }
-    final int size = Integer.parseInt(encodedMessages.substring(0, pos++));
-    List<Message> decodedMessages = new ArrayList<>(size);
-    for (int i = 0; i < size; i++) {
-      MessageType type = MessageType.getFromTypeChar(encodedMessages.charAt(pos++));
-      int nextPos = encodedMessages.indexOf(DELIMITER, pos);
-      if (nextPos == -1) {
-        throw new IllegalArgumentException("Delimiter not found");
-      }
-      final int capacity = Integer.parseInt(encodedMessages.substring(pos, nextPos++));
-      pos = nextPos + capacity;
-      decodedMessages.add(type.decode(encodedMessages.substring(nextPos, pos), tempFileContextSupplier));
+    return new MultiMessage(
+        new LazyStringMessages(encodedMessages, start, end, tempFileContextSupplier).decodeAll(),
+        null
+    );
+  }
+
+  /**
+   * Indexes the messages using the provided {@link TempFileContext temporary file context} supplier as-needed,
+   * only decoding each message when first accessed.
+   *
+   * <p>Only the types and ranges of the messages are parsed up-front.  Re-encoding as a string returns the original
+   * encoding directly.  A {@link FileMessage} is only spooled to a temporary file when accessed through
+   * {@link #getMessages()}, not when encoding or hashing.  Malformed messages are only detected when decoded, at
+   * which time {@link UncheckedIOException} or {@link IllegalArgumentException} may be thrown.</p>
+   *
+   * @see  MultiMessage#decode(java.lang.String, com.aoapps.lang.io.function.IOSupplier)
+   */
+  public static MultiMessage decodeLazy(String encodedMessages, IOSupplier<TempFileContext> tempFileContextSupplier)
+      throws IOException {
+    if (encodedMessages.isEmpty()) {
+      return EMPTY_MULTI_MESSAGE;
     }
-    if (pos != encodedMessages.length()) {
-      throw new IllegalArgumentException("pos != encodedMessages.length()");
+    return new MultiMessage(
+        new LazyStringMessages(encodedMessages, 0, encodedMessages.length(), tempFileContextSupplier)
+    );
+  }
+
+  /**
+   * Finds the next delimiter within a range of characters.
+   *
+   * @return  the index of the delimiter or {@code -1} when not found
+   */
+  private static int indexOfDelimiter(CharSequence encodedMessages, int start, int end) {
+    for (int i = start; i < end; i++) {
+      if (encodedMessages.charAt(i) == DELIMITER) {
+        return i;
+      }
     }
-    return new MultiMessage(AoCollections.optimalUnmodifiableList(decodedMessages), null);
+    return -1;
   }
 
   /**
@@ -127,199 +217,1540 @@ public class MultiMessage implements Message {
 
   /**
    * Decodes the messages using the provided {@link TempFileContext temporary file context} suppler as-needed.
+   *
+   * <p>Messages are decoded from views into the encoded array without copying.  The returned messages may
+   * share the encoded array, which must not be modified afterward.</p>
    */
   public static MultiMessage decode(ByteArray encodedMessages, IOSupplier<TempFileContext> tempFileContextSupplier)
       throws IOException {
     if (encodedMessages.size == 0) {
       return EMPTY_MULTI_MESSAGE;
     }
+    return new MultiMessage(new LazyByteArrayMessages(encodedMessages, tempFileContextSupplier).decodeAll(), null);
+  }
 
-    try (DataInputStream in = new DataInputStream(new AoByteArrayInputStream(encodedMessages.array))) {
-      int totalRead = 0;
-      final int size = in.readInt();
-      totalRead += 4;
-      List<Message> decodedMessages = new ArrayList<>(size);
-      for (int i = 0; i < size; i++) {
-        final MessageType type = MessageType.getFromTypeByte(in.readByte());
-        totalRead++;
-        final int capacity = in.readInt();
-        totalRead += 4;
-        byte[] encodedMessage = new byte[capacity];
-        in.readFully(encodedMessage, 0, capacity);
-        totalRead += capacity;
-        decodedMessages.add(type.decode(new ByteArray(encodedMessage, capacity), tempFileContextSupplier));
-      }
-      if (totalRead != encodedMessages.size) {
-        throw new IllegalArgumentException("totalRead != encodedMessages.size");
-      }
-      return new MultiMessage(AoCollections.optimalUnmodifiableList(decodedMessages), null);
+  /**
+   * Decodes the messages using the provided {@link TempFileContext temporary file context} suppler as-needed,
+   * writing the temporary file of each {@link FileMessage} on the given executor while the remaining messages are
+   * decoded.  This is the same as
+   * {@link #decode(com.aoapps.messaging.ByteArray, com.aoapps.lang.io.function.IOSupplier)}, but the files are
+   * written concurrently.
+   *
+   * <p>The executor should be bounded to suit the storage.  A task rejected by the executor is run on the calling
+   * thread.  All files are written before returning.  On failure, every temporary file already created is deleted.
+   * A nested {@link MultiMessage} is decoded on the calling thread.</p>
+   */
+  public static MultiMessage decode(
+      ByteArray encodedMessages,
+      IOSupplier<TempFileContext> tempFileContextSupplier,
+      Executor executor
+  ) throws IOException {
+    if (encodedMessages.size == 0) {
+      return EMPTY_MULTI_MESSAGE;
     }
+    return new MultiMessage(
+        new LazyByteArrayMessages(encodedMessages, tempFileContextSupplier).decodeAll(executor),
+        null
+    );
   }
 
   /**
-   * Decodes the messages using the provided {@link TempFileContext temporary file context} as-needed.
+   * Indexes the messages using the provided {@link TempFileContext temporary file context} supplier as-needed,
+   * only decoding each message when first accessed.
    *
-   * @see  MultiMessage#decode(com.aoapps.messaging.ByteArray, com.aoapps.lang.io.function.IOSupplier)
+   * <p>Only the types and ranges of the messages are parsed up-front.  Re-encoding as bytes returns the original
+   * encoding directly, and each {@link StringMessage} is
+   * {@link StringMessage#decodeLazy(com.aoapps.messaging.ByteArray) backed by its bytes}.  A {@link FileMessage} is
+   * only spooled to a temporary file when accessed through {@link #getMessages()}, not when encoding or hashing.
+   * Malformed messages are only detected when decoded, at which time {@link UncheckedIOException} or
+   * {@link IllegalArgumentException} may be thrown.</p>
    *
-   * @deprecated  Please use {@link TempFileContext} supplier which may defer creation until first needed.
+   * <p>Messages are decoded from views into the encoded array without copying.  The returned messages may
+   * share the encoded array, which must not be modified afterward.</p>
+   *
+   * @see  MultiMessage#decode(com.aoapps.messaging.ByteArray, com.aoapps.lang.io.function.IOSupplier)
    */
-  public static MultiMessage decode(ByteArray encodedMessages, TempFileContext tempFileContext) throws IOException {
-    return decode(encodedMessages, () -> tempFileContext);
+  public static MultiMessage decodeLazy(ByteArray encodedMessages, IOSupplier<TempFileContext> tempFileContextSupplier)
+      throws IOException {
+    if (encodedMessages.size == 0) {
+      return EMPTY_MULTI_MESSAGE;
+    }
+    return new MultiMessage(new LazyByteArrayMessages(encodedMessages, tempFileContextSupplier));
   }
 
   /**
-   * Decodes the messages, possibly using temporary files with {@link File#deleteOnExit()} as-needed.
+   * Decodes the messages in the given format using the provided {@link TempFileContext temporary file context}
+   * supplier as-needed.
    *
+   * @see  WireFormat#getFromEncoding(com.aoapps.messaging.ByteArray)
    * @see  MultiMessage#decode(com.aoapps.messaging.ByteArray, com.aoapps.lang.io.function.IOSupplier)
+   */
+  public static MultiMessage decode(
+      ByteArray encodedMessages,
+      WireFormat format,
+      IOSupplier<TempFileContext> tempFileContextSupplier
+  ) throws IOException {
+    return format.decode(encodedMessages, tempFileContextSupplier);
+  }
+
+  /**
+   * Decodes the messages in the given format using the provided {@link TempFileContext temporary file context}
+   * supplier as-needed.
    *
-   * @deprecated  Please use {@link TempFileContext} supplier since {@link File#deleteOnExit()} is prone to memory leaks
-   *              in long-running applications.
+   * @see  WireFormat#getFromEncoding(java.lang.CharSequence)
+   * @see  MultiMessage#decode(java.lang.String, com.aoapps.lang.io.function.IOSupplier)
    */
-  @Deprecated(forRemoval = true)
-  public static MultiMessage decode(ByteArray encodedMessages) throws IOException {
+  public static MultiMessage decode(
+      String encodedMessages,
+      WireFormat format,
+      IOSupplier<TempFileContext> tempFileContextSupplier
+  ) throws IOException {
+    return format.decode(encodedMessages, 0, encodedMessages.length(), tempFileContextSupplier);
+  }
+
+  /**
+   * Decodes the messages in the {@link WireFormat#V2} binary format.
+   * Messages are decoded from views into the encoded array without copying.
+   */
+  static MultiMessage decodeCompact(ByteArray encodedMessages, IOSupplier<TempFileContext> tempFileContextSupplier)
+      throws IOException {
     if (encodedMessages.size == 0) {
       return EMPTY_MULTI_MESSAGE;
     }
 
-    try (DataInputStream in = new DataInputStream(new AoByteArrayInputStream(encodedMessages.array))) {
-      int totalRead = 0;
-      final int size = in.readInt();
-      totalRead += 4;
-      List<Message> decodedMessages = new ArrayList<>(size);
+    ByteBuffer buffer = encodedMessages.toByteBuffer();
+    if (buffer.get() != WireFormat.MARKER) {
+      throw new IllegalArgumentException("Not in " + WireFormat.V2 + " format");
+    }
+    final long size = WireFormat.getVarint(buffer);
+    // Each message is at least a one-byte header
+    if (size > buffer.remaining()) {
+      throw new EOFException(END_OF_MESSAGES);
+    }
+    List<Message> decodedMessages = new ArrayList<>((int) size);
+    try {
       for (int i = 0; i < size; i++) {
-        final MessageType type = MessageType.getFromTypeByte(in.readByte());
-        totalRead++;
-        final int capacity = in.readInt();
-        totalRead += 4;
-        byte[] encodedMessage = new byte[capacity];
-        in.readFully(encodedMessage, 0, capacity);
-        totalRead += capacity;
-        decodedMessages.add(type.decode(new ByteArray(encodedMessage, capacity)));
+        long packed = WireFormat.getVarint(buffer);
+        final MessageType type = WireFormat.getType(packed);
+        final int capacity = WireFormat.getCapacity(packed);
+        if (buffer.remaining() < capacity) {
+          throw new EOFException(END_OF_MESSAGES);
+        }
+        ByteArray encodedMessage = new ByteArray(
+            encodedMessages.array,
+            encodedMessages.offset + buffer.position(),
+            capacity
+        );
+        decodedMessages.add(
+            (type == MessageType.MULTI)
+                ? decodeCompact(encodedMessage, tempFileContextSupplier)
+                : type.decode(encodedMessage, tempFileContextSupplier)
+        );
+        buffer.position(buffer.position() + capacity);
       }
-      if (totalRead != encodedMessages.size) {
+      if (buffer.hasRemaining()) {
         throw new IllegalArgumentException("totalRead != encodedMessages.size");
       }
-      return new MultiMessage(AoCollections.optimalUnmodifiableList(decodedMessages), null);
+    } catch (Throwable t) {
+      closeAll(decodedMessages, t);
+      throw t;
     }
+    return new MultiMessage(AoCollections.optimalUnmodifiableList(decodedMessages), null);
   }
 
-  private final Collection<? extends Message> unmodifiableMessages;
-
   /**
-   * Creates a new multi-message.
-   *
-   * @param  messages  The unmodifiable messages, no defensive copy if performed
+   * Decodes the messages in the {@link WireFormat#V2} string format from a range of characters.
    */
-  private MultiMessage(Collection<? extends Message> unmodifiableMessages, Void unused) {
-    this.unmodifiableMessages = unmodifiableMessages;
+  static MultiMessage decodeCompact(
+      CharSequence encodedMessages,
+      int start,
+      int end,
+      IOSupplier<TempFileContext> tempFileContextSupplier
+  ) throws IOException {
+    if (start == end) {
+      return EMPTY_MULTI_MESSAGE;
+    }
+
+    CharBuffer buffer = CharBuffer.wrap(encodedMessages, start, end);
+    if (buffer.get() != WireFormat.STRING_MARKER) {
+      throw new IllegalArgumentException("Not in " + WireFormat.V2 + " format");
+    }
+    final long size = WireFormat.getVarint(buffer);
+    // Each message is at least a one-character header
+    if (size > buffer.remaining()) {
+      throw new StringIndexOutOfBoundsException("size > remaining: " + size + " > " + buffer.remaining());
+    }
+    List<Message> decodedMessages = new ArrayList<>((int) size);
+    try {
+      for (int i = 0; i < size; i++) {
+        long packed = WireFormat.getVarint(buffer);
+        final MessageType type = WireFormat.getType(packed);
+        final int capacity = WireFormat.getCapacity(packed);
+        final int pos = buffer.position();
+        if (buffer.remaining() < capacity) {
+          throw new StringIndexOutOfBoundsException("begin " + pos + ", end " + (pos + capacity) + ", length " + end);
+        }
+        decodedMessages.add(
+            (type == MessageType.MULTI)
+                ? decodeCompact(encodedMessages, pos, pos + capacity, tempFileContextSupplier)
+                : type.decode(encodedMessages, pos, pos + capacity, tempFileContextSupplier)
+        );
+        buffer.position(pos + capacity);
+      }
+      if (buffer.hasRemaining()) {
+        throw new IllegalArgumentException("pos != encodedMessages.length()");
+      }
+    } catch (Throwable t) {
+      closeAll(decodedMessages, t);
+      throw t;
+    }
+    return new MultiMessage(AoCollections.optimalUnmodifiableList(decodedMessages), null);
   }
 
   /**
-   * Creates a new multi-message.
-   *
-   * @param  messages  The messages or {@code null} for none, defensive copy if performed
+   * The types and ranges of encoded messages, each decoded when first accessed.
    */
-  public MultiMessage(Collection<? extends Message> messages) {
-    this((messages == null) ? Collections.emptyList() : AoCollections.unmodifiableCopyCollection(messages), null);
-  }
+  private abstract static class LazyMessages extends AbstractList<Message> implements RandomAccess {
 
-  @Override
-  public String toString() {
-    return "MultiMessage(" + unmodifiableMessages.size() + ")";
-  }
+    final IOSupplier<TempFileContext> tempFileContextSupplier;
+    MessageType[] types;
+    int[] starts;
+    int[] ends;
+    private Message[] decoded;
 
-  @Override
-  public boolean equals(Object o) {
-    if (this == o) {
-      return true;
+    /**
+     * A view of the messages for encoding, where a {@link FileMessage} that has not yet been decoded is
+     * represented by its content in memory instead of spooling to a temporary file.
+     */
+    final List<Message> encodingView = new AbstractList<>() {
+      @Override
+      public Message get(int index) {
+        synchronized (decoded) {
+          Message message = decoded[index];
+          if (message != null) {
+            return message;
+          }
+        }
+        return (types[index] == MessageType.FILE) ? decodeFileContent(index) : LazyMessages.this.get(index);
+      }
+
+      @Override
+      public int size() {
+        return types.length;
+      }
+    };
+
+    LazyMessages(IOSupplier<TempFileContext> tempFileContextSupplier) {
+      this.tempFileContextSupplier = tempFileContextSupplier;
     }
-    if (!(o instanceof MultiMessage)) {
-      return false;
+
+    /**
+     * Allocates the index once the number of messages is known.
+     */
+    void init(int size) {
+      types = new MessageType[size];
+      starts = new int[size];
+      ends = new int[size];
+      decoded = new Message[size];
     }
-    MultiMessage other = (MultiMessage) o;
-    return AoCollections.equals(unmodifiableMessages, other.unmodifiableMessages);
-  }
 
-  @Override
-  public int hashCode() {
-    return AoCollections.hashCode(unmodifiableMessages);
+    /**
+     * Decodes a message.
+     *
+     * @param  lazy  when {@code true}, a nested {@link MultiMessage} is also decoded lazily
+     */
+    abstract Message decode(int index, boolean lazy) throws IOException;
+
+    /**
+     * Decodes the content of a {@link FileMessage} into memory.
+     */
+    abstract FileContent decodeFileContent(int index);
+
+    @Override
+    public Message get(int index) {
+      synchronized (decoded) {
+        Message message = decoded[index];
+        if (message == null) {
+          try {
+            message = decode(index, true);
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+          decoded[index] = message;
+        }
+        return message;
+      }
+    }
+
+    @Override
+    public int size() {
+      return types.length;
+    }
+
+    /**
+     * Eagerly decodes all messages, closing any decoded messages on failure.
+     */
+    List<Message> decodeAll() throws IOException {
+      List<Message> decodedMessages = new ArrayList<>(types.length);
+      try {
+        for (int i = 0; i < types.length; i++) {
+          decodedMessages.add(decode(i, false));
+        }
+      } catch (Throwable t) {
+        closeAll(decodedMessages, t);
+        throw t;
+      }
+      return AoCollections.optimalUnmodifiableList(decodedMessages);
+    }
+
+    /**
+     * Eagerly decodes all messages, writing each {@link FileMessage} into its temporary file on the given executor
+     * while the other messages are decoded.  Temporary files are created on the calling thread, so the supplier is
+     * not accessed concurrently.  All writes complete before returning.  On failure, all decoded messages are closed
+     * and any temporary file not yet part of a decoded message is deleted.
+     */
+    List<Message> decodeAll(Executor executor) throws IOException {
+      final int size = types.length;
+      int fileCount = 0;
+      for (MessageType type : types) {
+        if (type == MessageType.FILE) {
+          fileCount++;
+        }
+      }
+      if (fileCount == 0) {
+        return decodeAll();
+      }
+      final Message[] decodedMessages = new Message[size];
+      final File[] files = new File[size];
+      final Throwable[] failures = new Throwable[size];
+      final CountDownLatch done = new CountDownLatch(fileCount);
+      int submitted = 0;
+      Throwable failure = null;
+      try {
+        for (int i = 0; i < size; i++) {
+          if (types[i] == MessageType.FILE) {
+            final int index = i;
+            final File file = MessageType.createTempFile(tempFileContextSupplier);
+            files[index] = file;
+            Runnable task = () -> {
+              try {
+                decodedMessages[index] = decodeFile(index, file);
+              } catch (Throwable t) {
+                failures[index] = t;
+              } finally {
+                done.countDown();
+              }
+            };
+            try {
+              executor.execute(task);
+            } catch (RejectedExecutionException e) {
+              task.run();
+            }
+            // Only counted once the task will count down, so a failure to execute still counts down its slot below
+            submitted++;
+          } else {
+            decodedMessages[i] = decode(i, false);
+          }
+        }
+      } catch (Throwable t) {
+        failure = t;
+        for (int i = submitted; i < fileCount; i++) {
+          done.countDown();
+        }
+      }
+      // Tasks write into the arrays
+      awaitUninterruptibly(done);
+      failure = combineFailures(failure, failures);
+      if (failure != null) {
+        List<Message> decodedList = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+          Message message = decodedMessages[i];
+          if (message != null) {
+            decodedList.add(message);
+          } else if (files[i] != null) {
+            try {
+              Files.deleteIfExists(files[i].toPath());
+            } catch (Throwable t) {
+              failure.addSuppressed(t);
+            }
+          }
+        }
+        closeAll(decodedList, failure);
+        throw rethrow(failure);
+      }
+      return AoCollections.optimalUnmodifiableList(Arrays.asList(decodedMessages));
+    }
+
+    /**
+     * Decodes a {@link FileMessage} into the given file.
+     */
+    abstract FileMessage decodeFile(int index, File file) throws IOException;
+
+    /**
+     * Checks if the original encodings are equal, in which case the messages are equal without decoding.
+     */
+    abstract boolean encodingEquals(LazyMessages other);
+
+    /**
+     * Closes each message that has been decoded.
+     */
+    void close() throws IOException {
+      synchronized (decoded) {
+        for (Message message : decoded) {
+          if (message != null) {
+            message.close();
+          }
+        }
+      }
+    }
   }
 
-  @Override
-  public MessageType getMessageType() {
-    return MessageType.MULTI;
+  /**
+   * The content of a {@link FileMessage} in memory, which has the same encodings and hash code as the file.
+   * This is only used for encoding and hashing, never for equality.
+   */
+  private static final class FileContent extends ByteArrayMessage {
+
+    private FileContent(ByteArray content) {
+      super(content);
+    }
+
+    @Override
+    public MessageType getMessageType() {
+      return MessageType.FILE;
+    }
   }
 
   /**
-   * Encodes the messages into a single string.
+   * The index of messages encoded in a range of characters.
    */
-  @Override
-  public String encodeAsString() throws IOException {
-    final int size = unmodifiableMessages.size();
-    if (size == 0) {
-      return "";
+  private static final class LazyStringMessages extends LazyMessages {
+
+    private final CharSequence encodedMessages;
+    private final int start;
+    private final int end;
+
+    private LazyStringMessages(
+        CharSequence encodedMessages,
+        int start,
+        int end,
+        IOSupplier<TempFileContext> tempFileContextSupplier
+    ) {
+      super(tempFileContextSupplier);
+      this.encodedMessages = encodedMessages;
+      this.start = start;
+      this.end = end;
+      int pos = indexOfDelimiter(encodedMessages, start, end);
+      if (pos == -1) {
+        throw new IllegalArgumentException("Delimiter not found");
+      }
+      final int size = Integer.parseInt(encodedMessages, start, pos++, 10);
+      if (size < 0) {
+        throw new IllegalArgumentException("size < 0: " + size);
+      }
+      // Each message is at least a type, a length, and a delimiter, so a larger size is not allocated.  It is still
+      // parsed, failing the same as when decoded eagerly.
+      final boolean index = size <= (end - pos) / 3;
+      if (index) {
+        init(size);
+      }
+      for (int i = 0; i < size; i++) {
+        if (pos >= end) {
+          // Not reading past the range
+          throw new StringIndexOutOfBoundsException("index " + pos + ", length " + end);
+        }
+        final MessageType type = MessageType.getFromTypeChar(encodedMessages.charAt(pos++));
+        int nextPos = indexOfDelimiter(encodedMessages, pos, end);
+        if (nextPos == -1) {
+          throw new IllegalArgumentException("Delimiter not found");
+        }
+        final int capacity = Integer.parseInt(encodedMessages, pos, nextPos++, 10);
+        pos = nextPos + capacity;
+        if (capacity < 0 || pos > end) {
+          throw new StringIndexOutOfBoundsException("begin " + nextPos + ", end " + pos + ", length " + end);
+        }
+        if (index) {
+          types[i] = type;
+          starts[i] = nextPos;
+          ends[i] = pos;
+        }
+      }
+      assert index;
+      if (pos != end) {
+        throw new IllegalArgumentException("pos != encodedMessages.length()");
+      }
     }
 
-    StringBuilder sb = new StringBuilder();
-    sb.append(size).append(DELIMITER);
-    int count = 0;
-    for (Message message : unmodifiableMessages) {
-      count++;
-      String str = message.encodeAsString();
-      sb
-          .append(message.getMessageType().getTypeChar())
-          .append(str.length())
-          .append(DELIMITER)
-          .append(str);
+    @Override
+    Message decode(int index, boolean lazy) throws IOException {
+      if (lazy && types[index] == MessageType.MULTI) {
+        return (starts[index] == ends[index])
+            ? EMPTY_MULTI_MESSAGE
+            : new MultiMessage(
+                new LazyStringMessages(encodedMessages, starts[index], ends[index], tempFileContextSupplier)
+            );
+      }
+      return types[index].decode(encodedMessages, starts[index], ends[index], tempFileContextSupplier);
     }
-    if (count != size) {
-      throw new ConcurrentModificationException();
+
+    @Override
+    FileContent decodeFileContent(int index) {
+      return new FileContent(ByteArrayMessage.decode(encodedMessages, starts[index], ends[index]).getMessage());
+    }
+
+    @Override
+    FileMessage decodeFile(int index, File file) throws IOException {
+      return FileMessage.decode(encodedMessages, starts[index], ends[index], file);
+    }
+
+    @Override
+    boolean encodingEquals(LazyMessages other) {
+      if (!(other instanceof LazyStringMessages)) {
+        return false;
+      }
+      LazyStringMessages otherString = (LazyStringMessages) other;
+      int len = end - start;
+      if (otherString.end - otherString.start != len) {
+        return false;
+      }
+      for (int i = 0; i < len; i++) {
+        if (encodedMessages.charAt(start + i) != otherString.encodedMessages.charAt(otherString.start + i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Gets the original encoding.
+     */
+    private String getEncodedString() {
+      if (start == 0 && end == encodedMessages.length()) {
+        return encodedMessages.toString();
+      }
+      return encodedMessages.subSequence(start, end).toString();
     }
-    return sb.toString();
   }
 
   /**
-   * Encodes the messages into a single ByteArray.
-   * There is likely a more efficient implementation that reads-through, but this
-   * is a simple implementation.
+   * The index of messages encoded in a range of bytes.
    */
-  @Override
-  public ByteArray encodeAsByteArray() throws IOException {
-    final int size = unmodifiableMessages.size();
-    if (size == 0) {
-      return ByteArray.EMPTY_BYTE_ARRAY;
+  private static final class LazyByteArrayMessages extends LazyMessages {
+
+    private final ByteArray encodedMessages;
+
+    private LazyByteArrayMessages(ByteArray encodedMessages, IOSupplier<TempFileContext> tempFileContextSupplier)
+        throws EOFException {
+      super(tempFileContextSupplier);
+      this.encodedMessages = encodedMessages;
+      final byte[] array = encodedMessages.array;
+      final int end = encodedMessages.offset + encodedMessages.size;
+      int pos = encodedMessages.offset;
+      if (end - pos < Integer.BYTES) {
+        throw new EOFException(END_OF_MESSAGES);
+      }
+      final int size = IoUtils.bufferToInt(array, pos);
+      pos += Integer.BYTES;
+      if (size < 0) {
+        throw new IllegalArgumentException("size < 0: " + size);
+      }
+      if (size > (end - pos) / HEADER_SIZE) {
+        throw new EOFException(END_OF_MESSAGES);
+      }
+      init(size);
+      for (int i = 0; i < size; i++) {
+        if (end - pos < HEADER_SIZE) {
+          throw new EOFException(END_OF_MESSAGES);
+        }
+        types[i] = MessageType.getFromTypeByte(array[pos++]);
+        final int capacity = IoUtils.bufferToInt(array, pos);
+        pos += Integer.BYTES;
+        if (capacity < 0) {
+          throw new IllegalArgumentException("capacity < 0: " + capacity);
+        }
+        if (end - pos < capacity) {
+          throw new EOFException(END_OF_MESSAGES);
+        }
+        starts[i] = pos;
+        pos += capacity;
+        ends[i] = pos;
+      }
+      if (pos != end) {
+        throw new IllegalArgumentException("totalRead != encodedMessages.size");
+      }
     }
 
-    AoByteArrayOutputStream bout = new AoByteArrayOutputStream();
-    try {
-      try (DataOutputStream out = new DataOutputStream(bout)) {
-        out.writeInt(size);
-        int count = 0;
-        for (Message message : unmodifiableMessages) {
-          count++;
-          ByteArray byteArray = message.encodeAsByteArray();
-          final int capacity = byteArray.size;
-          out.writeByte(message.getMessageType().getTypeByte());
-          out.writeInt(capacity);
-          out.write(byteArray.array, 0, capacity);
+    private ByteArray getEncodedMessage(int index) {
+      return new ByteArray(encodedMessages.array, starts[index], ends[index] - starts[index]);
+    }
+
+    @Override
+    Message decode(int index, boolean lazy) throws IOException {
+      if (lazy) {
+        if (types[index] == MessageType.MULTI) {
+          return decodeLazy(getEncodedMessage(index), tempFileContextSupplier);
         }
-        if (count != size) {
-          throw new ConcurrentModificationException();
+        if (types[index] == MessageType.STRING) {
+          return StringMessage.decodeLazy(getEncodedMessage(index));
         }
       }
-    } finally {
-      bout.close();
+      return types[index].decode(getEncodedMessage(index), tempFileContextSupplier);
+    }
+
+    @Override
+    FileContent decodeFileContent(int index) {
+      return new FileContent(getEncodedMessage(index));
+    }
+
+    @Override
+    FileMessage decodeFile(int index, File file) throws IOException {
+      return FileMessage.decode(getEncodedMessage(index), file);
+    }
+
+    @Override
+    boolean encodingEquals(LazyMessages other) {
+      return (other instanceof LazyByteArrayMessages)
+          && encodedMessages.equals(((LazyByteArrayMessages) other).encodedMessages);
     }
-    return new ByteArray(bout.getInternalByteArray(), bout.size());
   }
 
   /**
-   * Closes each of the underlying messages.
+   * Decodes the messages using the provided {@link TempFileContext temporary file context} as-needed.
+   *
+   * @see  MultiMessage#decode(com.aoapps.messaging.ByteArray, com.aoapps.lang.io.function.IOSupplier)
+   *
+   * @deprecated  Please use {@link TempFileContext} supplier which may defer creation until first needed.
    */
-  @Override
-  public void close() throws IOException {
+  public static MultiMessage decode(ByteArray encodedMessages, TempFileContext tempFileContext) throws IOException {
+    return decode(encodedMessages, () -> tempFileContext);
+  }
+
+  /**
+   * Decodes the messages from the remaining bytes of a buffer, which may be off-heap, using the provided
+   * {@link TempFileContext temporary file context} supplier as-needed.  The position of the buffer is not changed.
+   *
+   * <p>Messages are decoded from views into the buffer without copying.  The returned messages may
+   * share the buffer, which must not be modified afterward.</p>
+   *
+   * @see  MultiMessage#decode(com.aoapps.messaging.ByteArray, com.aoapps.lang.io.function.IOSupplier)
+   */
+  public static MultiMessage decode(ByteBuffer encodedMessages, IOSupplier<TempFileContext> tempFileContextSupplier)
+      throws IOException {
+    if (!encodedMessages.hasRemaining()) {
+      return EMPTY_MULTI_MESSAGE;
+    }
+
+    ByteBuffer buffer = encodedMessages.duplicate().order(ByteOrder.BIG_ENDIAN);
+    final int end = buffer.limit();
+    int pos = buffer.position();
+    if (end - pos < Integer.BYTES) {
+      throw new EOFException(END_OF_MESSAGES);
+    }
+    final int size = buffer.getInt(pos);
+    pos += Integer.BYTES;
+    if (size < 0) {
+      throw new IllegalArgumentException("size < 0: " + size);
+    }
+    List<Message> decodedMessages = new ArrayList<>(Math.min(size, (end - pos) / HEADER_SIZE));
+    try {
+      for (int i = 0; i < size; i++) {
+        if (end - pos < HEADER_SIZE) {
+          throw new EOFException(END_OF_MESSAGES);
+        }
+        final MessageType type = MessageType.getFromTypeByte(buffer.get(pos++));
+        final int capacity = buffer.getInt(pos);
+        pos += Integer.BYTES;
+        if (capacity < 0) {
+          throw new IllegalArgumentException("capacity < 0: " + capacity);
+        }
+        if (end - pos < capacity) {
+          throw new EOFException(END_OF_MESSAGES);
+        }
+        buffer.limit(pos + capacity).position(pos);
+        decodedMessages.add(type.decode(buffer.slice(), tempFileContextSupplier));
+        buffer.limit(end);
+        pos += capacity;
+      }
+      if (pos != end) {
+        throw new IllegalArgumentException("totalRead != encodedMessages.size");
+      }
+    } catch (Throwable t) {
+      closeAll(decodedMessages, t);
+      throw t;
+    }
+    return new MultiMessage(AoCollections.optimalUnmodifiableList(decodedMessages), null);
+  }
+
+  /**
+   * Decodes the messages, possibly using temporary files with {@link File#deleteOnExit()} as-needed.
+   *
+   * @see  MultiMessage#decode(com.aoapps.messaging.ByteArray, com.aoapps.lang.io.function.IOSupplier)
+   *
+   * @deprecated  Please use {@link TempFileContext} supplier since {@link File#deleteOnExit()} is prone to memory leaks
+   *              in long-running applications.
+   */
+  @Deprecated(forRemoval = true)
+  public static MultiMessage decode(ByteArray encodedMessages) throws IOException {
+    if (encodedMessages.size == 0) {
+      return EMPTY_MULTI_MESSAGE;
+    }
+
+    final byte[] array = encodedMessages.array;
+    final int end = encodedMessages.offset + encodedMessages.size;
+    int pos = encodedMessages.offset;
+    if (end - pos < Integer.BYTES) {
+      throw new EOFException(END_OF_MESSAGES);
+    }
+    final int size = IoUtils.bufferToInt(array, pos);
+    pos += Integer.BYTES;
+    if (size < 0) {
+      throw new IllegalArgumentException("size < 0: " + size);
+    }
+    List<Message> decodedMessages = new ArrayList<>(Math.min(size, (end - pos) / HEADER_SIZE));
+    for (int i = 0; i < size; i++) {
+      if (end - pos < HEADER_SIZE) {
+        throw new EOFException(END_OF_MESSAGES);
+      }
+      final MessageType type = MessageType.getFromTypeByte(array[pos++]);
+      final int capacity = IoUtils.bufferToInt(array, pos);
+      pos += Integer.BYTES;
+      if (capacity < 0) {
+        throw new IllegalArgumentException("capacity < 0: " + capacity);
+      }
+      if (end - pos < capacity) {
+        throw new EOFException(END_OF_MESSAGES);
+      }
+      decodedMessages.add(type.decode(new ByteArray(array, pos, capacity)));
+      pos += capacity;
+    }
+    if (pos != end) {
+      throw new IllegalArgumentException("totalRead != encodedMessages.size");
+    }
+    return new MultiMessage(AoCollections.optimalUnmodifiableList(decodedMessages), null);
+  }
+
+  /**
+   * Decodes the messages from the given stream using the provided {@link TempFileContext temporary file context}
+   * supplier as-needed.  The stream is read to its end and must contain exactly one set of messages encoded by
+   * {@link #writeTo(java.io.OutputStream)} or {@link #encodeAsByteArray()}.
+   *
+   * <p>Messages are decoded incrementally as the stream is read.  Each {@link FileMessage} is spooled directly
+   * into its temporary file, so memory use does not depend on the size of file messages.</p>
+   *
+   * <p>The stream is not closed.</p>
+   *
+   * @see  MultiMessage#decode(com.aoapps.messaging.ByteArray, com.aoapps.lang.io.function.IOSupplier)
+   */
+  public static MultiMessage decode(InputStream in, IOSupplier<TempFileContext> tempFileContextSupplier)
+      throws IOException {
+    return decode(in, -1, tempFileContextSupplier);
+  }
+
+  /**
+   * Decodes the messages from the given channel using the provided {@link TempFileContext temporary file context}
+   * supplier as-needed.  Each {@link FileMessage} is transferred directly into its temporary file with
+   * {@link java.nio.channels.FileChannel#transferFrom(java.nio.channels.ReadableByteChannel, long, long)}.
+   *
+   * <p>The channel must be in blocking mode.  The channel is not closed.</p>
+   *
+   * @see  MultiMessage#decode(java.io.InputStream, com.aoapps.lang.io.function.IOSupplier)
+   */
+  public static MultiMessage decode(ReadableByteChannel in, IOSupplier<TempFileContext> tempFileContextSupplier)
+      throws IOException {
+    return decode(in, -1, tempFileContextSupplier);
+  }
+
+  /**
+   * Decodes the messages from exactly {@code length} bytes of the given stream, or from the remainder of the
+   * stream when {@code length} is {@code -1}.
+   */
+  static MultiMessage decode(InputStream in, long length, IOSupplier<TempFileContext> tempFileContextSupplier)
+      throws IOException {
+    return decode(in, length, (type, capacity) -> type.decode(in, capacity, tempFileContextSupplier));
+  }
+
+  /**
+   * Decodes the messages from exactly {@code length} bytes of the given channel, or from the remainder of the
+   * channel when {@code length} is {@code -1}.
+   */
+  static MultiMessage decode(ReadableByteChannel in, long length, IOSupplier<TempFileContext> tempFileContextSupplier)
+      throws IOException {
+    // Channels.newInputStream does not read ahead, so the framing may be read through it while messages
+    // are read directly from the channel
+    return decode(
+        Channels.newInputStream(in),
+        length,
+        (type, capacity) -> type.decode(in, capacity, tempFileContextSupplier)
+    );
+  }
+
+  /**
+   * Decodes a single message of the given type, reading exactly {@code capacity} bytes.
+   */
+  @FunctionalInterface
+  private interface MessageDecoder {
+    Message decode(MessageType type, int capacity) throws IOException;
+  }
+
+  private static MultiMessage decode(InputStream in, long length, MessageDecoder decoder) throws IOException {
+    if (length == 0) {
+      return EMPTY_MULTI_MESSAGE;
+    }
+
+    byte[] header = new byte[HEADER_SIZE];
+    if (length == -1) {
+      int first = in.read();
+      if (first == -1) {
+        return EMPTY_MULTI_MESSAGE;
+      }
+      header[0] = (byte) first;
+      IoHelper.readFully(in, header, 1, Integer.BYTES - 1);
+    } else {
+      IoHelper.readFully(in, header, 0, Integer.BYTES);
+    }
+    long totalRead = Integer.BYTES;
+    final int size = IoUtils.bufferToInt(header, 0);
+    if (size < 0) {
+      throw new IllegalArgumentException("size < 0: " + size);
+    }
+    // Size is not trusted for initial capacity, since it has not yet been verified against the stream
+    List<Message> decodedMessages = new ArrayList<>(Math.min(size, MAX_INITIAL_CAPACITY));
+    try {
+      for (int i = 0; i < size; i++) {
+        IoHelper.readFully(in, header, 0, HEADER_SIZE);
+        totalRead += HEADER_SIZE;
+        final MessageType type = MessageType.getFromTypeByte(header[0]);
+        final int capacity = IoUtils.bufferToInt(header, 1);
+        if (capacity < 0) {
+          throw new IllegalArgumentException("capacity < 0: " + capacity);
+        }
+        totalRead += capacity;
+        if (length != -1 && totalRead > length) {
+          throw new IllegalArgumentException("totalRead > encodedMessages.size");
+        }
+        decodedMessages.add(decoder.decode(type, capacity));
+      }
+      if (length == -1) {
+        if (in.read() != -1) {
+          throw new IllegalArgumentException("Unexpected data after messages");
+        }
+      } else if (totalRead != length) {
+        throw new IllegalArgumentException("totalRead != encodedMessages.size");
+      }
+      return new MultiMessage(AoCollections.optimalUnmodifiableList(decodedMessages), null);
+    } catch (Throwable t) {
+      closeAll(decodedMessages, t);
+      throw t;
+    }
+  }
+
+  /**
+   * Closes all messages that were decoded before a failure, adding any exceptions as suppressed.
+   */
+  private static void closeAll(Iterable<? extends Message> messages, Throwable t) {
+    for (Message message : messages) {
+      try {
+        message.close();
+      } catch (Throwable t2) {
+        t.addSuppressed(t2);
+      }
+    }
+  }
+
+  /**
+   * Waits for concurrent tasks that share state with the calling thread, so they must complete even when interrupted.
+   * The interrupted status is restored after waiting.
+   */
+  private static void awaitUninterruptibly(CountDownLatch done) {
+    boolean interrupted = false;
+    while (true) {
+      try {
+        done.await();
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Combines the failures of concurrent tasks, in order, with the first thrown and the others suppressed.
+   *
+   * @return  the first failure or {@code null} when none failed
+   */
+  private static Throwable combineFailures(Throwable failure, Throwable[] failures) {
+    for (Throwable t : failures) {
+      if (t != null && t != failure) {
+        if (failure == null) {
+          failure = t;
+        } else {
+          failure.addSuppressed(t);
+        }
+      }
+    }
+    return failure;
+  }
+
+  /**
+   * Throws a failure of a concurrent task as-is when possible.
+   */
+  private static IOException rethrow(Throwable failure) throws IOException {
+    if (failure instanceof IOException) {
+      throw (IOException) failure;
+    }
+    if (failure instanceof RuntimeException) {
+      throw (RuntimeException) failure;
+    }
+    if (failure instanceof Error) {
+      throw (Error) failure;
+    }
+    throw new IOException(failure);
+  }
+
+  private final Collection<? extends Message> unmodifiableMessages;
+
+  /**
+   * The messages when decoded lazily, or {@code null} when all messages are decoded.
+   */
+  private final LazyMessages lazyMessages;
+
+  /**
+   * Creates a new multi-message.
+   *
+   * @param  messages  The unmodifiable messages, no defensive copy if performed
+   */
+  private MultiMessage(Collection<? extends Message> unmodifiableMessages, Void unused) {
+    this.unmodifiableMessages = unmodifiableMessages;
+    this.lazyMessages = null;
+  }
+
+  /**
+   * Creates a new lazily decoded multi-message.
+   */
+  private MultiMessage(LazyMessages lazyMessages) {
+    this.unmodifiableMessages = lazyMessages;
+    this.lazyMessages = lazyMessages;
+  }
+
+  /**
+   * Creates a new multi-message.
+   *
+   * @param  messages  The messages or {@code null} for none, defensive copy if performed
+   */
+  public MultiMessage(Collection<? extends Message> messages) {
+    this((messages == null) ? Collections.emptyList() : AoCollections.unmodifiableCopyCollection(messages), null);
+  }
+
+  @Override
+  public String toString() {
+    return "MultiMessage(" + unmodifiableMessages.size() + ")";
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    o = SharedMessage.unwrap(o);
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof MultiMessage)) {
+      return false;
+    }
+    MultiMessage other = (MultiMessage) o;
+    if (lazyMessages != null && other.lazyMessages != null && lazyMessages.encodingEquals(other.lazyMessages)) {
+      return true;
+    }
+    return AoCollections.equals(unmodifiableMessages, other.unmodifiableMessages);
+  }
+
+  /**
+   * A {@link FileMessage} has the same hash code as its content, so a lazily decoded message is hashed without
+   * spooling to temporary files.
+   */
+  @Override
+  public int hashCode() {
+    return AoCollections.hashCode(getMessagesForEncoding());
+  }
+
+  /**
+   * Gets the messages to encode, which avoids spooling lazily decoded messages to temporary files.
+   */
+  private Collection<? extends Message> getMessagesForEncoding() {
+    return (lazyMessages == null) ? unmodifiableMessages : lazyMessages.encodingView;
+  }
+
+  @Override
+  public MessageType getMessageType() {
+    return MessageType.MULTI;
+  }
+
+  /**
+   * Encodes the messages into a single string, allocated once by {@link #getEncodedStringLength()}.
+   * The messages are appended directly, without an intermediate string per message.
+   */
+  @Override
+  public String encodeAsString() throws IOException {
+    return encodeAsString(WireFormat.V1);
+  }
+
+  /**
+   * Encodes the messages into a single string in the given format.
+   *
+   * @see  #encodeAsString()
+   */
+  public String encodeAsString(WireFormat format) throws IOException {
+    if (format == WireFormat.V1 && lazyMessages instanceof LazyStringMessages) {
+      return ((LazyStringMessages) lazyMessages).getEncodedString();
+    }
+    if (unmodifiableMessages.isEmpty()) {
+      return "";
+    }
+    StringBuilder sb = new StringBuilder(toArrayLength(getEncodedStringLength(format)));
+    append(sb, format);
+    return sb.toString();
+  }
+
+  /**
+   * Streams the messages in the same format as {@link #encodeAsString()}.
+   * The length of each message is determined by {@link Message#getEncodedStringLength()}, then
+   * the message is {@linkplain Message#appendTo(java.lang.Appendable) appended} directly.
+   * A {@link FileMessage} is Base-64 encoded in chunks and is never held in memory.
+   */
+  @Override
+  public void appendTo(Appendable out) throws IOException {
+    append(out, WireFormat.V1);
+  }
+
+  /**
+   * Streams the messages in the same format as {@link #encodeAsString(com.aoapps.messaging.WireFormat)}.
+   *
+   * @see  #appendTo(java.lang.Appendable)
+   */
+  public void appendTo(Appendable out, WireFormat format) throws IOException {
+    append(out, format);
+  }
+
+  /**
+   * Streams the messages.
+   *
+   * @return  the number of characters appended
+   */
+  private long append(Appendable out, WireFormat format) throws IOException {
+    if (format == WireFormat.V1 && lazyMessages instanceof LazyStringMessages) {
+      LazyStringMessages lazyString = (LazyStringMessages) lazyMessages;
+      out.append(lazyString.encodedMessages, lazyString.start, lazyString.end);
+      return (long) lazyString.end - lazyString.start;
+    }
+    final int size = unmodifiableMessages.size();
+    if (size == 0) {
+      return 0;
+    }
+
+    long appended = format.appendCount(out, size);
+    int count = 0;
+    for (Message message : getMessagesForEncoding()) {
+      count++;
+      MessageType type = message.getMessageType();
+      if (message instanceof FileMessage) {
+        FileMessage fileMessage = (FileMessage) message;
+        long length = fileMessage.getMessage().length();
+        long capacity = Base64Codec.getEncodedLength(length);
+        appended += format.appendHeader(out, type, capacity);
+        fileMessage.appendTo(out, length);
+        appended += capacity;
+      } else if (message instanceof MultiMessage) {
+        MultiMessage multiMessage = (MultiMessage) message;
+        long capacity = multiMessage.getEncodedStringLength(format);
+        appended += format.appendHeader(out, type, capacity);
+        if (multiMessage.append(out, format) != capacity) {
+          throw new IOException("Message changed size while encoding: " + message);
+        }
+        appended += capacity;
+      } else if (message instanceof ByteArrayMessage || message instanceof StringMessage) {
+        // Encoded length is exact
+        long capacity = message.getEncodedStringLength();
+        appended += format.appendHeader(out, type, capacity);
+        message.appendTo(out);
+        appended += capacity;
+      } else if (message instanceof CompressedMessage) {
+        long capacity = message.getEncodedStringLength();
+        appended += format.appendHeader(out, type, capacity);
+        ((CompressedMessage) message).appendTo(out, capacity);
+        appended += capacity;
+      } else {
+        String str = message.encodeAsString();
+        appended += format.appendHeader(out, type, str.length());
+        out.append(str);
+        appended += str.length();
+      }
+    }
+    if (count != size) {
+      throw new ConcurrentModificationException();
+    }
+    return appended;
+  }
+
+  /**
+   * Sums the encoded lengths of the messages, without encoding.
+   */
+  @Override
+  public long getEncodedStringLength() throws IOException {
+    return getEncodedStringLength(WireFormat.V1);
+  }
+
+  /**
+   * Sums the encoded lengths of the messages in the given format, without encoding.
+   *
+   * @see  #getEncodedStringLength()
+   */
+  public long getEncodedStringLength(WireFormat format) throws IOException {
+    if (format == WireFormat.V1 && lazyMessages instanceof LazyStringMessages) {
+      LazyStringMessages lazyString = (LazyStringMessages) lazyMessages;
+      return (long) lazyString.end - lazyString.start;
+    }
+    final int size = unmodifiableMessages.size();
+    if (size == 0) {
+      return 0;
+    }
+
+    long length = format.getCountStringLength(size);
+    int count = 0;
+    for (Message message : getMessagesForEncoding()) {
+      count++;
+      long capacity = (message instanceof MultiMessage)
+          ? ((MultiMessage) message).getEncodedStringLength(format)
+          : message.getEncodedStringLength();
+      length += format.getHeaderStringLength(message.getMessageType(), capacity) + capacity;
+    }
+    if (count != size) {
+      throw new ConcurrentModificationException();
+    }
+    return length;
+  }
+
+  /**
+   * Encodes the messages into a single ByteArray, allocated once by {@link #getEncodedByteArrayLength()}.
+   *
+   * @see  #writeTo(java.io.OutputStream)
+   */
+  @Override
+  public ByteArray encodeAsByteArray() throws IOException {
+    return encodeAsByteArray(WireFormat.V1);
+  }
+
+  /**
+   * Encodes the messages into a single ByteArray in the given format.
+   *
+   * @see  #encodeAsByteArray()
+   */
+  public ByteArray encodeAsByteArray(WireFormat format) throws IOException {
+    if (format == WireFormat.V1 && lazyMessages instanceof LazyByteArrayMessages) {
+      return ((LazyByteArrayMessages) lazyMessages).encodedMessages;
+    }
+    if (unmodifiableMessages.isEmpty()) {
+      return ByteArray.EMPTY_BYTE_ARRAY;
+    }
+
+    AoByteArrayOutputStream bout = new AoByteArrayOutputStream(toArrayLength(getEncodedByteArrayLength(format)));
+    try {
+      write(bout, format);
+    } finally {
+      bout.close();
+    }
+    return new ByteArray(bout.getInternalByteArray(), bout.size());
+  }
+
+  /**
+   * Encodes the messages into a single ByteArray, encoding the messages concurrently on the given executor.
+   *
+   * @see  #encodeAsByteArray(com.aoapps.messaging.WireFormat, java.util.concurrent.Executor)
+   */
+  public ByteArray encodeAsByteArray(Executor executor) throws IOException {
+    return encodeAsByteArray(WireFormat.V1, executor);
+  }
+
+  /**
+   * Encodes the messages into a single ByteArray in the given format, encoding the messages concurrently on the given
+   * executor.  This is the same encoding as {@link #encodeAsByteArray(com.aoapps.messaging.WireFormat)}, but
+   * messages that block, such as reading a {@link FileMessage}, no longer wait on each other.
+   *
+   * <p>The lengths are computed first, so each message is encoded directly into its place in the single array.
+   * A task rejected by the executor is run on the calling thread.  All tasks are complete before returning, even on
+   * failure.  When more than one message fails to encode, the failure of the first is thrown, with the others
+   * suppressed.</p>
+   */
+  public ByteArray encodeAsByteArray(WireFormat format, Executor executor) throws IOException {
+    if (format == WireFormat.V1 && lazyMessages instanceof LazyByteArrayMessages) {
+      return ((LazyByteArrayMessages) lazyMessages).encodedMessages;
+    }
+    final int size = unmodifiableMessages.size();
+    if (size == 0) {
+      return ByteArray.EMPTY_BYTE_ARRAY;
+    }
+
+    Message[] messages = new Message[size];
+    int[] capacities = new int[size];
+    int count = 0;
+    long length = format.getCountLength(size);
+    for (Message message : getMessagesForEncoding()) {
+      if (count == size) {
+        throw new ConcurrentModificationException();
+      }
+      int capacity = toCapacity(message, getEncodedByteArrayLength(message, format));
+      messages[count] = message;
+      capacities[count] = capacity;
+      length += format.getHeaderLength(message.getMessageType(), capacity) + capacity;
+      count++;
+    }
+    if (count != size) {
+      throw new ConcurrentModificationException();
+    }
+
+    final byte[] array = new byte[toArrayLength(length)];
+    int pos = format.putCount(array, size);
+    byte[] header = new byte[WireFormat.MAX_FRAMING_LENGTH];
+    CountDownLatch done = new CountDownLatch(size);
+    Throwable[] failures = new Throwable[size];
+    for (int i = 0; i < size; i++) {
+      final Message message = messages[i];
+      final int capacity = capacities[i];
+      int headerLength = format.putHeader(header, message.getMessageType(), capacity);
+      System.arraycopy(header, 0, array, pos, headerLength);
+      pos += headerLength;
+      final int index = i;
+      final int start = pos;
+      Runnable task = () -> {
+        try {
+          ArraySlotOutputStream out = new ArraySlotOutputStream(message, array, start, start + capacity);
+          write(out, message, capacity, format);
+          out.checkFull();
+        } catch (Throwable t) {
+          failures[index] = t;
+        } finally {
+          done.countDown();
+        }
+      };
+      try {
+        executor.execute(task);
+      } catch (RejectedExecutionException e) {
+        task.run();
+      }
+      pos += capacity;
+    }
+    assert pos == array.length;
+    // Tasks write into the array
+    awaitUninterruptibly(done);
+    Throwable failure = combineFailures(null, failures);
+    if (failure != null) {
+      throw rethrow(failure);
+    }
+    return new ByteArray(array);
+  }
+
+  /**
+   * Writes into a fixed range of an array, failing when the message does not encode to exactly fill it.
+   */
+  private static final class ArraySlotOutputStream extends OutputStream {
+
+    private final Message message;
+    private final byte[] array;
+    private int pos;
+    private final int end;
+
+    private ArraySlotOutputStream(Message message, byte[] array, int start, int end) {
+      this.message = message;
+      this.array = array;
+      this.pos = start;
+      this.end = end;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      if (pos == end) {
+        throw new IOException("Message changed size while encoding: " + message);
+      }
+      array[pos++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (len > end - pos) {
+        throw new IOException("Message changed size while encoding: " + message);
+      }
+      System.arraycopy(b, off, array, pos, len);
+      pos += len;
+    }
+
+    private void checkFull() throws IOException {
+      if (pos != end) {
+        throw new IOException("Message changed size while encoding: " + message);
+      }
+    }
+  }
+
+  /**
+   * Encodes the messages into a single ByteArray, using arrays from the given pool.
+   *
+   * @see  #writeTo(java.io.OutputStream)
+   */
+  @Override
+  public ByteArray encodeAsByteArray(ByteArrayPool pool) throws IOException {
+    if (lazyMessages instanceof LazyByteArrayMessages) {
+      return ((LazyByteArrayMessages) lazyMessages).encodedMessages;
+    }
+    if (unmodifiableMessages.isEmpty()) {
+      return ByteArray.EMPTY_BYTE_ARRAY;
+    }
+
+    try (PooledOutputStream out = new PooledOutputStream(pool, toArrayLength(getEncodedByteArrayLength()))) {
+      writeTo(out);
+      return out.toByteArray();
+    }
+  }
+
+  /**
+   * Sums the encoded lengths of the messages, without encoding.
+   */
+  @Override
+  public long getEncodedByteArrayLength() throws IOException {
+    return getEncodedByteArrayLength(WireFormat.V1);
+  }
+
+  /**
+   * Sums the encoded lengths of the messages in the given format, without encoding.
+   *
+   * @see  #getEncodedByteArrayLength()
+   */
+  public long getEncodedByteArrayLength(WireFormat format) throws IOException {
+    if (format == WireFormat.V1 && lazyMessages instanceof LazyByteArrayMessages) {
+      return ((LazyByteArrayMessages) lazyMessages).encodedMessages.size;
+    }
+    final int size = unmodifiableMessages.size();
+    if (size == 0) {
+      return 0;
+    }
+
+    long length = format.getCountLength(size);
+    int count = 0;
+    for (Message message : getMessagesForEncoding()) {
+      count++;
+      int capacity = toCapacity(message, getEncodedByteArrayLength(message, format));
+      length += format.getHeaderLength(message.getMessageType(), capacity) + capacity;
+    }
+    if (count != size) {
+      throw new ConcurrentModificationException();
+    }
+    return length;
+  }
+
+  /**
+   * Gets an upper bound of {@link #getEncodedByteArrayLength()} without compressing any message, summing the bound of
+   * each message.  A lazily decoded multi-message is sized exactly.
+   *
+   * @see  OutboundQueue#getEncodedByteArrayLengthBound(com.aoapps.messaging.Message)
+   */
+  long getEncodedByteArrayLengthBound() throws IOException {
+    if (lazyMessages != null) {
+      return getEncodedByteArrayLength();
+    }
+    final int size = unmodifiableMessages.size();
+    if (size == 0) {
+      return 0;
+    }
+    final WireFormat format = WireFormat.V1;
+    long length = format.getCountLength(size);
     for (Message message : unmodifiableMessages) {
-      message.close();
+      long bound = OutboundQueue.getEncodedByteArrayLengthBound(message);
+      length += format.getHeaderLength(message.getMessageType(), (int) Math.min(bound, Integer.MAX_VALUE)) + bound;
+    }
+    return length;
+  }
+
+  /**
+   * Streams the messages in the same format as {@link #encodeAsByteArray()}.
+   * The length of each message is written before the message is streamed, so the content
+   * of files and nested messages is never held in memory.
+   */
+  @Override
+  public void writeTo(OutputStream out) throws IOException {
+    write(out, WireFormat.V1);
+  }
+
+  /**
+   * Streams the messages in the same format as {@link #encodeAsByteArray(com.aoapps.messaging.WireFormat)}.
+   *
+   * @see  #writeTo(java.io.OutputStream)
+   */
+  public void writeTo(OutputStream out, WireFormat format) throws IOException {
+    write(out, format);
+  }
+
+  /**
+   * Gets the encoded length of a message, where nested messages are also in the given format.
+   */
+  private static long getEncodedByteArrayLength(Message message, WireFormat format) throws IOException {
+    return (message instanceof MultiMessage)
+        ? ((MultiMessage) message).getEncodedByteArrayLength(format)
+        : message.getEncodedByteArrayLength();
+  }
+
+  /**
+   * Streams the messages.
+   *
+   * @return  the number of bytes written
+   */
+  private long write(OutputStream out, WireFormat format) throws IOException {
+    if (format == WireFormat.V1 && lazyMessages instanceof LazyByteArrayMessages) {
+      ByteArray encoded = ((LazyByteArrayMessages) lazyMessages).encodedMessages;
+      out.write(encoded.array, encoded.offset, encoded.size);
+      return encoded.size;
+    }
+    final int size = unmodifiableMessages.size();
+    if (size == 0) {
+      return 0;
+    }
+
+    byte[] header = new byte[WireFormat.MAX_FRAMING_LENGTH];
+    int headerLength = format.putCount(header, size);
+    out.write(header, 0, headerLength);
+    long written = headerLength;
+    int count = 0;
+    for (Message message : getMessagesForEncoding()) {
+      count++;
+      final int capacity = toCapacity(message, getEncodedByteArrayLength(message, format));
+      headerLength = format.putHeader(header, message.getMessageType(), capacity);
+      out.write(header, 0, headerLength);
+      write(out, message, capacity, format);
+      written += headerLength + capacity;
+    }
+    if (count != size) {
+      throw new ConcurrentModificationException();
+    }
+    return written;
+  }
+
+  /**
+   * Streams exactly {@code capacity} bytes of a message, where nested messages are also in the given format.
+   */
+  private static void write(OutputStream out, Message message, int capacity, WireFormat format) throws IOException {
+    if (message instanceof FileMessage) {
+      ((FileMessage) message).writeTo(out, capacity);
+    } else if (message instanceof CompressedMessage) {
+      ((CompressedMessage) message).writeTo(out, capacity);
+    } else if (message instanceof MultiMessage) {
+      if (((MultiMessage) message).write(out, format) != capacity) {
+        throw new IOException("Message changed size while encoding: " + message);
+      }
+    } else if (message instanceof ByteArrayMessage || message instanceof StringMessage) {
+      // Encoded length is exact
+      message.writeTo(out);
+    } else {
+      IoHelper.write(out, encodeAsByteBuffer(message, capacity));
+    }
+  }
+
+  /**
+   * Streams the messages in the same format as {@link #encodeAsByteArray()}.
+   * Each {@link FileMessage} is transferred directly from its file with
+   * {@link java.nio.channels.FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}.
+   *
+   * @see  #writeTo(java.io.OutputStream)
+   */
+  @Override
+  public void writeTo(WritableByteChannel out) throws IOException {
+    write(out);
+  }
+
+  /**
+   * Streams the messages.
+   *
+   * @return  the number of bytes written
+   */
+  private long write(WritableByteChannel out) throws IOException {
+    if (lazyMessages instanceof LazyByteArrayMessages) {
+      ByteArray encoded = ((LazyByteArrayMessages) lazyMessages).encodedMessages;
+      IoHelper.writeFully(out, encoded.toByteBuffer());
+      return encoded.size;
+    }
+    final int size = unmodifiableMessages.size();
+    if (size == 0) {
+      return 0;
+    }
+
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    header.putInt(size).flip();
+    IoHelper.writeFully(out, header);
+    long written = Integer.BYTES;
+    int count = 0;
+    for (Message message : getMessagesForEncoding()) {
+      count++;
+      final int capacity = toCapacity(message, message.getEncodedByteArrayLength());
+      header.clear();
+      header.put(message.getMessageType().getTypeByte()).putInt(capacity).flip();
+      IoHelper.writeFully(out, header);
+      if (message instanceof FileMessage) {
+        ((FileMessage) message).writeTo(out, capacity);
+      } else if (message instanceof CompressedMessage) {
+        ((CompressedMessage) message).writeTo(Channels.newOutputStream(out), capacity);
+      } else if (message instanceof MultiMessage) {
+        if (((MultiMessage) message).write(out) != capacity) {
+          throw new IOException("Message changed size while encoding: " + message);
+        }
+      } else {
+        IoHelper.writeFully(out, encodeAsByteBuffer(message, capacity));
+      }
+      written += HEADER_SIZE + capacity;
+    }
+    if (count != size) {
+      throw new ConcurrentModificationException();
+    }
+    return written;
+  }
+
+  /**
+   * Encodes a message, verifying its length.
+   */
+  private static ByteBuffer encodeAsByteBuffer(Message message, int capacity) throws IOException {
+    ByteBuffer buffer = message.encodeAsByteBuffer();
+    if (buffer.remaining() != capacity) {
+      throw new IOException("Message changed size while encoding: " + message);
+    }
+    return buffer;
+  }
+
+  /**
+   * Checks that a message fits within the int capacity of the binary encoding.
+   */
+  private static int toCapacity(Message message, long capacity) throws IOException {
+    if (capacity > Integer.MAX_VALUE) {
+      throw new IOException("Message too large for " + MultiMessage.class.getSimpleName() + ": " + message);
+    }
+    return (int) capacity;
+  }
+
+  /**
+   * Checks that an encoding fits within an array.
+   */
+  static int toArrayLength(long length) throws IOException {
+    if (length > MAX_ARRAY_LENGTH) {
+      throw new IOException("Encoded messages too large: " + length);
+    }
+    return (int) length;
+  }
+
+  /**
+   * Closes each of the underlying messages.
+   */
+  @Override
+  public void close() throws IOException {
+    if (lazyMessages != null) {
+      lazyMessages.close();
+    } else {
+      for (Message message : unmodifiableMessages) {
+        message.close();
+      }
     }
   }
 
@@ -0,0 +1,180 @@
+/*
+ * ao-messaging-api - Asynchronous bidirectional messaging over various protocols API.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-messaging-api.
+ *
+ * ao-messaging-api is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-messaging-api is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-messaging-api.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoapps.messaging;
+
+/**
+ * The limits of the outbound queue of a socket, by number of messages and by bytes of their binary encodings.
+ *
+ * <p>Once the queue reaches its high watermark,
+ * {@link SocketListener#onOutboundHighWatermark(com.aoapps.messaging.Socket)} is called, so producers may throttle.
+ * Once the queue then drains to its low watermark,
+ * {@link SocketListener#onOutboundLowWatermark(com.aoapps.messaging.Socket)} is called.  Messages that would exceed
+ * the maximums are rejected.</p>
+ *
+ * @see  SocketContext#getOutboundLimits()
+ * @see  Socket#getOutboundLimits()
+ */
+public final class OutboundLimits {
+
+  /**
+   * No limits, which is the behavior of sockets that do not have an outbound limit.  The high watermarks are at the
+   * maximums, so the watermarks are never reached.
+   */
+  public static final OutboundLimits UNLIMITED = new OutboundLimits(
+      Integer.MAX_VALUE,
+      Long.MAX_VALUE,
+      Integer.MAX_VALUE,
+      Long.MAX_VALUE,
+      0,
+      0
+  );
+
+  /**
+   * The percentage of the maximums used for the high watermark by {@link #OutboundLimits(int, long)}.
+   */
+  private static final int DEFAULT_HIGH_WATERMARK_PERCENT = 75;
+
+  /**
+   * The percentage of the maximums used for the low watermark by {@link #OutboundLimits(int, long)}.
+   */
+  private static final int DEFAULT_LOW_WATERMARK_PERCENT = 25;
+
+  private final int maxMessages;
+  private final long maxBytes;
+  private final int highWatermarkMessages;
+  private final long highWatermarkBytes;
+  private final int lowWatermarkMessages;
+  private final long lowWatermarkBytes;
+
+  /**
+   * Creates new limits with the high watermark at 75% and the low watermark at 25% of the maximums.
+   */
+  public OutboundLimits(int maxMessages, long maxBytes) {
+    this(
+        maxMessages,
+        maxBytes,
+        percentOf(maxMessages, DEFAULT_HIGH_WATERMARK_PERCENT),
+        percentOf(maxBytes, DEFAULT_HIGH_WATERMARK_PERCENT),
+        percentOf(maxMessages, DEFAULT_LOW_WATERMARK_PERCENT),
+        percentOf(maxBytes, DEFAULT_LOW_WATERMARK_PERCENT)
+    );
+  }
+
+  private static int percentOf(int value, int percent) {
+    return (int) percentOf((long) value, percent);
+  }
+
+  private static long percentOf(long value, int percent) {
+    return (value / 100) * percent + (value % 100) * percent / 100;
+  }
+
+  /**
+   * Creates new limits.  A high watermark at its maximum is never reached, since the queue never exceeds its maximums.
+   *
+   * @throws  IllegalArgumentException  unless {@code 0 <= low watermark <= high watermark <= maximum}
+   */
+  public OutboundLimits(
+      int maxMessages,
+      long maxBytes,
+      int highWatermarkMessages,
+      long highWatermarkBytes,
+      int lowWatermarkMessages,
+      long lowWatermarkBytes
+  ) throws IllegalArgumentException {
+    if (
+        lowWatermarkMessages < 0
+            || lowWatermarkMessages > highWatermarkMessages
+            || highWatermarkMessages > maxMessages
+    ) {
+      throw new IllegalArgumentException("Invalid message limits: low watermark = " + lowWatermarkMessages
+          + ", high watermark = " + highWatermarkMessages + ", maximum = " + maxMessages);
+    }
+    if (
+        lowWatermarkBytes < 0
+            || lowWatermarkBytes > highWatermarkBytes
+            || highWatermarkBytes > maxBytes
+    ) {
+      throw new IllegalArgumentException("Invalid byte limits: low watermark = " + lowWatermarkBytes
+          + ", high watermark = " + highWatermarkBytes + ", maximum = " + maxBytes);
+    }
+    this.maxMessages = maxMessages;
+    this.maxBytes = maxBytes;
+    this.highWatermarkMessages = highWatermarkMessages;
+    this.highWatermarkBytes = highWatermarkBytes;
+    this.lowWatermarkMessages = lowWatermarkMessages;
+    this.lowWatermarkBytes = lowWatermarkBytes;
+  }
+
+  @Override
+  public String toString() {
+    return "OutboundLimits(maxMessages = " + maxMessages
+        + ", maxBytes = " + maxBytes
+        + ", highWatermarkMessages = " + highWatermarkMessages
+        + ", highWatermarkBytes = " + highWatermarkBytes
+        + ", lowWatermarkMessages = " + lowWatermarkMessages
+        + ", lowWatermarkBytes = " + lowWatermarkBytes + ")";
+  }
+
+  /**
+   * Gets the maximum number of queued messages.
+   */
+  public int getMaxMessages() {
+    return maxMessages;
+  }
+
+  /**
+   * Gets the maximum number of queued bytes.
+   */
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  /**
+   * Gets the number of queued messages above which the high watermark is reached.
+   */
+  public int getHighWatermarkMessages() {
+    return highWatermarkMessages;
+  }
+
+  /**
+   * Gets the number of queued bytes above which the high watermark is reached.
+   */
+  public long getHighWatermarkBytes() {
+    return highWatermarkBytes;
+  }
+
+  /**
+   * Gets the number of queued messages at or below which, along with the bytes, the low watermark is reached.
+   */
+  public int getLowWatermarkMessages() {
+    return lowWatermarkMessages;
+  }
+
+  /**
+   * Gets the number of queued bytes at or below which, along with the messages, the low watermark is reached.
+   */
+  public long getLowWatermarkBytes() {
+    return lowWatermarkBytes;
+  }
+}
@@ -0,0 +1,777 @@
+/*
+ * ao-messaging-api - Asynchronous bidirectional messaging over various protocols API.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-messaging-api.
+ *
+ * ao-messaging-api is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-messaging-api is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-messaging-api.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoapps.messaging;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A bounded queue of outbound messages for {@link Socket} implementations, which tracks the number of queued
+ * messages and the bytes of their binary encodings against {@link OutboundLimits}.
+ *
+ * <p>Each message is sized once, when queued, by {@link Message#getEncodedByteArrayLength()}.  Messages are offered
+ * all-or-nothing, so a set of messages is never partially queued.</p>
+ *
+ * <p>A message with a time to live is counted by an {@linkplain #getEncodedByteArrayLengthBound(Message) upper bound}
+ * of its length, so that it is not compressed only to expire.  The bound is exact except for a
+ * {@link CompressedMessage} at or above its threshold that has not been compressed, which is counted as its
+ * uncompressed length, or the worst-case expansion of a file.  The byte limits, watermarks, and statistics count
+ * these messages by their bound, so still apply conservatively.</p>
+ *
+ * <p>Messages are polled by {@link MessagePriority priority}, then in the order queued.  Messages queued with a time to
+ * live are dropped once expired, before they are polled, and are closed.</p>
+ *
+ * <p>Messages may be offered with a future that completes once they have been written.  The socket polls messages,
+ * writes them to its transport, then acknowledges them with {@link #written(int)}.  When the socket closes,
+ * {@link #fail(java.lang.Throwable)} fails the futures of all messages not yet written.</p>
+ *
+ * <p>Messages may be coalesced into batches by a {@link CoalescingPolicy}.  The socket waits
+ * {@link #getBatchDelayNanos(long)} before calling {@link #pollBatch(long)}, sending each batch as a single frame.
+ * {@link #flush()} sends queued messages without further delay.</p>
+ *
+ * <p>The watermark callbacks are called after releasing the lock of this queue, one at a time, in order, and
+ * alternating, starting with the high watermark.  A callback may offer, poll, or close; any watermark it crosses is
+ * called after it returns, by the same thread.  Since the callbacks are not called under the lock,
+ * {@link #isAboveHighWatermark()} may already reflect a later crossing when a callback is called.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ */
+public class OutboundQueue {
+
+  /**
+   * Gets an upper bound of the {@linkplain Message#getEncodedByteArrayLength() length of the binary encoding} of a
+   * message without compressing it.  Other than a {@link CompressedMessage}, possibly nested, this is the exact length.
+   */
+  static long getEncodedByteArrayLengthBound(Message message) throws IOException {
+    if (message instanceof MultiMessage) {
+      return ((MultiMessage) message).getEncodedByteArrayLengthBound();
+    }
+    if (message instanceof CompressedMessage) {
+      return ((CompressedMessage) message).getEncodedByteArrayLengthBound();
+    }
+    if (message instanceof SharedMessage) {
+      return ((SharedMessage) message).getEncodedByteArrayLengthBound();
+    }
+    return message.getEncodedByteArrayLength();
+  }
+
+  /**
+   * A queued message along with its size.
+   */
+  private static final class Entry {
+
+    private final Message message;
+    private final long size;
+    private final MessagePriority priority;
+    private final long queuedNanos;
+    private final boolean expiring;
+    private final long expiresNanos;
+
+    /**
+     * The future completed once this message has been written, only on the last message of a set of messages.
+     */
+    private CompletableFuture<Void> onWritten;
+
+    private Entry(
+        Message message,
+        long size,
+        MessagePriority priority,
+        long queuedNanos,
+        boolean expiring,
+        long expiresNanos
+    ) {
+      this.message = message;
+      this.size = size;
+      this.priority = priority;
+      this.queuedNanos = queuedNanos;
+      this.expiring = expiring;
+      this.expiresNanos = expiresNanos;
+    }
+  }
+
+  /**
+   * A future completed once the given number of messages have been written.
+   */
+  private static final class PendingWrite {
+
+    private final long polledCount;
+    private final CompletableFuture<Void> onWritten;
+
+    private PendingWrite(long polledCount, CompletableFuture<Void> onWritten) {
+      this.polledCount = polledCount;
+      this.onWritten = onWritten;
+    }
+  }
+
+  private final OutboundLimits limits;
+  private final CoalescingPolicy coalescing;
+  private final Runnable onHighWatermark;
+  private final Runnable onLowWatermark;
+
+  private final Object lock = new Object();
+
+  /**
+   * The queued messages of each priority, iterated from highest to lowest priority.
+   */
+  private final Map<MessagePriority, ArrayDeque<Entry>> entries = new EnumMap<>(MessagePriority.class);
+  private int queuedCount;
+  private long bytes;
+
+  /**
+   * The number of queued messages with a time to live, so expiry is skipped when there are none.
+   */
+  private int expiringCount;
+  private boolean aboveHighWatermark;
+
+  /**
+   * The total number of messages polled and written.
+   */
+  private long polledCount;
+  private long writtenCount;
+
+  /**
+   * The futures of messages polled but not yet written, in order.
+   */
+  private final ArrayDeque<PendingWrite> pendingWrites = new ArrayDeque<>();
+
+  /**
+   * The watermark callbacks of crossings not yet called, in order.
+   */
+  private final ArrayDeque<Runnable> watermarkEvents = new ArrayDeque<>();
+
+  /**
+   * Set when there are {@link #watermarkEvents}, so callers may skip {@link #fireWatermarkEvents()} without the lock.
+   */
+  private volatile boolean hasWatermarkEvents;
+
+  /**
+   * Set while a thread is calling the {@link #watermarkEvents}, so that they are called one at a time and in order.
+   */
+  private boolean firingWatermarkEvents;
+
+  /**
+   * Set by {@link #flush()} until the queue is emptied by {@link #pollBatch(long)}.
+   */
+  private boolean flushRequested;
+
+  private long batches;
+  private long batchedMessages;
+  private long batchedBytes;
+  private int maxBatchMessages;
+  private long maxBatchBytes;
+  private long droppedMessages;
+  private long droppedBytes;
+
+  /**
+   * Creates a new queue without coalescing.
+   *
+   * @param  onHighWatermark  called when the queue grows above its high watermark, or {@code null} for none
+   * @param  onLowWatermark   called when the queue, after being above its high watermark, drains to its low watermark,
+   *                          or {@code null} for none
+   *
+   * @see  CoalescingPolicy#NONE
+   */
+  public OutboundQueue(OutboundLimits limits, Runnable onHighWatermark, Runnable onLowWatermark) {
+    this(limits, CoalescingPolicy.NONE, onHighWatermark, onLowWatermark);
+  }
+
+  /**
+   * Creates a new queue.
+   *
+   * @param  onHighWatermark  called when the queue grows above its high watermark, or {@code null} for none
+   * @param  onLowWatermark   called when the queue, after being above its high watermark, drains to its low watermark,
+   *                          or {@code null} for none
+   */
+  public OutboundQueue(
+      OutboundLimits limits,
+      CoalescingPolicy coalescing,
+      Runnable onHighWatermark,
+      Runnable onLowWatermark
+  ) {
+    this.limits = limits;
+    this.coalescing = coalescing;
+    this.onHighWatermark = onHighWatermark;
+    this.onLowWatermark = onLowWatermark;
+    for (MessagePriority priority : MessagePriority.values()) {
+      entries.put(priority, new ArrayDeque<>());
+    }
+  }
+
+  /**
+   * Gets the limits of this queue.
+   */
+  public OutboundLimits getLimits() {
+    return limits;
+  }
+
+  /**
+   * Gets the coalescing policy of this queue.
+   */
+  public CoalescingPolicy getCoalescingPolicy() {
+    return coalescing;
+  }
+
+  /**
+   * Queues the messages when they fit within the limits.
+   *
+   * @return  {@code true} when all the messages are queued, or {@code false} when none are queued since they would
+   *          exceed the limits
+   *
+   * @throws  IOException  when a message cannot be sized
+   */
+  public boolean offer(Collection<? extends Message> messages) throws IOException {
+    return offer(messages, null);
+  }
+
+  /**
+   * Queues the messages when they fit within the limits, completing the given future once they have all been
+   * {@linkplain #written(int) written}.  When there are no messages, the future is completed immediately.
+   *
+   * @param  onWritten  the future to complete, or {@code null} for none.  It is not completed when the messages are
+   *                    rejected.
+   *
+   * @return  {@code true} when all the messages are queued, or {@code false} when none are queued since they would
+   *          exceed the limits
+   *
+   * @throws  IOException  when a message cannot be sized
+   */
+  public boolean offer(Collection<? extends Message> messages, CompletableFuture<Void> onWritten) throws IOException {
+    return offer(messages, MessagePriority.NORMAL, null, onWritten);
+  }
+
+  /**
+   * Queues the messages with the given priority and time to live when they fit within the limits, completing the given
+   * future once they have all been {@linkplain #written(int) written}.  When there are no messages, the future is
+   * completed immediately.  When the messages expire before written, the future fails with a
+   * {@link TimeoutException}.
+   *
+   * @param  timeToLive  how long the messages may wait in this queue, or {@code null} to never expire
+   * @param  onWritten   the future to complete, or {@code null} for none.  It is not completed when the messages are
+   *                     rejected.
+   *
+   * @return  {@code true} when all the messages are queued, or {@code false} when none are queued since they would
+   *          exceed the limits
+   *
+   * @throws  IOException  when a message cannot be sized
+   */
+  public boolean offer(
+      Collection<? extends Message> messages,
+      MessagePriority priority,
+      Duration timeToLive,
+      CompletableFuture<Void> onWritten
+  ) throws IOException {
+    if (timeToLive != null && (timeToLive.isNegative() || timeToLive.isZero())) {
+      throw new IllegalArgumentException("timeToLive <= 0: " + timeToLive);
+    }
+    long now = System.nanoTime();
+    boolean expiring;
+    long expiresNanos;
+    if (timeToLive == null) {
+      expiring = false;
+      expiresNanos = 0;
+    } else {
+      long ttlNanos;
+      try {
+        ttlNanos = timeToLive.toNanos();
+      } catch (ArithmeticException e) {
+        ttlNanos = Long.MAX_VALUE;
+      }
+      // Times beyond the range of System.nanoTime() never expire
+      expiring = ttlNanos <= Long.MAX_VALUE / 2;
+      expiresNanos = expiring ? (now + ttlNanos) : 0;
+    }
+    List<Entry> newEntries = new ArrayList<>(messages.size());
+    long newBytes = 0;
+    for (Message message : messages) {
+      // Not compressed when it may expire before encoded
+      long size = expiring ? getEncodedByteArrayLengthBound(message) : message.getEncodedByteArrayLength();
+      newEntries.add(new Entry(message, size, priority, now, expiring, expiresNanos));
+      newBytes += size;
+    }
+    if (newEntries.isEmpty()) {
+      if (onWritten != null) {
+        onWritten.complete(null);
+      }
+      return true;
+    }
+    newEntries.get(newEntries.size() - 1).onWritten = onWritten;
+    synchronized (lock) {
+      if (
+          newEntries.size() > limits.getMaxMessages() - queuedCount
+              || newBytes > limits.getMaxBytes() - bytes
+      ) {
+        return false;
+      }
+      entries.get(priority).addAll(newEntries);
+      queuedCount += newEntries.size();
+      bytes += newBytes;
+      if (expiring) {
+        expiringCount += newEntries.size();
+      }
+      checkHighWatermark();
+    }
+    fireWatermarkEvents();
+    return true;
+  }
+
+  private void checkHighWatermark() {
+    assert Thread.holdsLock(lock);
+    if (
+        !aboveHighWatermark
+            && (queuedCount > limits.getHighWatermarkMessages() || bytes > limits.getHighWatermarkBytes())
+    ) {
+      aboveHighWatermark = true;
+      addWatermarkEvent(onHighWatermark);
+    }
+  }
+
+  private void checkLowWatermark() {
+    assert Thread.holdsLock(lock);
+    if (
+        aboveHighWatermark
+            && queuedCount <= limits.getLowWatermarkMessages()
+            && bytes <= limits.getLowWatermarkBytes()
+    ) {
+      aboveHighWatermark = false;
+      addWatermarkEvent(onLowWatermark);
+    }
+  }
+
+  private void addWatermarkEvent(Runnable callback) {
+    assert Thread.holdsLock(lock);
+    if (callback != null) {
+      watermarkEvents.add(callback);
+      hasWatermarkEvents = true;
+    }
+  }
+
+  /**
+   * Calls the watermark callbacks of any crossings, after the lock of this queue has been released.  When another
+   * thread is already calling them, including a callback that crossed a watermark, that thread calls these, too.
+   */
+  private void fireWatermarkEvents() {
+    assert !Thread.holdsLock(lock);
+    if (!hasWatermarkEvents) {
+      return;
+    }
+    synchronized (lock) {
+      if (firingWatermarkEvents) {
+        return;
+      }
+      firingWatermarkEvents = true;
+    }
+    try {
+      while (true) {
+        Runnable callback;
+        synchronized (lock) {
+          callback = watermarkEvents.poll();
+          if (callback == null) {
+            hasWatermarkEvents = false;
+            firingWatermarkEvents = false;
+            return;
+          }
+        }
+        callback.run();
+      }
+    } catch (Throwable t) {
+      // Leave any remaining callbacks to the next crossing
+      synchronized (lock) {
+        firingWatermarkEvents = false;
+      }
+      throw t;
+    }
+  }
+
+  /**
+   * Drops the expired messages, failing their futures and closing them after releasing the lock of this queue.
+   * This is called by {@link #poll(int, long)} and {@link #pollBatch(long)}, and may also be called periodically to
+   * release the resources of expired messages sooner.
+   *
+   * @param  now  the current {@link System#nanoTime()}
+   *
+   * @return  the number of messages dropped
+   *
+   * @throws  IOException  when an expired message cannot be closed.  All expired messages are still dropped.
+   */
+  public int expire(long now) throws IOException {
+    List<Entry> expired = null;
+    synchronized (lock) {
+      if (expiringCount == 0) {
+        return 0;
+      }
+      long expiredBytes = 0;
+      for (ArrayDeque<Entry> queue : entries.values()) {
+        Iterator<Entry> iter = queue.iterator();
+        while (iter.hasNext()) {
+          Entry entry = iter.next();
+          if (entry.expiring && now - entry.expiresNanos >= 0) {
+            iter.remove();
+            if (expired == null) {
+              expired = new ArrayList<>();
+            }
+            expired.add(entry);
+            expiredBytes += entry.size;
+          }
+        }
+      }
+      if (expired == null) {
+        return 0;
+      }
+      queuedCount -= expired.size();
+      bytes -= expiredBytes;
+      expiringCount -= expired.size();
+      droppedMessages += expired.size();
+      droppedBytes += expiredBytes;
+      if (queuedCount == 0) {
+        flushRequested = false;
+      }
+      checkLowWatermark();
+    }
+    fireWatermarkEvents();
+    IOException failure = null;
+    for (Entry entry : expired) {
+      if (entry.onWritten != null) {
+        entry.onWritten.completeExceptionally(new TimeoutException("Messages expired before written"));
+      }
+      try {
+        entry.message.close();
+      } catch (IOException e) {
+        if (failure == null) {
+          failure = e;
+        } else {
+          failure.addSuppressed(e);
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+    return expired.size();
+  }
+
+  /**
+   * Gets the next message to poll, from the highest priority.
+   */
+  private Entry peekLocked() {
+    assert Thread.holdsLock(lock);
+    for (ArrayDeque<Entry> queue : entries.values()) {
+      Entry entry = queue.peek();
+      if (entry != null) {
+        return entry;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Removes messages from the head of the queue, by priority then in order, up to the given maximums.  The first
+   * message is always removed, even when larger than {@code maxBytes}, so that large messages are not stuck.
+   * Expired messages are {@linkplain #expire(long) dropped} first.
+   *
+   * @return  the removed messages, which is empty when the queue is empty
+   *
+   * @throws  IOException  when an expired message cannot be closed, in which case no messages are removed
+   */
+  public List<Message> poll(int maxMessages, long maxBytes) throws IOException {
+    expire(System.nanoTime());
+    List<Message> polled;
+    synchronized (lock) {
+      polled = pollLocked(maxMessages, maxBytes, false);
+    }
+    fireWatermarkEvents();
+    return polled;
+  }
+
+  private List<Message> pollLocked(int maxMessages, long maxBytes, boolean isBatch) {
+    assert Thread.holdsLock(lock);
+    if (queuedCount == 0 || maxMessages <= 0) {
+      return Collections.emptyList();
+    }
+    List<Message> polled = new ArrayList<>(Math.min(maxMessages, queuedCount));
+    long polledBytes = 0;
+    do {
+      Entry entry = peekLocked();
+      if (!polled.isEmpty() && entry.size > maxBytes - polledBytes) {
+        break;
+      }
+      entries.get(entry.priority).remove();
+      queuedCount--;
+      if (entry.expiring) {
+        expiringCount--;
+      }
+      polled.add(entry.message);
+      polledBytes += entry.size;
+      polledCount++;
+      if (entry.onWritten != null) {
+        pendingWrites.add(new PendingWrite(polledCount, entry.onWritten));
+      }
+    } while (queuedCount != 0 && polled.size() < maxMessages);
+    bytes -= polledBytes;
+    checkLowWatermark();
+    if (isBatch) {
+      batches++;
+      batchedMessages += polled.size();
+      batchedBytes += polledBytes;
+      maxBatchMessages = Math.max(maxBatchMessages, polled.size());
+      maxBatchBytes = Math.max(maxBatchBytes, polledBytes);
+    }
+    return polled;
+  }
+
+  /**
+   * Sends the queued messages without further delay: batches are ready until the queue has been emptied by
+   * {@link #pollBatch(long)}.
+   */
+  public void flush() {
+    synchronized (lock) {
+      if (queuedCount != 0) {
+        flushRequested = true;
+      }
+    }
+  }
+
+  /**
+   * Gets how long until the next batch is ready.
+   *
+   * @param  now  the current {@link System#nanoTime()}
+   *
+   * @return  {@code 0} when a batch is ready now, or {@link Long#MAX_VALUE} when the queue is empty
+   */
+  public long getBatchDelayNanos(long now) {
+    synchronized (lock) {
+      if (queuedCount == 0) {
+        return Long.MAX_VALUE;
+      }
+      if (
+          flushRequested
+              || queuedCount >= coalescing.getMaxMessages()
+              || bytes >= coalescing.getMaxBytes()
+      ) {
+        return 0;
+      }
+      Entry oldest = null;
+      for (ArrayDeque<Entry> queue : entries.values()) {
+        Entry entry = queue.peek();
+        if (entry != null && (oldest == null || entry.queuedNanos - oldest.queuedNanos < 0)) {
+          oldest = entry;
+        }
+      }
+      long waited = now - oldest.queuedNanos;
+      long maxDelay = coalescing.getMaxDelayNanos();
+      return (waited >= maxDelay) ? 0 : (maxDelay - waited);
+    }
+  }
+
+  /**
+   * Removes the next batch of messages when ready, up to the maximums of the {@linkplain #getCoalescingPolicy()
+   * coalescing policy}.  The batch sizes are included in the {@linkplain #getStatistics() statistics}.
+   * Expired messages are {@linkplain #expire(long) dropped} first.
+   *
+   * @param  now  the current {@link System#nanoTime()}
+   *
+   * @return  the removed messages, which is empty when no batch is ready
+   *
+   * @throws  IOException  when an expired message cannot be closed, in which case no messages are removed
+   *
+   * @see  #getBatchDelayNanos(long)
+   */
+  public List<Message> pollBatch(long now) throws IOException {
+    expire(now);
+    List<Message> batch;
+    synchronized (lock) {
+      if (getBatchDelayNanos(now) != 0) {
+        return Collections.emptyList();
+      }
+      batch = pollLocked(coalescing.getMaxMessages(), coalescing.getMaxBytes(), true);
+      if (queuedCount == 0) {
+        flushRequested = false;
+      }
+    }
+    fireWatermarkEvents();
+    return batch;
+  }
+
+  /**
+   * Gets a snapshot of the statistics of the batches polled by {@link #pollBatch(long)} and of the messages dropped by
+   * {@link #expire(long)}.
+   */
+  public OutboundStatistics getStatistics() {
+    synchronized (lock) {
+      return new OutboundStatistics(
+          batches,
+          batchedMessages,
+          batchedBytes,
+          maxBatchMessages,
+          maxBatchBytes,
+          droppedMessages,
+          droppedBytes
+      );
+    }
+  }
+
+  /**
+   * Acknowledges that the next messages polled have been written to the transport, completing the future of each set
+   * of messages now entirely written.  The futures are completed after releasing the lock of this queue.
+   *
+   * @param  count  the number of messages written, in the order polled
+   *
+   * @throws  IllegalArgumentException  when more messages are acknowledged than have been polled
+   */
+  public void written(int count) throws IllegalArgumentException {
+    List<CompletableFuture<Void>> completed;
+    synchronized (lock) {
+      if (count < 0 || count > polledCount - writtenCount) {
+        throw new IllegalArgumentException("Only " + (polledCount - writtenCount) + " messages polled and not written: "
+            + count);
+      }
+      writtenCount += count;
+      completed = null;
+      PendingWrite pending;
+      while ((pending = pendingWrites.peek()) != null && pending.polledCount <= writtenCount) {
+        pendingWrites.remove();
+        if (completed == null) {
+          completed = new ArrayList<>();
+        }
+        completed.add(pending.onWritten);
+      }
+    }
+    if (completed != null) {
+      for (CompletableFuture<Void> onWritten : completed) {
+        onWritten.complete(null);
+      }
+    }
+  }
+
+  /**
+   * Removes all queued messages, such as when the socket is closed and the messages are to be closed.
+   * The futures of the removed messages are {@linkplain CompletableFuture#cancel(boolean) cancelled} after releasing
+   * the lock of this queue.  Messages already polled are unaffected and may still be {@linkplain #written(int)
+   * acknowledged}.
+   *
+   * @return  the removed messages, which is empty when the queue is empty
+   *
+   * @see  #fail(java.lang.Throwable)
+   */
+  public List<Message> clear() {
+    List<Message> removed;
+    List<CompletableFuture<Void>> cancelled = new ArrayList<>();
+    synchronized (lock) {
+      removed = removeAllLocked(cancelled);
+    }
+    fireWatermarkEvents();
+    for (CompletableFuture<Void> onWritten : cancelled) {
+      onWritten.cancel(false);
+    }
+    return removed;
+  }
+
+  /**
+   * Removes all queued messages, without counting them as polled.
+   *
+   * @param  futures  the futures of the removed messages are added to this list
+   *
+   * @return  the removed messages
+   */
+  private List<Message> removeAllLocked(List<CompletableFuture<Void>> futures) {
+    assert Thread.holdsLock(lock);
+    List<Message> removed = new ArrayList<>(queuedCount);
+    for (ArrayDeque<Entry> queue : entries.values()) {
+      for (Entry entry : queue) {
+        if (entry.onWritten != null) {
+          futures.add(entry.onWritten);
+        }
+        removed.add(entry.message);
+      }
+      queue.clear();
+    }
+    queuedCount = 0;
+    bytes = 0;
+    expiringCount = 0;
+    flushRequested = false;
+    checkLowWatermark();
+    return removed;
+  }
+
+  /**
+   * Removes all messages and fails the future of every message not yet written, including those polled but not yet
+   * acknowledged, such as when the socket is closed.  The futures are failed after releasing the lock of this queue.
+   *
+   * @return  the removed messages, which is empty when the queue is empty
+   */
+  public List<Message> fail(Throwable cause) {
+    List<Message> removed;
+    List<CompletableFuture<Void>> failed = new ArrayList<>();
+    synchronized (lock) {
+      for (PendingWrite pending : pendingWrites) {
+        failed.add(pending.onWritten);
+      }
+      pendingWrites.clear();
+      // Polled messages will never be acknowledged
+      writtenCount = polledCount;
+      removed = removeAllLocked(failed);
+    }
+    fireWatermarkEvents();
+    for (CompletableFuture<Void> onWritten : failed) {
+      onWritten.completeExceptionally(cause);
+    }
+    return removed;
+  }
+
+  /**
+   * Gets the number of queued messages.
+   */
+  public int size() {
+    synchronized (lock) {
+      return queuedCount;
+    }
+  }
+
+  /**
+   * Gets the number of queued bytes.
+   */
+  public long getBytes() {
+    synchronized (lock) {
+      return bytes;
+    }
+  }
+
+  /**
+   * Checks if the queue has grown above its high watermark and not yet drained to its low watermark.
+   */
+  public boolean isAboveHighWatermark() {
+    synchronized (lock) {
+      return aboveHighWatermark;
+    }
+  }
+}
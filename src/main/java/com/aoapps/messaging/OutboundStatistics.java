@@ -0,0 +1,139 @@
+/*
+ * ao-messaging-api - Asynchronous bidirectional messaging over various protocols API.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-messaging-api.
+ *
+ * ao-messaging-api is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-messaging-api is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-messaging-api.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoapps.messaging;
+
+/**
+ * A snapshot of the statistics of the outbound batches of a socket, and of the outbound messages dropped once
+ * expired.
+ *
+ * @see  Socket#getOutboundStatistics()
+ * @see  OutboundQueue#getStatistics()
+ */
+public final class OutboundStatistics {
+
+  private final long batches;
+  private final long messages;
+  private final long bytes;
+  private final int maxBatchMessages;
+  private final long maxBatchBytes;
+  private final long droppedMessages;
+  private final long droppedBytes;
+
+  /**
+   * Creates a new snapshot.
+   */
+  public OutboundStatistics(
+      long batches,
+      long messages,
+      long bytes,
+      int maxBatchMessages,
+      long maxBatchBytes,
+      long droppedMessages,
+      long droppedBytes
+  ) {
+    this.batches = batches;
+    this.messages = messages;
+    this.bytes = bytes;
+    this.maxBatchMessages = maxBatchMessages;
+    this.maxBatchBytes = maxBatchBytes;
+    this.droppedMessages = droppedMessages;
+    this.droppedBytes = droppedBytes;
+  }
+
+  @Override
+  public String toString() {
+    return "OutboundStatistics(batches = " + batches
+        + ", messages = " + messages
+        + ", bytes = " + bytes
+        + ", maxBatchMessages = " + maxBatchMessages
+        + ", maxBatchBytes = " + maxBatchBytes
+        + ", droppedMessages = " + droppedMessages
+        + ", droppedBytes = " + droppedBytes + ")";
+  }
+
+  /**
+   * Gets the number of batches sent.
+   */
+  public long getBatches() {
+    return batches;
+  }
+
+  /**
+   * Gets the number of messages sent in all batches.
+   */
+  public long getMessages() {
+    return messages;
+  }
+
+  /**
+   * Gets the number of bytes sent in all batches.
+   */
+  public long getBytes() {
+    return bytes;
+  }
+
+  /**
+   * Gets the largest number of messages sent in one batch.
+   */
+  public int getMaxBatchMessages() {
+    return maxBatchMessages;
+  }
+
+  /**
+   * Gets the largest number of bytes sent in one batch.
+   */
+  public long getMaxBatchBytes() {
+    return maxBatchBytes;
+  }
+
+  /**
+   * Gets the average number of messages per batch, or {@code 0} when no batches have been sent.
+   */
+  public double getAverageBatchMessages() {
+    return (batches == 0) ? 0 : ((double) messages / batches);
+  }
+
+  /**
+   * Gets the average number of bytes per batch, or {@code 0} when no batches have been sent.
+   */
+  public double getAverageBatchBytes() {
+    return (batches == 0) ? 0 : ((double) bytes / batches);
+  }
+
+  /**
+   * Gets the number of messages dropped since they expired before sent.
+   *
+   * @see  MessagePriority
+   */
+  public long getDroppedMessages() {
+    return droppedMessages;
+  }
+
+  /**
+   * Gets the number of bytes of the messages dropped since they expired before sent.
+   */
+  public long getDroppedBytes() {
+    return droppedBytes;
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * ao-messaging-api - Asynchronous bidirectional messaging over various protocols API.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-messaging-api.
+ *
+ * ao-messaging-api is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-messaging-api is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-messaging-api.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoapps.messaging;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A byte array acquired from a {@link ByteArrayPool}, returned to the pool once all references are released.
+ */
+final class PooledByteArray extends ByteArray {
+
+  private final ByteArrayPool pool;
+  private final AtomicInteger referenceCount = new AtomicInteger(1);
+
+  PooledByteArray(ByteArrayPool pool, byte[] array, int size) {
+    super(array, size);
+    this.pool = pool;
+  }
+
+  @Override
+  public PooledByteArray retain() {
+    if (referenceCount.getAndUpdate(count -> (count == 0) ? 0 : (count + 1)) == 0) {
+      throw new IllegalStateException("Already released");
+    }
+    return this;
+  }
+
+  @Override
+  public void release() {
+    int count = referenceCount.decrementAndGet();
+    if (count == 0) {
+      pool.release(array);
+    } else if (count < 0) {
+      referenceCount.incrementAndGet();
+      throw new IllegalStateException("Already released");
+    }
+  }
+}
@@ -0,0 +1,90 @@
+/*
+ * ao-messaging-api - Asynchronous bidirectional messaging over various protocols API.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-messaging-api.
+ *
+ * ao-messaging-api is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-messaging-api is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-messaging-api.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoapps.messaging;
+
+import java.io.OutputStream;
+import java.util.Objects;
+
+/**
+ * An output stream that writes into arrays acquired from a {@link ByteArrayPool}, growing by acquiring larger
+ * arrays and releasing the smaller.
+ */
+final class PooledOutputStream extends OutputStream {
+
+  private final ByteArrayPool pool;
+  private byte[] buf;
+  private int count;
+
+  PooledOutputStream(ByteArrayPool pool, int initialSize) {
+    this.pool = pool;
+    this.buf = pool.acquire(initialSize);
+  }
+
+  private void ensureCapacity(int minCapacity) {
+    if (minCapacity < 0) {
+      throw new OutOfMemoryError("Array too large");
+    }
+    if (minCapacity > buf.length) {
+      byte[] newBuf = pool.acquire(Math.max(minCapacity, buf.length << 1));
+      System.arraycopy(buf, 0, newBuf, 0, count);
+      pool.release(buf);
+      buf = newBuf;
+    }
+  }
+
+  @Override
+  public void write(int b) {
+    ensureCapacity(count + 1);
+    buf[count++] = (byte) b;
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) {
+    Objects.checkFromIndexSize(off, len, b.length);
+    ensureCapacity(count + len);
+    System.arraycopy(b, off, buf, count, len);
+    count += len;
+  }
+
+  /**
+   * Gets the bytes written.  The returned byte array must be {@link ByteArray#release() released}.
+   * This stream must not be used afterward.
+   */
+  PooledByteArray toByteArray() {
+    PooledByteArray byteArray = new PooledByteArray(pool, buf, count);
+    buf = null;
+    return byteArray;
+  }
+
+  /**
+   * Releases the array back to the pool when not already taken by {@link #toByteArray()}.
+   */
+  @Override
+  public void close() {
+    if (buf != null) {
+      pool.release(buf);
+      buf = null;
+    }
+  }
+}
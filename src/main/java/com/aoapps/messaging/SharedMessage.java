@@ -0,0 +1,188 @@
+/*
+ * ao-messaging-api - Asynchronous bidirectional messaging over various protocols API.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-messaging-api.
+ *
+ * ao-messaging-api is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-messaging-api is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-messaging-api.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoapps.messaging;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A message shared by many sockets, such as by {@link SocketContext#broadcast(com.aoapps.messaging.Message,
+ * java.util.function.Predicate)}, which is encoded at most once as a string and once in binary, no matter how many
+ * sockets send it.  The encodings are held for the life of this message, so each socket's transport shares the same
+ * encoded content.
+ *
+ * <p>A shared message is sent as the type of the message it shares, so it is received as the original message.  It
+ * is also equal to the message it shares, in both directions, since each message type compares the message shared by
+ * a shared message.</p>
+ *
+ * @see  #share(com.aoapps.messaging.Message)
+ */
+public final class SharedMessage implements Message {
+
+  /**
+   * Gets a message to share among many sockets.  The messages of a {@link MultiMessage} are each shared, since their
+   * framing depends on the {@linkplain Socket#getWireFormat() wire format} of each socket.
+   *
+   * @return  the message itself when already shared
+   */
+  public static Message share(Message message) {
+    if (message instanceof SharedMessage) {
+      return message;
+    }
+    if (message instanceof MultiMessage) {
+      Collection<? extends Message> messages = ((MultiMessage) message).getMessages();
+      List<Message> shared = new ArrayList<>(messages.size());
+      for (Message child : messages) {
+        shared.add(share(child));
+      }
+      return new MultiMessage(shared);
+    }
+    return new SharedMessage(message);
+  }
+
+  private final Message message;
+
+  private final Object encodedStringLock = new Object();
+  private volatile String encodedString;
+
+  private final Object encodedByteArrayLock = new Object();
+  private volatile ByteArray encodedByteArray;
+
+  private SharedMessage(Message message) {
+    this.message = message;
+  }
+
+  @Override
+  public String toString() {
+    return "SharedMessage(" + message + ")";
+  }
+
+  /**
+   * Gets the message shared by a shared message, or the object itself when not shared.  Used by the {@code equals}
+   * of each message type, so a shared message is equal to the message it shares in both directions.
+   */
+  static Object unwrap(Object o) {
+    return (o instanceof SharedMessage) ? ((SharedMessage) o).message : o;
+  }
+
+  /**
+   * Equal to any message of the same type and content as the message shared, whether shared or not.
+   */
+  @Override
+  public boolean equals(Object o) {
+    return this == o || message.equals(unwrap(o));
+  }
+
+  @Override
+  public int hashCode() {
+    return message.hashCode();
+  }
+
+  @Override
+  public MessageType getMessageType() {
+    return message.getMessageType();
+  }
+
+  /**
+   * Encodes the message on first call, then returns the same encoding.
+   */
+  @Override
+  public String encodeAsString() throws IOException {
+    String str = encodedString;
+    if (str == null) {
+      // Locked so concurrent sockets do not each encode
+      synchronized (encodedStringLock) {
+        str = encodedString;
+        if (str == null) {
+          str = message.encodeAsString();
+          encodedString = str;
+        }
+      }
+    }
+    return str;
+  }
+
+  @Override
+  public long getEncodedStringLength() throws IOException {
+    String str = encodedString;
+    return (str != null) ? str.length() : message.getEncodedStringLength();
+  }
+
+  /**
+   * Encodes the message on first call, then returns the same encoding.
+   */
+  @Override
+  public ByteArray encodeAsByteArray() throws IOException {
+    ByteArray bytes = encodedByteArray;
+    if (bytes == null) {
+      // Locked so concurrent sockets do not each encode
+      synchronized (encodedByteArrayLock) {
+        bytes = encodedByteArray;
+        if (bytes == null) {
+          bytes = message.encodeAsByteArray();
+          encodedByteArray = bytes;
+        }
+      }
+    }
+    return bytes;
+  }
+
+  @Override
+  public long getEncodedByteArrayLength() throws IOException {
+    ByteArray bytes = encodedByteArray;
+    return (bytes != null) ? bytes.size : message.getEncodedByteArrayLength();
+  }
+
+  /**
+   * Gets an upper bound of {@link #getEncodedByteArrayLength()} without encoding or compressing, which is exact once
+   * encoded.
+   *
+   * @see  OutboundQueue#getEncodedByteArrayLengthBound(com.aoapps.messaging.Message)
+   */
+  long getEncodedByteArrayLengthBound() throws IOException {
+    ByteArray bytes = encodedByteArray;
+    return (bytes != null) ? bytes.size : OutboundQueue.getEncodedByteArrayLengthBound(message);
+  }
+
+  /**
+   * Does nothing, since this message is shared by many sockets, each of which may close it.  The shared message must
+   * be closed by its owner once no longer needed.  Once encoded in each format its sockets use, the shared message is
+   * no longer accessed.
+   *
+   * @see  #getMessage()
+   */
+  @Override
+  public void close() {
+    // Nothing to do
+  }
+
+  /**
+   * Gets the message that is shared.
+   */
+  public Message getMessage() {
+    return message;
+  }
+}
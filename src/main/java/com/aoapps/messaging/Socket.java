@@ -1,6 +1,6 @@
 /*
  * ao-messaging-api - Asynchronous bidirectional messaging over various protocols API.
- * Copyright (C) 2014, 2015, 2016, 2020, 2021, 2022, 2024  AO Industries, Inc.
+ * Copyright (C) 2014, 2015, 2016, 2020, 2021, 2022, 2024, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -29,7 +29,11 @@ import com.aoapps.security.Identifier;
 import java.io.Closeable;
 import java.io.IOException;
 import java.net.SocketAddress;
+import java.time.Duration;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * One established connection.
@@ -106,10 +110,39 @@ public interface Socket extends Closeable {
    */
   boolean removeSocketListener(SocketListener listener);
 
+  /**
+   * Gets the format used to frame the messages sent by this socket.
+   * Received messages may be in any format, as recognized by
+   * {@link WireFormat#getFromEncoding(com.aoapps.messaging.ByteArray)} or
+   * {@link WireFormat#getFromEncoding(java.lang.CharSequence)}.
+   *
+   * <p>This default implementation uses the format of the {@linkplain #getSocketContext() context}.
+   * An implementation may select a format per socket, such as once the remote end is known to support it.</p>
+   */
+  default WireFormat getWireFormat() {
+    return getSocketContext().getWireFormat();
+  }
+
+  /**
+   * Gets the {@linkplain CompressionDictionary compression dictionary} negotiated for this socket.
+   * When not {@code null}, the implementation compresses between {@link #sendMessages(java.util.Collection)} and its
+   * transport with a {@link DictionaryCompressor}, and decompresses received messages with a
+   * {@link DictionaryDecompressor}.
+   *
+   * <p>This default implementation is {@code null}, meaning messages are sent without a dictionary.
+   * An implementation that supports dictionaries exchanges the versions of
+   * {@link SocketContext#getCompressionDictionaries()} when connecting, then selects one with
+   * {@link CompressionDictionary#negotiate(java.util.Collection, java.util.Collection)}.</p>
+   */
+  default CompressionDictionary getCompressionDictionary() {
+    return null;
+  }
+
   /**
    * Sends a single message.  This will never block.
    *
-   * @throws  IllegalStateException  if this socket is closed
+   * @throws  IllegalStateException  if this socket is closed, or if the message would exceed the
+   *                                 {@linkplain #getOutboundLimits() outbound limits}
    */
   void sendMessage(Message message) throws IllegalStateException;
 
@@ -117,7 +150,178 @@ public interface Socket extends Closeable {
    * Sends a set of messages.  This will never block.
    * If messages is empty, the request is ignored.
    *
-   * @throws  IllegalStateException  if this socket is closed
+   * @throws  IllegalStateException  if this socket is closed, or if the messages would exceed the
+   *                                 {@linkplain #getOutboundLimits() outbound limits}
+   *
+   * @see  #trySendMessages(java.util.Collection)
    */
   void sendMessages(Collection<? extends Message> messages) throws IllegalStateException;
+
+  /**
+   * Sends a set of messages, returning a future that completes once they have all been written to the transport.
+   * This will never block.  The future fails if the socket closes first.  This allows resources held by the messages,
+   * such as pooled buffers or the temporary files of {@link FileMessage}, to be released as soon as they are written.
+   * If messages is empty, the future is already complete.
+   *
+   * <p>This default implementation, for an implementation that does not track its writes, calls
+   * {@link #sendMessages(java.util.Collection)} and returns an already completed future.  This is a weaker guarantee:
+   * the messages have only been accepted by this socket, not necessarily written, and the future does not fail if the
+   * socket closes before writing them.  An implementation would typically track its writes with
+   * {@link OutboundQueue#offer(java.util.Collection, java.util.concurrent.CompletableFuture)}.</p>
+   *
+   * @throws  IllegalStateException  if this socket is closed, or if the messages would exceed the
+   *                                 {@linkplain #getOutboundLimits() outbound limits}
+   */
+  default CompletableFuture<Void> sendMessagesAsync(Collection<? extends Message> messages)
+      throws IllegalStateException {
+    sendMessages(messages);
+    return CompletableFuture.completedFuture(null);
+  }
+
+  /**
+   * Sends a set of messages, calling back once they have all been written to the transport, or on error, including
+   * when the socket closes first.
+   *
+   * <p>This default implementation is built on {@link #sendMessagesAsync(java.util.Collection)}, so has the same
+   * guarantee.  For an implementation that does not track its writes, {@code onWritten} is called once the messages
+   * have been accepted, before this method returns.</p>
+   *
+   * @param  onWritten  called with this socket once the messages have been written
+   * @param  onError    called on error, such as when the socket closes before the messages are written
+   *
+   * @throws  IllegalStateException  if this socket is closed, or if the messages would exceed the
+   *                                 {@linkplain #getOutboundLimits() outbound limits}
+   *
+   * @see  #sendMessagesAsync(java.util.Collection)
+   */
+  default void sendMessages(
+      Collection<? extends Message> messages,
+      Callback<? super Socket> onWritten,
+      Callback<? super Throwable> onError
+  ) throws IllegalStateException {
+    sendMessagesAsync(messages).whenComplete((result, t) -> {
+      if (t == null) {
+        if (onWritten != null) {
+          onWritten.call(this);
+        }
+      } else {
+        if (onError != null) {
+          onError.call((t instanceof CompletionException && t.getCause() != null) ? t.getCause() : t);
+        }
+      }
+    });
+  }
+
+  /**
+   * Sends a message with the given priority and time to live.  This will never block.
+   *
+   * @see  #sendMessages(java.util.Collection, com.aoapps.messaging.MessagePriority, java.time.Duration)
+   */
+  default void sendMessage(Message message, MessagePriority priority, Duration timeToLive)
+      throws IllegalStateException {
+    sendMessages(Collections.singletonList(message), priority, timeToLive);
+  }
+
+  /**
+   * Sends a set of messages with the given priority and time to live.  This will never block.
+   * Higher priority messages are sent ahead of any lower priority messages still queued.
+   * Messages that have not been sent within their time to live are dropped and closed, and are counted in the
+   * {@linkplain #getOutboundStatistics() outbound statistics}.
+   * If messages is empty, the request is ignored.
+   *
+   * <p>This default implementation sends the messages in order, ignoring both the priority and time to live, for an
+   * implementation that does not prioritize its messages.  An implementation would typically use
+   * {@link OutboundQueue#offer(java.util.Collection, com.aoapps.messaging.MessagePriority, java.time.Duration,
+   * java.util.concurrent.CompletableFuture)}.</p>
+   *
+   * @param  timeToLive  how long the messages may wait to be sent, or {@code null} to never expire
+   *
+   * @throws  IllegalStateException  if this socket is closed, or if the messages would exceed the
+   *                                 {@linkplain #getOutboundLimits() outbound limits}
+   */
+  default void sendMessages(Collection<? extends Message> messages, MessagePriority priority, Duration timeToLive)
+      throws IllegalStateException {
+    sendMessages(messages);
+  }
+
+  /**
+   * Sends a set of messages when they fit within the {@linkplain #getOutboundLimits() outbound limits}.
+   * This will never block.  The messages are either all queued or none are queued.
+   * If messages is empty, the request is ignored.
+   *
+   * <p>This default implementation sends the messages without any limit.  An implementation with an outbound limit
+   * would typically use an {@link OutboundQueue}.</p>
+   *
+   * @return  {@code true} when the messages are sent, or {@code false} when rejected since they would exceed the
+   *          outbound limits
+   *
+   * @throws  IllegalStateException  if this socket is closed
+   */
+  default boolean trySendMessages(Collection<? extends Message> messages) throws IllegalStateException {
+    sendMessages(messages);
+    return true;
+  }
+
+  /**
+   * Gets the limits of the outbound queue of this socket.
+   *
+   * <p>This default implementation uses the limits of the {@linkplain #getSocketContext() context}.</p>
+   */
+  default OutboundLimits getOutboundLimits() {
+    return getSocketContext().getOutboundLimits();
+  }
+
+  /**
+   * Gets the number of messages queued for sending, so producers may throttle.
+   *
+   * <p>This default implementation is {@code 0}, for an implementation that does not track its outbound queue.</p>
+   */
+  default int getOutboundQueueSize() {
+    return 0;
+  }
+
+  /**
+   * Gets the number of bytes queued for sending, so producers may throttle.
+   *
+   * <p>This default implementation is {@code 0}, for an implementation that does not track its outbound queue.</p>
+   */
+  default long getOutboundQueueBytes() {
+    return 0;
+  }
+
+  /**
+   * Gets how this socket coalesces outbound messages into batches.
+   *
+   * <p>This default implementation uses the policy of the {@linkplain #getSocketContext() context}.</p>
+   */
+  default CoalescingPolicy getCoalescingPolicy() {
+    return getSocketContext().getCoalescingPolicy();
+  }
+
+  /**
+   * Sends the queued messages without waiting for the maximum delay of the
+   * {@linkplain #getCoalescingPolicy() coalescing policy}.  This will never block.
+   *
+   * <p>This default implementation does nothing, for an implementation that does not coalesce its messages.
+   * An implementation would typically call {@link OutboundQueue#flush()}, then wake its writer.</p>
+   *
+   * @throws  IllegalStateException  if this socket is closed
+   */
+  default void flush() throws IllegalStateException {
+    // Nothing to do
+  }
+
+  /**
+   * Gets a snapshot of the statistics of the outbound batches of this socket, such as to tune its
+   * {@linkplain #getCoalescingPolicy() coalescing policy}, along with the counts of messages dropped once expired.
+   *
+   * <p>This default implementation is {@code null}, for an implementation that does not track its batches.</p>
+   *
+   * @return  the statistics or {@code null} when not tracked
+   *
+   * @see  OutboundQueue#getStatistics()
+   */
+  default OutboundStatistics getOutboundStatistics() {
+    return null;
+  }
 }
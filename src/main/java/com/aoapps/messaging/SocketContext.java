@@ -1,6 +1,6 @@
 /*
  * ao-messaging-api - Asynchronous bidirectional messaging over various protocols API.
- * Copyright (C) 2014, 2015, 2016, 2019, 2020, 2021, 2022, 2024  AO Industries, Inc.
+ * Copyright (C) 2014, 2015, 2016, 2019, 2020, 2021, 2022, 2024, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -27,7 +27,11 @@ import com.aoapps.concurrent.ConcurrentListenerManager;
 import com.aoapps.security.Identifier;
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 /**
  * Each socket, regardless or protocol and whether client or server, has a
@@ -46,6 +50,47 @@ public interface SocketContext extends Closeable {
    */
   Socket getSocket(Identifier id);
 
+  /**
+   * Performs the given action for each active socket, without building a snapshot.  Sockets added or removed
+   * concurrently may or may not be included.
+   *
+   * <p>Implementations iterate their active sockets directly, such as the values of a concurrent map, since this is
+   * called on every {@link #broadcast(com.aoapps.messaging.Message, java.util.function.Predicate)}.</p>
+   */
+  void forEachSocket(Consumer<? super Socket> action);
+
+  /**
+   * Sends a message to each active socket accepted by the given filter.  The message is
+   * {@linkplain SharedMessage#share(com.aoapps.messaging.Message) shared}, so it is encoded at most once as a string
+   * and once in binary, no matter how many sockets send it.  This will never block.
+   *
+   * <p>Sockets that are closed, or where the message would exceed the {@linkplain Socket#getOutboundLimits() outbound
+   * limits}, are skipped.  The message is not closed, and must remain available until sent by each socket.</p>
+   *
+   * @param  recipients  selects the sockets to send to, or {@code null} for all
+   *
+   * @return  the number of sockets the message was sent to
+   *
+   * @see  #forEachSocket(java.util.function.Consumer)
+   * @see  Socket#trySendMessages(java.util.Collection)
+   */
+  default int broadcast(Message message, Predicate<? super Socket> recipients) {
+    List<Message> shared = Collections.singletonList(SharedMessage.share(message));
+    int[] sent = {0};
+    forEachSocket(socket -> {
+      if (!socket.isClosed() && (recipients == null || recipients.test(socket))) {
+        try {
+          if (socket.trySendMessages(shared)) {
+            sent[0]++;
+          }
+        } catch (IllegalStateException e) {
+          // Closed concurrently
+        }
+      }
+    });
+    return sent[0];
+  }
+
   /**
    * Closes this context.  When the context is closed, all active sockets are
    * closed and all related persistent resources are freed.
@@ -58,6 +103,51 @@ public interface SocketContext extends Closeable {
    */
   boolean isClosed();
 
+  /**
+   * Gets the default format used to frame the messages sent by the sockets of this context.
+   *
+   * <p>This default implementation is {@link WireFormat#V1}, which all versions can decode.</p>
+   *
+   * @see  Socket#getWireFormat()
+   */
+  default WireFormat getWireFormat() {
+    return WireFormat.V1;
+  }
+
+  /**
+   * Gets the {@linkplain CompressionDictionary compression dictionaries} the sockets of this context offer when
+   * connecting.  Each socket uses the highest version both ends have, if any.
+   *
+   * <p>This default implementation is empty, so messages are sent without a dictionary.</p>
+   *
+   * @see  Socket#getCompressionDictionary()
+   */
+  default List<CompressionDictionary> getCompressionDictionaries() {
+    return Collections.emptyList();
+  }
+
+  /**
+   * Gets the default limits of the outbound queue of the sockets of this context.
+   *
+   * <p>This default implementation is {@link OutboundLimits#UNLIMITED}.</p>
+   *
+   * @see  Socket#getOutboundLimits()
+   */
+  default OutboundLimits getOutboundLimits() {
+    return OutboundLimits.UNLIMITED;
+  }
+
+  /**
+   * Gets how the sockets of this context coalesce outbound messages into batches.
+   *
+   * <p>This default implementation is {@link CoalescingPolicy#NONE}.</p>
+   *
+   * @see  Socket#getCoalescingPolicy()
+   */
+  default CoalescingPolicy getCoalescingPolicy() {
+    return CoalescingPolicy.NONE;
+  }
+
   /**
    * See {@link ConcurrentListenerManager#addListener(java.lang.Object, boolean)}.
    */
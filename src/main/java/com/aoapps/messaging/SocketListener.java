@@ -1,6 +1,6 @@
 /*
  * ao-messaging-api - Asynchronous bidirectional messaging over various protocols API.
- * Copyright (C) 2014, 2015, 2016, 2020, 2021, 2022, 2024  AO Industries, Inc.
+ * Copyright (C) 2014, 2015, 2016, 2020, 2021, 2022, 2024, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -64,6 +64,29 @@ public interface SocketListener {
       SocketAddress newRemoteSocketAddress
   );
 
+  /**
+   * Called when the outbound queue of a socket grows above its high watermark, so producers may throttle.
+   *
+   * <p>This default implementation does nothing.</p>
+   *
+   * @see  OutboundLimits
+   */
+  default void onOutboundHighWatermark(Socket socket) {
+    // Nothing to do
+  }
+
+  /**
+   * Called when the outbound queue of a socket, after growing above its high watermark, drains to its low watermark,
+   * so producers may resume.
+   *
+   * <p>This default implementation does nothing.</p>
+   *
+   * @see  OutboundLimits
+   */
+  default void onOutboundLowWatermark(Socket socket) {
+    // Nothing to do
+  }
+
   /**
    * Called when a socket is closed.
    * This will only be called once.
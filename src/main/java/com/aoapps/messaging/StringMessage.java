@@ -1,6 +1,6 @@
 /*
  * ao-messaging-api - Asynchronous bidirectional messaging over various protocols API.
- * Copyright (C) 2014, 2015, 2016, 2019, 2021, 2022, 2024  AO Industries, Inc.
+ * Copyright (C) 2014, 2015, 2016, 2019, 2021, 2022, 2024, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -23,6 +23,9 @@
 
 package com.aoapps.messaging;
 
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 
@@ -36,27 +39,99 @@ public class StringMessage implements Message {
   private static final Charset CHARSET = StandardCharsets.UTF_8;
 
   /**
-   * {@link StandardCharsets#UTF_8} decodes the message.
+   * {@link StandardCharsets#UTF_8} decodes the message into a new {@link String}, so the bytes may be reused afterward.
    */
   public static StringMessage decode(ByteArray encodedMessage) {
     if (encodedMessage.size == 0) {
       return EMPTY_STRING_MESSAGE;
     }
 
-    return new StringMessage(new String(encodedMessage.array, 0, encodedMessage.size, CHARSET));
+    return new StringMessage(new String(encodedMessage.array, encodedMessage.offset, encodedMessage.size, CHARSET));
   }
 
-  private final String message;
+  /**
+   * Creates a message backed by its {@link StandardCharsets#UTF_8} encoding, which is only decoded when the text is
+   * first needed.  A message that is only forwarded is never decoded, and {@link #encodeAsByteArray()} returns the
+   * original bytes without any work.
+   *
+   * <p>The bytes are not copied, so they must not be modified afterward, and a view into a larger array keeps the
+   * whole array reachable.  Malformed input is forwarded unchanged, while the decoded text has each malformed sequence
+   * replaced, just as {@link #decode(com.aoapps.messaging.ByteArray)}.  The message is equal to the eagerly decoded
+   * form either way.</p>
+   */
+  public static StringMessage decodeLazy(ByteArray encodedMessage) {
+    if (encodedMessage.size == 0) {
+      return EMPTY_STRING_MESSAGE;
+    }
+
+    return new StringMessage(encodedMessage);
+  }
+
+  /**
+   * {@link StandardCharsets#UTF_8} decodes the remaining bytes of a buffer, which may be off-heap.
+   * The position of the buffer is not changed.
+   */
+  public static StringMessage decode(ByteBuffer encodedMessage) {
+    if (!encodedMessage.hasRemaining()) {
+      return EMPTY_STRING_MESSAGE;
+    }
+
+    return new StringMessage(CHARSET.decode(encodedMessage.duplicate()).toString());
+  }
+
+  /**
+   * Decodes the message from a range of characters, only creating a new {@link String} when the range is not
+   * already an entire {@link String}.
+   */
+  static StringMessage decode(CharSequence encodedMessage, int start, int end) {
+    if (start == end) {
+      return EMPTY_STRING_MESSAGE;
+    }
+
+    if (start == 0 && end == encodedMessage.length()) {
+      return new StringMessage(encodedMessage.toString());
+    }
+    return new StringMessage(encodedMessage.subSequence(start, end).toString());
+  }
+
+  /**
+   * The message, or {@code null} until first decoded for a message backed by its encoding.
+   */
+  private volatile String message;
+
+  /**
+   * The original {@link StandardCharsets#UTF_8} encoding, or {@code null} when created from a {@link String}.
+   */
+  private final ByteArray original;
+
+  /**
+   * The {@link StandardCharsets#UTF_8} encoding of a message created from a {@link String}, cached on first use so
+   * that a message sent to many recipients is only encoded once.  It is softly referenced so that it may be reclaimed
+   * under memory pressure, in which case it is simply encoded again.
+   */
+  private volatile SoftReference<ByteArray> encodedByteArray;
 
   /**
    * Creates a new {@link StringMessage}.
    */
   public StringMessage(String message) {
     this.message = message;
+    this.original = null;
+  }
+
+  /**
+   * Creates a new {@link StringMessage} backed by its encoding.
+   *
+   * @see  #decodeLazy(com.aoapps.messaging.ByteArray)
+   */
+  private StringMessage(ByteArray original) {
+    this.message = null;
+    this.original = original;
   }
 
   @Override
   public String toString() {
+    String message = getMessage();
     if (message.length() > 21) {
       return "StringMessage(\"" + message.substring(0, 20) + "…\")";
     } else {
@@ -66,6 +141,7 @@ public class StringMessage implements Message {
 
   @Override
   public boolean equals(Object o) {
+    o = SharedMessage.unwrap(o);
     if (this == o) {
       return true;
     }
@@ -73,12 +149,19 @@ public class StringMessage implements Message {
       return false;
     }
     StringMessage other = (StringMessage) o;
-    return message.equals(other.message);
+    if (original != null && other.original != null && original.equals(other.original)) {
+      // Equal encodings always decode equally, but unequal ones may still decode equally when malformed
+      return true;
+    }
+    return getMessage().equals(other.getMessage());
   }
 
+  /**
+   * The hash code of the message text, decoding if needed, consistent with the eagerly decoded form.
+   */
   @Override
   public int hashCode() {
-    return message.hashCode();
+    return getMessage().hashCode();
   }
 
   @Override
@@ -88,19 +171,80 @@ public class StringMessage implements Message {
 
   @Override
   public String encodeAsString() {
-    return message;
+    return getMessage();
+  }
+
+  @Override
+  public void appendTo(Appendable out) throws IOException {
+    out.append(getMessage());
+  }
+
+  @Override
+  public long getEncodedStringLength() {
+    return getMessage().length();
+  }
+
+  /**
+   * Gets the number of bytes in the {@link StandardCharsets#UTF_8} encoding, without encoding.
+   * As with {@link String#getBytes(java.nio.charset.Charset)}, each unpaired surrogate is encoded as a single
+   * replacement byte.
+   */
+  @Override
+  public long getEncodedByteArrayLength() {
+    if (original != null) {
+      return original.size;
+    }
+    SoftReference<ByteArray> ref = encodedByteArray;
+    if (ref != null) {
+      ByteArray bytes = ref.get();
+      if (bytes != null) {
+        return bytes.size;
+      }
+    }
+    String message = this.message;
+    long length = 0;
+    for (int i = 0, len = message.length(); i < len; i++) {
+      char ch = message.charAt(i);
+      if (ch < 0x80) {
+        length++;
+      } else if (ch < 0x800) {
+        length += 2;
+      } else if (Character.isSurrogate(ch)) {
+        if (Character.isHighSurrogate(ch) && (i + 1) < len && Character.isLowSurrogate(message.charAt(i + 1))) {
+          length += 4;
+          i++;
+        } else {
+          length++;
+        }
+      } else {
+        length += 3;
+      }
+    }
+    return length;
   }
 
   /**
-   * {@link StandardCharsets#UTF_8} encodes the message.
+   * {@link StandardCharsets#UTF_8} encodes the message.  The encoding is cached, and the same bytes are returned
+   * to each caller, so they must not be modified.  A message backed by its encoding returns the original bytes.
    */
   @Override
   public ByteArray encodeAsByteArray() {
+    if (original != null) {
+      return original;
+    }
+    String message = this.message;
     if (message.isEmpty()) {
       return ByteArray.EMPTY_BYTE_ARRAY;
     }
 
-    return new ByteArray(message.getBytes(CHARSET));
+    SoftReference<ByteArray> ref = encodedByteArray;
+    ByteArray bytes = (ref == null) ? null : ref.get();
+    if (bytes == null) {
+      // Concurrent callers may each encode, but all results are equal
+      bytes = new ByteArray(message.getBytes(CHARSET));
+      encodedByteArray = new SoftReference<>(bytes);
+    }
+    return bytes;
   }
 
   @Override
@@ -108,7 +252,15 @@ public class StringMessage implements Message {
     // Nothing to do
   }
 
+  /**
+   * Gets the message.  A message backed by its encoding is decoded on first call.
+   */
   public String getMessage() {
-    return message;
+    String str = message;
+    if (str == null) {
+      str = new String(original.array, original.offset, original.size, CHARSET);
+      message = str;
+    }
+    return str;
   }
 }
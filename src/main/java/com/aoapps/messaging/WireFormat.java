@@ -0,0 +1,444 @@
+/*
+ * ao-messaging-api - Asynchronous bidirectional messaging over various protocols API.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-messaging-api.
+ *
+ * ao-messaging-api is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-messaging-api is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-messaging-api.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoapps.messaging;
+
+import com.aoapps.lang.io.IoUtils;
+import com.aoapps.lang.io.function.IOSupplier;
+import com.aoapps.tempfiles.TempFileContext;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
+/**
+ * The framing of the messages within a {@link MultiMessage}, which is how a set of messages is sent over a
+ * {@link Socket}.  The encoding of each message is the same in all formats.
+ *
+ * <p>Each format may be recognized from its encoding by {@link #getFromEncoding(com.aoapps.messaging.ByteArray)}
+ * or {@link #getFromEncoding(java.lang.CharSequence)}, so a receiver may accept all formats while senders are
+ * upgraded.</p>
+ *
+ * @see  Socket#getWireFormat()
+ * @see  SocketContext#getWireFormat()
+ */
+public enum WireFormat {
+
+  /**
+   * The original format.  The binary encoding is an {@code int} count of messages followed by, for each message,
+   * its type byte, an {@code int} length, and its encoding.  The string encoding is a decimal count and delimiter
+   * followed by, for each message, its type character, a decimal length, a delimiter, and its encoding.
+   */
+  V1 {
+    @Override
+    int getCountLength(int count) {
+      return Integer.BYTES;
+    }
+
+    @Override
+    int putCount(byte[] buffer, int count) {
+      IoUtils.intToBuffer(count, buffer, 0);
+      return Integer.BYTES;
+    }
+
+    @Override
+    int getHeaderLength(MessageType type, int capacity) {
+      return Byte.BYTES + Integer.BYTES;
+    }
+
+    @Override
+    int putHeader(byte[] buffer, MessageType type, int capacity) {
+      buffer[0] = type.getTypeByte();
+      IoUtils.intToBuffer(capacity, buffer, 1);
+      return Byte.BYTES + Integer.BYTES;
+    }
+
+    @Override
+    int getCountStringLength(int count) {
+      return getDecimalLength(count) + 1;
+    }
+
+    @Override
+    int appendCount(Appendable out, int count) throws IOException {
+      String countStr = Integer.toString(count);
+      out.append(countStr).append(MultiMessage.DELIMITER);
+      return countStr.length() + 1;
+    }
+
+    @Override
+    int getHeaderStringLength(MessageType type, long capacity) {
+      return 1 + getDecimalLength(capacity) + 1;
+    }
+
+    @Override
+    int appendHeader(Appendable out, MessageType type, long capacity) throws IOException {
+      String capacityStr = Long.toString(capacity);
+      out
+          .append(type.getTypeChar())
+          .append(capacityStr)
+          .append(MultiMessage.DELIMITER);
+      return 1 + capacityStr.length() + 1;
+    }
+
+    @Override
+    MultiMessage decode(ByteArray encodedMessages, IOSupplier<TempFileContext> tempFileContextSupplier)
+        throws IOException {
+      return MultiMessage.decode(encodedMessages, tempFileContextSupplier);
+    }
+
+    @Override
+    MultiMessage decode(
+        CharSequence encodedMessages,
+        int start,
+        int end,
+        IOSupplier<TempFileContext> tempFileContextSupplier
+    ) throws IOException {
+      return MultiMessage.decode(encodedMessages, start, end, tempFileContextSupplier);
+    }
+  },
+
+  /**
+   * A compact format for many small messages.  The type of each message is packed into the low three bits of its
+   * length, and the count and lengths are variable-length.
+   *
+   * <p>The binary encoding is a marker byte, which is never the first byte of {@link #V1}, followed by the
+   * count of messages as an unsigned LEB128 varint.  Each message is then its packed length
+   * {@code (length << 3) | typeByte}, also as a varint, followed by its encoding.</p>
+   *
+   * <p>The string encoding is a {@code '~'} marker, followed by the count and packed lengths as varints of five bits
+   * per character, least significant first.  The final character of each varint is one of
+   * {@code 0-9} and {@code a-v}, while all preceding characters are one of {@code A-Z}, {@code w-z}, {@code -} and
+   * {@code _}.  All framing characters are unreserved in URLs.</p>
+   *
+   * <p>Nested messages of type {@link MessageType#MULTI} are also encoded in this format.</p>
+   */
+  V2 {
+    @Override
+    int getCountLength(int count) {
+      return 1 + getVarintLength(count);
+    }
+
+    @Override
+    int putCount(byte[] buffer, int count) {
+      buffer[0] = MARKER;
+      return 1 + putVarint(buffer, 1, count);
+    }
+
+    @Override
+    int getHeaderLength(MessageType type, int capacity) {
+      return getVarintLength(pack(type, capacity));
+    }
+
+    @Override
+    int putHeader(byte[] buffer, MessageType type, int capacity) {
+      return putVarint(buffer, 0, pack(type, capacity));
+    }
+
+    @Override
+    int getCountStringLength(int count) {
+      return 1 + getStringVarintLength(count);
+    }
+
+    @Override
+    int appendCount(Appendable out, int count) throws IOException {
+      out.append(STRING_MARKER);
+      return 1 + appendVarint(out, count);
+    }
+
+    @Override
+    int getHeaderStringLength(MessageType type, long capacity) {
+      return getStringVarintLength(pack(type, capacity));
+    }
+
+    @Override
+    int appendHeader(Appendable out, MessageType type, long capacity) throws IOException {
+      return appendVarint(out, pack(type, capacity));
+    }
+
+    @Override
+    MultiMessage decode(ByteArray encodedMessages, IOSupplier<TempFileContext> tempFileContextSupplier)
+        throws IOException {
+      return MultiMessage.decodeCompact(encodedMessages, tempFileContextSupplier);
+    }
+
+    @Override
+    MultiMessage decode(
+        CharSequence encodedMessages,
+        int start,
+        int end,
+        IOSupplier<TempFileContext> tempFileContextSupplier
+    ) throws IOException {
+      return MultiMessage.decodeCompact(encodedMessages, start, end, tempFileContextSupplier);
+    }
+  };
+
+  /**
+   * The first byte of a {@link #V2} binary encoding.  The first byte of a {@link #V1} binary encoding is the
+   * high byte of a non-negative {@code int}, so never has its high bit set.
+   */
+  static final byte MARKER = (byte) 0x82;
+
+  /**
+   * The first character of a {@link #V2} string encoding.  A {@link #V1} string encoding begins with a digit.
+   */
+  static final char STRING_MARKER = '~';
+
+  /**
+   * The number of bits of the packed length used for the type.
+   */
+  private static final int TYPE_BITS = 3;
+
+  /**
+   * The maximum number of bytes written by {@link #putCount(byte[], int)} or
+   * {@link #putHeader(byte[], com.aoapps.messaging.MessageType, int)}.
+   */
+  static final int MAX_FRAMING_LENGTH = 1 + 5;
+
+  /**
+   * The maximum number of bytes in a varint of a packed length.
+   */
+  private static final int MAX_VARINT_LENGTH = 5;
+
+  /**
+   * The maximum number of characters in a string varint of a packed length.
+   */
+  private static final int MAX_STRING_VARINT_LENGTH = 7;
+
+  /**
+   * The final character of each string varint, by value.
+   */
+  private static final String FINAL_DIGITS = "0123456789abcdefghijklmnopqrstuv";
+
+  /**
+   * The non-final characters of each string varint, by value.
+   */
+  private static final String CONTINUATION_DIGITS = "ABCDEFGHIJKLMNOPQRSTUVWXYZwxyz-_";
+
+  /**
+   * Gets the format of the given binary encoding.
+   * An empty encoding is the same in all formats and is reported as {@link #V1}.
+   */
+  public static WireFormat getFromEncoding(ByteArray encodedMessages) {
+    return (encodedMessages.size != 0 && encodedMessages.array[encodedMessages.offset] == MARKER) ? V2 : V1;
+  }
+
+  /**
+   * Gets the format of the given string encoding.
+   * An empty encoding is the same in all formats and is reported as {@link #V1}.
+   */
+  public static WireFormat getFromEncoding(CharSequence encodedMessages) {
+    return (encodedMessages.length() != 0 && encodedMessages.charAt(0) == STRING_MARKER) ? V2 : V1;
+  }
+
+  /**
+   * Gets the number of bytes encoding the count of messages.
+   */
+  abstract int getCountLength(int count);
+
+  /**
+   * Puts the count of messages into the beginning of the given buffer.
+   *
+   * @return  the number of bytes put
+   */
+  abstract int putCount(byte[] buffer, int count);
+
+  /**
+   * Gets the number of bytes encoding the type and length of a message.
+   */
+  abstract int getHeaderLength(MessageType type, int capacity);
+
+  /**
+   * Puts the type and length of a message into the beginning of the given buffer.
+   *
+   * @return  the number of bytes put
+   */
+  abstract int putHeader(byte[] buffer, MessageType type, int capacity);
+
+  /**
+   * Gets the number of characters encoding the count of messages.
+   */
+  abstract int getCountStringLength(int count);
+
+  /**
+   * Appends the count of messages.
+   *
+   * @return  the number of characters appended
+   */
+  abstract int appendCount(Appendable out, int count) throws IOException;
+
+  /**
+   * Gets the number of characters encoding the type and length of a message.
+   */
+  abstract int getHeaderStringLength(MessageType type, long capacity);
+
+  /**
+   * Appends the type and length of a message.
+   *
+   * @return  the number of characters appended
+   */
+  abstract int appendHeader(Appendable out, MessageType type, long capacity) throws IOException;
+
+  /**
+   * Decodes messages from their binary encoding in this format.
+   */
+  abstract MultiMessage decode(ByteArray encodedMessages, IOSupplier<TempFileContext> tempFileContextSupplier)
+      throws IOException;
+
+  /**
+   * Decodes messages from a range of characters containing their string encoding in this format.
+   */
+  abstract MultiMessage decode(
+      CharSequence encodedMessages,
+      int start,
+      int end,
+      IOSupplier<TempFileContext> tempFileContextSupplier
+  ) throws IOException;
+
+  /**
+   * Gets the number of decimal digits in a non-negative value.
+   */
+  static int getDecimalLength(long value) {
+    int length = 1;
+    while (value >= 10) {
+      value /= 10;
+      length++;
+    }
+    return length;
+  }
+
+  /**
+   * Packs the type of a message into its length.
+   */
+  private static long pack(MessageType type, long capacity) {
+    int typeByte = type.getTypeByte();
+    if (typeByte < 0 || typeByte >= (1 << TYPE_BITS)) {
+      throw new IllegalArgumentException("Type does not fit in " + V2 + ": " + type);
+    }
+    return (capacity << TYPE_BITS) | typeByte;
+  }
+
+  /**
+   * Gets the type of a message from its packed length.
+   */
+  static MessageType getType(long packed) {
+    return MessageType.getFromTypeByte((byte) (packed & ((1 << TYPE_BITS) - 1)));
+  }
+
+  /**
+   * Gets the length of a message from its packed length.
+   */
+  static int getCapacity(long packed) {
+    long capacity = packed >>> TYPE_BITS;
+    if (capacity > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("capacity > Integer.MAX_VALUE: " + capacity);
+    }
+    return (int) capacity;
+  }
+
+  private static int getVarintLength(long value) {
+    int length = 1;
+    while ((value >>>= 7) != 0) {
+      length++;
+    }
+    return length;
+  }
+
+  /**
+   * Writes a varint into the buffer.
+   *
+   * @return  the number of bytes written
+   */
+  static int putVarint(byte[] buffer, int offset, long value) {
+    int pos = offset;
+    while ((value & ~0x7FL) != 0) {
+      buffer[pos++] = (byte) ((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    buffer[pos++] = (byte) value;
+    return pos - offset;
+  }
+
+  /**
+   * Reads a varint from the buffer, advancing its position.
+   *
+   * @throws  EOFException  when the buffer ends before the varint
+   */
+  static long getVarint(ByteBuffer buffer) throws EOFException {
+    long value = 0;
+    for (int i = 0; i < MAX_VARINT_LENGTH; i++) {
+      if (!buffer.hasRemaining()) {
+        throw new EOFException(MultiMessage.END_OF_MESSAGES);
+      }
+      byte b = buffer.get();
+      value |= (long) (b & 0x7F) << (7 * i);
+      if (b >= 0) {
+        return value;
+      }
+    }
+    throw new IllegalArgumentException("Varint too long");
+  }
+
+  private static int getStringVarintLength(long value) {
+    int length = 1;
+    while ((value >>>= 5) != 0) {
+      length++;
+    }
+    return length;
+  }
+
+  private static int appendVarint(Appendable out, long value) throws IOException {
+    int length = 1;
+    while ((value & ~0x1FL) != 0) {
+      out.append(CONTINUATION_DIGITS.charAt((int) (value & 0x1F)));
+      value >>>= 5;
+      length++;
+    }
+    out.append(FINAL_DIGITS.charAt((int) value));
+    return length;
+  }
+
+  /**
+   * Reads a string varint from the buffer, advancing its position.
+   *
+   * @throws  StringIndexOutOfBoundsException  when the buffer ends before the varint
+   */
+  static long getVarint(CharBuffer buffer) {
+    long value = 0;
+    for (int i = 0; i < MAX_STRING_VARINT_LENGTH; i++) {
+      if (!buffer.hasRemaining()) {
+        throw new StringIndexOutOfBoundsException("pos >= end: " + buffer.position() + " >= " + buffer.limit());
+      }
+      char ch = buffer.get();
+      int digit = FINAL_DIGITS.indexOf(ch);
+      if (digit != -1) {
+        return value | ((long) digit << (5 * i));
+      }
+      digit = CONTINUATION_DIGITS.indexOf(ch);
+      if (digit == -1) {
+        throw new IllegalArgumentException("Invalid varint character: " + ch);
+      }
+      value |= (long) digit << (5 * i);
+    }
+    throw new IllegalArgumentException("Varint too long");
+  }
+}
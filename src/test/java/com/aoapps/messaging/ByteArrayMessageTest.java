@@ -1,6 +1,6 @@
 /*
  * ao-messaging-api - Asynchronous bidirectional messaging over various protocols API.
- * Copyright (C) 2014, 2015, 2016, 2017, 2019, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2014, 2015, 2016, 2017, 2019, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -23,10 +23,16 @@
 
 package com.aoapps.messaging;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
 
+import com.aoapps.hodgepodge.util.Base64Coder;
 import com.aoapps.lang.io.IoUtils;
 import com.aoapps.tempfiles.TempFileContext;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.security.SecureRandom;
 import java.util.Random;
@@ -62,4 +68,50 @@ public class ByteArrayMessageTest {
       }
     }
   }
+
+  /**
+   * The string encoding must remain wire-compatible with {@link Base64Coder}, which was used before.
+   */
+  @Test
+  public void testBase64CompatibleWithBase64Coder() throws IOException {
+    for (int i = 0; i < 100; i++) {
+      byte[] bytes = new byte[fastRandom.nextInt(10000)];
+      fastRandom.nextBytes(bytes);
+      String expected = new String(Base64Coder.encode(bytes));
+      ByteArrayMessage message = new ByteArrayMessage(bytes);
+      assertEquals(expected, message.encodeAsString());
+      assertArrayEquals(bytes, ByteArrayMessage.decode(expected).getMessage().array);
+      assertArrayEquals(
+          Base64Coder.decode(expected),
+          ByteArrayMessage.decode(message.encodeAsString()).getMessage().array
+      );
+    }
+  }
+
+  @Test
+  public void testEncodeAsStringCached() throws IOException {
+    byte[] bytes = new byte[fastRandom.nextInt(10000)];
+    fastRandom.nextBytes(bytes);
+    ByteArrayMessage message = new ByteArrayMessage(bytes);
+    String encoded = message.encodeAsString();
+    assertSame(encoded, message.encodeAsString());
+    StringBuilder sb = new StringBuilder();
+    message.appendTo(sb);
+    assertEquals(encoded, sb.toString());
+  }
+
+  @Test
+  public void testStreamDecode() throws IOException {
+    byte[] bytes = new byte[fastRandom.nextInt(100000)];
+    fastRandom.nextBytes(bytes);
+    Message decoded = MessageType.BYTE_ARRAY.decode(new ByteArrayInputStream(bytes), bytes.length, () -> null);
+    assertArrayEquals(bytes, ((ByteArrayMessage) decoded).getMessage().array);
+    // A forged size is not allocated before its bytes arrive
+    try {
+      MessageType.BYTE_ARRAY.decode(new ByteArrayInputStream(bytes), Integer.MAX_VALUE - 8, () -> null);
+      fail("Decoded past end of stream");
+    } catch (EOFException e) {
+      // Expected
+    }
+  }
 }
@@ -0,0 +1,378 @@
+/*
+ * ao-messaging-api - Asynchronous bidirectional messaging over various protocols API.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-messaging-api.
+ *
+ * ao-messaging-api is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-messaging-api is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-messaging-api.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoapps.messaging;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.aoapps.tempfiles.TempFileContext;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import org.junit.Test;
+
+/**
+ * Tests {@link CompressedMessage}.
+ */
+public class CompressedMessageTest {
+
+  private static String repetitive(int length) {
+    StringBuilder sb = new StringBuilder(length);
+    for (int i = 0; sb.length() < length; i++) {
+      sb.append("{\"id\":").append(i).append(",\"name\":\"value\"},");
+    }
+    sb.setLength(length);
+    return sb.toString();
+  }
+
+  private static void assertRoundTrip(CompressedMessage message, TempFileContext tempFileContext) throws IOException {
+    ByteArray encoded = message.encodeAsByteArray();
+    assertEquals(encoded.size, message.getEncodedByteArrayLength());
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    message.writeTo(bout);
+    assertArrayEquals(Arrays.copyOfRange(encoded.array, encoded.offset, encoded.offset + encoded.size),
+        bout.toByteArray());
+    try (Message decoded = MessageType.COMPRESSED.decode(encoded, () -> tempFileContext)) {
+      assertEquals(message, decoded);
+    }
+    try (Message decoded = MessageType.COMPRESSED.decode(
+        new ByteArrayInputStream(encoded.array, encoded.offset, encoded.size), encoded.size, () -> tempFileContext)) {
+      assertEquals(message, decoded);
+    }
+
+    String str = message.encodeAsString();
+    assertEquals(str.length(), message.getEncodedStringLength());
+    try (Message decoded = MessageType.COMPRESSED.decode(str, () -> tempFileContext)) {
+      assertEquals(message, decoded);
+    }
+  }
+
+  @Test
+  public void testStringRoundTrip() throws IOException {
+    try (TempFileContext tempFileContext = new TempFileContext()) {
+      for (int length : new int[] {0, 10, CompressedMessage.DEFAULT_THRESHOLD, 100000}) {
+        assertRoundTrip(new CompressedMessage(new StringMessage(repetitive(length))), tempFileContext);
+      }
+    }
+  }
+
+  @Test
+  public void testByteArrayRoundTrip() throws IOException {
+    try (TempFileContext tempFileContext = new TempFileContext()) {
+      byte[] bytes = repetitive(50000).getBytes(StandardCharsets.UTF_8);
+      assertRoundTrip(new CompressedMessage(new ByteArrayMessage(bytes)), tempFileContext);
+      assertRoundTrip(new CompressedMessage(new ByteArrayMessage(bytes), 0, Deflater.BEST_SPEED),
+          tempFileContext);
+    }
+  }
+
+  @Test
+  public void testMultiRoundTrip() throws IOException {
+    try (TempFileContext tempFileContext = new TempFileContext()) {
+      MultiMessage multi = new MultiMessage(Arrays.asList(
+          new StringMessage(repetitive(5000)),
+          new ByteArrayMessage(new byte[3000]),
+          new CompressedMessage(new StringMessage(repetitive(2000)))
+      ));
+      assertRoundTrip(new CompressedMessage(multi), tempFileContext);
+      // Nested in a multi-message
+      MultiMessage outer = new MultiMessage(Collections.singletonList(new CompressedMessage(multi)));
+      try (MultiMessage decoded = MultiMessage.decode(outer.encodeAsByteArray(), () -> tempFileContext)) {
+        assertEquals(outer, decoded);
+      }
+      try (MultiMessage decoded = MultiMessage.decode(outer.encodeAsString(), () -> tempFileContext)) {
+        assertEquals(outer, decoded);
+      }
+    }
+  }
+
+  @Test
+  public void testCompresses() throws IOException {
+    StringMessage child = new StringMessage(repetitive(100000));
+    CompressedMessage message = new CompressedMessage(child);
+    assertTrue(message.getEncodedByteArrayLength() < child.getEncodedByteArrayLength() / 10);
+    assertTrue(message.getEncodedStringLength() < child.getEncodedStringLength() / 5);
+  }
+
+  @Test
+  public void testStoredBelowThreshold() throws IOException {
+    StringMessage child = new StringMessage(repetitive(100));
+    CompressedMessage message = new CompressedMessage(child);
+    assertEquals(2 + child.getEncodedByteArrayLength(), message.getEncodedByteArrayLength());
+    assertEquals("0s" + child.encodeAsString(), message.encodeAsString());
+  }
+
+  @Test
+  public void testStoredWhenIncompressible() throws IOException {
+    byte[] random = new byte[10000];
+    new Random(0).nextBytes(random);
+    CompressedMessage message = new CompressedMessage(new ByteArrayMessage(random), 0);
+    assertEquals(2 + random.length, message.getEncodedByteArrayLength());
+  }
+
+  @Test
+  public void testEncodedByteArrayLengthBound() throws IOException {
+    byte[] random = new byte[1000000];
+    new Random(0).nextBytes(random);
+    try (TempFileContext tempFileContext = new TempFileContext()) {
+      for (int length : new int[] {0, 10, 100000, random.length}) {
+        byte[] content = Arrays.copyOf(random, length);
+        File file = tempFileContext.createTempFile("CompressedMessageTest_").getFile();
+        Files.write(file.toPath(), content);
+        for (CompressedMessage message : Arrays.asList(
+            new CompressedMessage(new FileMessage(file), 0),
+            new CompressedMessage(new ByteArrayMessage(content), 0)
+        )) {
+          long bound = message.getEncodedByteArrayLengthBound();
+          assertTrue(bound >= message.getEncodedByteArrayLength());
+          // Exact once compressed
+          assertEquals(message.getEncodedByteArrayLength(), message.getEncodedByteArrayLengthBound());
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testFileRoundTrip() throws IOException {
+    try (TempFileContext tempFileContext = new TempFileContext()) {
+      for (int length : new int[] {0, 10, 100000}) {
+        File file = tempFileContext.createTempFile("CompressedMessageTest_").getFile();
+        Files.write(file.toPath(), repetitive(length).getBytes(StandardCharsets.UTF_8));
+        CompressedMessage message = new CompressedMessage(new FileMessage(file));
+        if (length >= CompressedMessage.DEFAULT_THRESHOLD) {
+          assertTrue(message.getEncodedByteArrayLength() < length / 10);
+        }
+        assertRoundTrip(message, tempFileContext);
+        MultiMessage multi = new MultiMessage(Collections.singletonList(message));
+        try (MultiMessage decoded = MultiMessage.decode(multi.encodeAsByteArray(), () -> tempFileContext)) {
+          assertEquals(multi, decoded);
+        }
+        try (MultiMessage decoded = MultiMessage.decode(multi.encodeAsString(), () -> tempFileContext)) {
+          assertEquals(multi, decoded);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testTruncatedRejected() throws IOException {
+    ByteArray encoded = new CompressedMessage(new StringMessage(repetitive(10000))).encodeAsByteArray();
+    try {
+      MessageType.COMPRESSED.decode(new ByteArray(encoded.array, encoded.offset, encoded.size - 1), () -> null);
+      fail("Truncated message accepted");
+    } catch (IOException e) {
+      // Expected
+    }
+  }
+
+  /**
+   * Builds the binary encoding of a deflated message with the given uncompressed length in its header, regardless of
+   * the actual length of {@code content}.
+   */
+  private static ByteArray forge(MessageType type, long length, byte[] content) throws IOException {
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    bout.write(1);
+    bout.write(type.getTypeByte());
+    bout.write(ByteBuffer.allocate(Long.BYTES).putLong(length).array());
+    try (DeflaterOutputStream deflaterOut = new DeflaterOutputStream(bout)) {
+      deflaterOut.write(content);
+    }
+    return new ByteArray(bout.toByteArray());
+  }
+
+  /**
+   * Decodes a forged message in each binary and string form, expecting each to be rejected.
+   */
+  private static void assertRejected(ByteArray forged, TempFileContext tempFileContext) throws IOException {
+    try {
+      MessageType.COMPRESSED.decode(forged, () -> tempFileContext).close();
+      fail("Forged message accepted");
+    } catch (IOException e) {
+      // Expected
+    }
+    try {
+      MessageType.COMPRESSED.decode(new ByteArrayInputStream(forged.array, forged.offset, forged.size), forged.size,
+          () -> tempFileContext).close();
+      fail("Forged message accepted from stream");
+    } catch (IOException e) {
+      // Expected
+    }
+    String str = "1" + MessageType.getFromTypeByte(forged.array[forged.offset + 1]).getTypeChar()
+        + Base64.getEncoder().encodeToString(Arrays.copyOfRange(forged.array, forged.offset + 2, forged.size));
+    try {
+      MessageType.COMPRESSED.decode(str, () -> tempFileContext).close();
+      fail("Forged message accepted from string");
+    } catch (IOException e) {
+      // Expected
+    }
+  }
+
+  @Test
+  public void testForgedLengthRejected() throws IOException {
+    try (TempFileContext tempFileContext = new TempFileContext()) {
+      for (MessageType type : new MessageType[] {MessageType.STRING, MessageType.BYTE_ARRAY, MessageType.FILE}) {
+        // A tiny frame claiming nearly 2 GiB, and one claiming more than can fit in an array
+        assertRejected(forge(type, Integer.MAX_VALUE - 8, new byte[0]), tempFileContext);
+        assertRejected(forge(type, Long.MAX_VALUE, new byte[0]), tempFileContext);
+        assertRejected(forge(type, -1, new byte[0]), tempFileContext);
+        // Beyond the maximum ratio for its compressed length
+        byte[] zeros = new byte[100000];
+        ByteArray honest = forge(type, zeros.length, zeros);
+        assertRejected(forge(type, (long) (honest.size - 10) * CompressedMessage.MAX_DEFLATE_RATIO + 1, zeros),
+            tempFileContext);
+        // Within the ratio, but inflates to less or more than claimed
+        assertRejected(forge(type, zeros.length + 1, zeros), tempFileContext);
+        assertRejected(forge(type, zeros.length - 1, zeros), tempFileContext);
+        try (Message decoded = MessageType.COMPRESSED.decode(honest, () -> tempFileContext)) {
+          assertEquals(type, ((CompressedMessage) decoded).getMessage().getMessageType());
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testMaximumRatioAccepted() throws IOException {
+    byte[] zeros = new byte[1 << 20];
+    CompressedMessage message = new CompressedMessage(new ByteArrayMessage(zeros), 0, Deflater.BEST_COMPRESSION);
+    ByteArray encoded = message.encodeAsByteArray();
+    assertTrue(encoded.size < zeros.length / 900);
+    try (Message decoded = MessageType.COMPRESSED.decode(encoded, () -> null)) {
+      assertEquals(message, decoded);
+    }
+  }
+
+  /**
+   * Counts the times the content of the file is read for encoding.
+   */
+  private static final class CountingFileMessage extends FileMessage {
+
+    private final AtomicInteger reads = new AtomicInteger();
+
+    private CountingFileMessage(File file) {
+      super(file);
+    }
+
+    @Override
+    void writeTo(OutputStream out, long length) throws IOException {
+      reads.incrementAndGet();
+      super.writeTo(out, length);
+    }
+  }
+
+  @Test
+  public void testFileCompressedOnce() throws IOException {
+    try (TempFileContext tempFileContext = new TempFileContext()) {
+      File file = tempFileContext.createTempFile("CompressedMessageTest_").getFile();
+      Files.write(file.toPath(), repetitive(100000).getBytes(StandardCharsets.UTF_8));
+      CountingFileMessage fileMessage = new CountingFileMessage(file);
+      CompressedMessage message = new CompressedMessage(fileMessage);
+      // Not compressed until needed
+      assertEquals(0, fileMessage.reads.get());
+      long length = message.getEncodedByteArrayLength();
+      assertEquals(1, fileMessage.reads.get());
+      assertEquals(length, message.getEncodedByteArrayLength());
+      message.getEncodedStringLength();
+      ByteArray encoded = message.encodeAsByteArray();
+      assertEquals(length, encoded.size);
+      ByteArrayOutputStream bout = new ByteArrayOutputStream();
+      message.writeTo(bout);
+      assertArrayEquals(Arrays.copyOfRange(encoded.array, encoded.offset, encoded.offset + encoded.size),
+          bout.toByteArray());
+      message.encodeAsString();
+      MultiMessage multi = new MultiMessage(Arrays.asList(message, message));
+      multi.encodeAsByteArray();
+      multi.encodeAsString();
+      assertEquals(1, fileMessage.reads.get());
+      try (Message decoded = MessageType.COMPRESSED.decode(encoded, () -> tempFileContext)) {
+        assertEquals(message, decoded);
+      }
+      // Compressed again once changed
+      Files.write(file.toPath(), repetitive(50000).getBytes(StandardCharsets.UTF_8));
+      assertTrue(file.setLastModified(file.lastModified() + 2000));
+      assertTrue(message.getEncodedByteArrayLength() < length);
+      assertEquals(2, fileMessage.reads.get());
+      message.close();
+      // Still encodes after closed, but without spooling
+      assertEquals(message.encodeAsByteArray().size, message.getEncodedByteArrayLength());
+    }
+  }
+
+  @Test
+  public void testSpoolKeptWhileWriting() throws IOException {
+    File dir = Files.createTempDirectory("CompressedMessageTest_").toFile();
+    try (
+        TempFileContext tempFileContext = new TempFileContext();
+        TempFileContext spoolContext = new TempFileContext(dir)
+        ) {
+      File file = tempFileContext.createTempFile("CompressedMessageTest_").getFile();
+      Files.write(file.toPath(), repetitive(100000).getBytes(StandardCharsets.UTF_8));
+      CompressedMessage message = new CompressedMessage(
+          new FileMessage(file),
+          CompressedMessage.DEFAULT_THRESHOLD,
+          Deflater.DEFAULT_COMPRESSION,
+          () -> spoolContext
+      );
+      long length = message.getEncodedByteArrayLength();
+      // Spooled in the temporary file context
+      assertEquals(1, dir.list().length);
+      // Closed while the spool is being copied
+      AtomicInteger spools = new AtomicInteger(-1);
+      ByteArrayOutputStream bout = new ByteArrayOutputStream() {
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+          if (spools.get() == -1 && size() >= 2) {
+            try {
+              message.close();
+            } catch (IOException e) {
+              throw new UncheckedIOException(e);
+            }
+            spools.set(dir.list().length);
+          }
+          super.write(b, off, len);
+        }
+      };
+      message.writeTo(bout);
+      assertEquals(1, spools.get());
+      assertEquals(length, bout.size());
+      assertEquals(0, dir.list().length);
+    } finally {
+      Files.delete(dir.toPath());
+    }
+  }
+}
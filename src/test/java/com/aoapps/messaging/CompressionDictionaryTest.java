@@ -0,0 +1,167 @@
+/*
+ * ao-messaging-api - Asynchronous bidirectional messaging over various protocols API.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-messaging-api.
+ *
+ * ao-messaging-api is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-messaging-api is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-messaging-api.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoapps.messaging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Tests {@link CompressionDictionary}, {@link DictionaryCompressor}, and {@link DictionaryDecompressor}.
+ */
+public class CompressionDictionaryTest {
+
+  private static final String[] STATUSES = {"active", "idle", "offline", "busy"};
+
+  /**
+   * Small messages with nearly identical structure.
+   */
+  private static List<StringMessage> corpus(Random random, int count) {
+    List<StringMessage> messages = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      messages.add(new StringMessage(
+          "{\"type\":\"presence\",\"userId\":" + random.nextInt(1000000)
+              + ",\"status\":\"" + STATUSES[random.nextInt(STATUSES.length)]
+              + "\",\"timestamp\":" + (1700000000000L + random.nextInt(1000000000))
+              + ",\"room\":\"lobby-" + random.nextInt(100) + "\"}"
+      ));
+    }
+    return messages;
+  }
+
+  private static long compressedSize(
+      CompressionDictionary dictionary,
+      boolean rollingWindow,
+      List<StringMessage> messages
+  ) throws IOException {
+    long total = 0;
+    try (
+        DictionaryCompressor compressor = dictionary.newCompressor(rollingWindow);
+        DictionaryDecompressor decompressor = dictionary.newDecompressor(rollingWindow)
+        ) {
+      for (StringMessage message : messages) {
+        ByteArray encoded = message.encodeAsByteArray();
+        ByteArray compressed = compressor.compress(encoded);
+        total += compressed.size;
+        assertEquals(encoded, decompressor.decompress(compressed, encoded.size));
+      }
+    }
+    return total;
+  }
+
+  @Test
+  public void testCompressionRatio() throws IOException {
+    Random random = new Random(0);
+    CompressionDictionary dictionary = CompressionDictionary.build(1, corpus(random, 500));
+    List<StringMessage> messages = corpus(random, 1000);
+    long raw = 0;
+    long perMessage = 0;
+    for (StringMessage message : messages) {
+      raw += message.getEncodedByteArrayLength();
+      perMessage += new CompressedMessage(message, 0).getEncodedByteArrayLength();
+    }
+    long withDictionary = compressedSize(dictionary, false, messages);
+    long rolling = compressedSize(dictionary, true, messages);
+    String sizes = "raw = " + raw
+        + ", per-message = " + perMessage
+        + ", dictionary = " + withDictionary
+        + ", rolling window = " + rolling;
+    assertTrue(sizes, perMessage > raw * 3 / 4);
+    assertTrue(sizes, withDictionary < raw / 2);
+    assertTrue(sizes, rolling < raw / 2);
+  }
+
+  @Test
+  public void testEmptyAndLarge() throws IOException {
+    CompressionDictionary dictionary = new CompressionDictionary(3, new byte[] {1, 2, 3});
+    byte[] large = new byte[100000];
+    new Random(0).nextBytes(large);
+    for (boolean rollingWindow : new boolean[] {false, true}) {
+      try (
+          DictionaryCompressor compressor = dictionary.newCompressor(rollingWindow);
+          DictionaryDecompressor decompressor = dictionary.newDecompressor(rollingWindow)
+          ) {
+        ByteArray[] encodings = {ByteArray.EMPTY_BYTE_ARRAY, new ByteArray(large), ByteArray.EMPTY_BYTE_ARRAY};
+        for (ByteArray encoded : encodings) {
+          assertEquals(encoded, decompressor.decompress(compressor.compress(encoded), large.length));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testMaxSize() throws IOException {
+    CompressionDictionary dictionary = new CompressionDictionary(1, new byte[0]);
+    try (
+        DictionaryCompressor compressor = dictionary.newCompressor(false);
+        DictionaryDecompressor decompressor = dictionary.newDecompressor(false)
+        ) {
+      ByteArray compressed = compressor.compress(new ByteArray(new byte[10000]));
+      assertEquals(10000, decompressor.decompress(compressed, 10000).size);
+      try {
+        decompressor.decompress(compressed, 9999);
+        fail("maxSize not enforced");
+      } catch (IOException e) {
+        // Expected
+      }
+    }
+  }
+
+  @Test
+  public void testVersionMismatch() throws IOException {
+    CompressionDictionary dictionary1 = new CompressionDictionary(1, new byte[] {1});
+    CompressionDictionary dictionary2 = new CompressionDictionary(2, new byte[] {1});
+    try (
+        DictionaryCompressor compressor = dictionary1.newCompressor(false);
+        DictionaryDecompressor decompressor = dictionary2.newDecompressor(false)
+        ) {
+      decompressor.decompress(compressor.compress(new ByteArray(new byte[] {1, 2, 3})), 100);
+      fail("Version mismatch not detected");
+    } catch (IOException e) {
+      // Expected
+    }
+  }
+
+  @Test
+  public void testNegotiate() {
+    CompressionDictionary dictionary1 = new CompressionDictionary(1, new byte[] {1});
+    CompressionDictionary dictionary2 = new CompressionDictionary(2, new byte[] {2});
+    CompressionDictionary dictionary3 = new CompressionDictionary(3, new byte[] {3});
+    List<CompressionDictionary> supported = Arrays.asList(dictionary1, dictionary3, dictionary2);
+    assertSame(dictionary3, CompressionDictionary.negotiate(supported, Arrays.asList(1, 2, 3, 4)));
+    assertSame(dictionary2, CompressionDictionary.negotiate(supported, Arrays.asList(2, 1)));
+    assertNull(CompressionDictionary.negotiate(supported, Collections.singletonList(4)));
+    assertNull(CompressionDictionary.negotiate(Collections.emptyList(), Arrays.asList(1, 2)));
+  }
+}
@@ -0,0 +1,199 @@
+/*
+ * ao-messaging-api - Asynchronous bidirectional messaging over various protocols API.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-messaging-api.
+ *
+ * ao-messaging-api is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-messaging-api is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-messaging-api.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoapps.messaging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.aoapps.lang.io.IoUtils;
+import com.aoapps.tempfiles.TempFileContext;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Test;
+
+/**
+ * Tests {@link FileMessage}.
+ */
+public class FileMessageTest {
+
+  /**
+   * A fast pseudo-random number generator for non-cryptographic purposes.
+   */
+  private static final Random fastRandom = new Random(IoUtils.bufferToLong(new SecureRandom().generateSeed(Long.BYTES)));
+
+  private static File createFile(TempFileContext tempFileContext, byte[] content) throws IOException {
+    File file = tempFileContext.createTempFile("FileMessageTest_").getFile();
+    Files.write(file.toPath(), content);
+    return file;
+  }
+
+  @Test
+  public void testEqualsAndHashCode() throws IOException {
+    try (TempFileContext tempFileContext = new TempFileContext()) {
+      for (int i = 0; i < 20; i++) {
+        // Sizes on both sides of the memory-mapped threshold
+        byte[] content = new byte[fastRandom.nextInt(200000)];
+        fastRandom.nextBytes(content);
+        FileMessage message1 = new FileMessage(createFile(tempFileContext, content));
+        FileMessage message2 = new FileMessage(createFile(tempFileContext, content));
+        assertEquals(message1, message2);
+        assertEquals(Arrays.hashCode(content), message1.hashCode());
+        assertEquals(message1.hashCode(), message2.hashCode());
+        // Cached
+        assertEquals(message1.hashCode(), message2.hashCode());
+        assertEquals(message1, new FileMessage(message1.getMessage()));
+        if (content.length > 0) {
+          byte[] modified = content.clone();
+          modified[fastRandom.nextInt(modified.length)]++;
+          FileMessage message3 = new FileMessage(createFile(tempFileContext, modified));
+          assertNotEquals(message1, message3);
+          // Modifying the file invalidates its cached hash code
+          Path path2 = message2.getMessage().toPath();
+          FileTime lastModifiedTime = Files.getLastModifiedTime(path2);
+          Files.write(path2, modified);
+          // Ensure a different modified time even on file systems with coarse timestamps
+          Files.setLastModifiedTime(path2, FileTime.fromMillis(lastModifiedTime.toMillis() + 1000));
+          assertEquals(message3.hashCode(), message2.hashCode());
+          assertEquals(message3, message2);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testLargeEqualsAndHashCode() throws IOException {
+    try (TempFileContext tempFileContext = new TempFileContext()) {
+      // Above the mapped size limit, so read in chunks, ending in a partial chunk
+      byte[] content = new byte[(65 << 20) + 12345];
+      fastRandom.nextBytes(content);
+      FileMessage message1 = new FileMessage(createFile(tempFileContext, content));
+      FileMessage message2 = new FileMessage(createFile(tempFileContext, content));
+      assertEquals(message1, message2);
+      assertEquals(Arrays.hashCode(content), message1.hashCode());
+      assertEquals(message1.hashCode(), message2.hashCode());
+      content[content.length - 1]++;
+      assertNotEquals(message1, new FileMessage(createFile(tempFileContext, content)));
+    }
+  }
+
+  @Test
+  public void testEncodeAsByteBuffer() throws IOException {
+    try (TempFileContext tempFileContext = new TempFileContext()) {
+      for (int size : new int[]{0, 1000, 200000}) {
+        byte[] content = new byte[size];
+        fastRandom.nextBytes(content);
+        ByteBuffer expected = ByteBuffer.wrap(content);
+        // Mapped once large enough
+        ByteBuffer buffer = new FileMessage(createFile(tempFileContext, content)).encodeAsByteBuffer();
+        assertEquals(expected, buffer);
+        assertEquals(size >= (64 << 10), buffer.isDirect());
+        // Temporary files are read, so can be deleted while the buffer is in use
+        FileMessage temp = (FileMessage) MessageType.FILE.decode(new ByteArray(content), () -> tempFileContext);
+        assertTrue(temp.isTemp());
+        File file = temp.getMessage();
+        buffer = temp.encodeAsByteBuffer();
+        assertFalse(buffer.isDirect());
+        temp.close();
+        assertFalse(file.exists());
+        assertEquals(expected, buffer);
+      }
+    }
+  }
+
+  @Test
+  public void testAsyncEncodeAndDecode() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try (TempFileContext tempFileContext = new TempFileContext()) {
+      for (int i = 0; i < 20; i++) {
+        byte[] content = new byte[fastRandom.nextInt(200000)];
+        fastRandom.nextBytes(content);
+        FileMessage message = new FileMessage(createFile(tempFileContext, content));
+        assertEquals(message.encodeAsByteArray(), message.encodeAsByteArrayAsync(executor).get());
+        String str = message.encodeAsStringAsync(executor).get();
+        assertEquals(message.encodeAsString(), str);
+        try (Message decoded = MessageType.FILE.decodeAsync(
+            message.encodeAsByteArray(), () -> tempFileContext, executor).get()) {
+          assertEquals(message, decoded);
+        }
+        try (Message decoded = MessageType.FILE.decodeAsync(str, () -> tempFileContext, executor).get()) {
+          assertEquals(message, decoded);
+        }
+      }
+      // Failures complete the future exceptionally
+      File missing = tempFileContext.createTempFile("FileMessageTest_").getFile();
+      Files.delete(missing.toPath());
+      try {
+        new FileMessage(missing).encodeAsByteArrayAsync(executor).get();
+        fail("Missing file encoded");
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof IOException);
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testStringEncodeAndDecode() throws IOException {
+    try (TempFileContext tempFileContext = new TempFileContext()) {
+      for (int i = 0; i < 20; i++) {
+        // Sizes on both sides of the chunk size, including exact multiples
+        int len = (i < 4) ? (3 * 1024 * i) : fastRandom.nextInt(20000);
+        byte[] content = new byte[len];
+        fastRandom.nextBytes(content);
+        FileMessage original = new FileMessage(createFile(tempFileContext, content));
+        String encoded = original.encodeAsString();
+        assertEquals(new ByteArrayMessage(content).encodeAsString(), encoded);
+        try (FileMessage decoded = (FileMessage) MessageType.FILE.decode(encoded, () -> tempFileContext)) {
+          assertEquals(original, decoded);
+        }
+      }
+      // Padding is only allowed at the end, even when it falls on a chunk boundary
+      StringBuilder encoded = new StringBuilder();
+      while (encoded.length() < 4096 - 4) {
+        encoded.append("AAAA");
+      }
+      encoded.append("AA==").append("AAAA");
+      try {
+        MessageType.FILE.decode(encoded.toString(), () -> tempFileContext).close();
+        fail("Padding before the end must be rejected");
+      } catch (IllegalArgumentException e) {
+        // Expected
+      }
+    }
+  }
+}
@@ -0,0 +1,633 @@
+/*
+ * ao-messaging-api - Asynchronous bidirectional messaging over various protocols API.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-messaging-api.
+ *
+ * ao-messaging-api is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-messaging-api is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-messaging-api.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoapps.messaging;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.aoapps.lang.io.AoByteArrayOutputStream;
+import com.aoapps.lang.io.IoUtils;
+import com.aoapps.lang.io.function.IOSupplier;
+import com.aoapps.tempfiles.TempFileContext;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Test;
+
+/**
+ * Tests {@link MultiMessage}.
+ */
+public class MultiMessageTest {
+
+  /**
+   * A fast pseudo-random number generator for non-cryptographic purposes.
+   */
+  private static final Random fastRandom = new Random(IoUtils.bufferToLong(new SecureRandom().generateSeed(Long.BYTES)));
+
+  private static byte[] randomBytes(int maxLen) {
+    byte[] bytes = new byte[fastRandom.nextInt(maxLen)];
+    fastRandom.nextBytes(bytes);
+    return bytes;
+  }
+
+  /**
+   * Creates a random multi-message, possibly with nested multi-messages, writing any files into the temp file context.
+   */
+  private static MultiMessage randomMultiMessage(TempFileContext tempFileContext, int depth) throws IOException {
+    int size = fastRandom.nextInt(10);
+    List<Message> messages = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      switch (fastRandom.nextInt(depth < 2 ? 4 : 3)) {
+        case 0:
+          messages.add(new ByteArrayMessage(randomBytes(1000)));
+          break;
+        case 1:
+          File file = tempFileContext.createTempFile("MultiMessageTest_").getFile();
+          Files.write(file.toPath(), randomBytes(10000));
+          messages.add(new FileMessage(file));
+          break;
+        case 2:
+          messages.add(new StringMessage(Arrays.toString(randomBytes(100))));
+          break;
+        default:
+          messages.add(randomMultiMessage(tempFileContext, depth + 1));
+      }
+    }
+    return new MultiMessage(messages);
+  }
+
+  private static byte[] toByteArray(ByteArray byteArray) {
+    return Arrays.copyOfRange(byteArray.array, byteArray.offset, byteArray.offset + byteArray.size);
+  }
+
+  /**
+   * Encodes the {@link WireFormat#V1} binary format independently of the encoders under test, directly from the
+   * content of each message, as the original {@code DataOutputStream} implementation did.
+   */
+  private static byte[] encodeV1(MultiMessage multi) throws IOException {
+    Collection<? extends Message> messages = multi.getMessages();
+    if (messages.isEmpty()) {
+      return new byte[0];
+    }
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bout)) {
+      out.writeInt(messages.size());
+      for (Message message : messages) {
+        byte[] bytes;
+        if (message instanceof ByteArrayMessage) {
+          bytes = toByteArray(((ByteArrayMessage) message).getMessage());
+        } else if (message instanceof FileMessage) {
+          bytes = Files.readAllBytes(((FileMessage) message).getMessage().toPath());
+        } else if (message instanceof StringMessage) {
+          bytes = ((StringMessage) message).getMessage().getBytes(StandardCharsets.UTF_8);
+        } else {
+          bytes = encodeV1((MultiMessage) message);
+        }
+        out.writeByte(message.getMessageType().getTypeByte());
+        out.writeInt(bytes.length);
+        out.write(bytes);
+      }
+    }
+    return bout.toByteArray();
+  }
+
+  @Test
+  public void testWriteToMatchesV1Format() throws IOException {
+    try (TempFileContext tempFileContext = new TempFileContext()) {
+      for (int i = 0; i < 100; i++) {
+        MultiMessage original = randomMultiMessage(tempFileContext, 0);
+        byte[] expected = encodeV1(original);
+        AoByteArrayOutputStream bout = new AoByteArrayOutputStream();
+        original.writeTo(bout);
+        assertArrayEquals(expected, bout.toByteArray());
+        assertArrayEquals(expected, toByteArray(original.encodeAsByteArray()));
+        assertEquals(expected.length, original.getEncodedByteArrayLength());
+      }
+    }
+  }
+
+  @Test
+  public void testWriteToMatchesV1Fixture() throws IOException {
+    MultiMessage multi = new MultiMessage(Arrays.asList(
+        new StringMessage("Hi"),
+        new ByteArrayMessage(new byte[] {1, 2, 3}),
+        new MultiMessage(Arrays.asList(new StringMessage("")))
+    ));
+    byte[] expected = {
+        0, 0, 0, 3,
+        MessageType.STRING.getTypeByte(), 0, 0, 0, 2, 'H', 'i',
+        MessageType.BYTE_ARRAY.getTypeByte(), 0, 0, 0, 3, 1, 2, 3,
+        MessageType.MULTI.getTypeByte(), 0, 0, 0, 9,
+        0, 0, 0, 1,
+        MessageType.STRING.getTypeByte(), 0, 0, 0, 0
+    };
+    AoByteArrayOutputStream bout = new AoByteArrayOutputStream();
+    multi.writeTo(bout);
+    assertArrayEquals(expected, bout.toByteArray());
+    assertArrayEquals(expected, toByteArray(multi.encodeAsByteArray()));
+    bout = new AoByteArrayOutputStream();
+    new MultiMessage(Collections.emptyList()).writeTo(bout);
+    assertEquals(0, bout.size());
+  }
+
+  @Test
+  public void testAppendToMatchesEncodeAsString() throws IOException {
+    try (TempFileContext tempFileContext = new TempFileContext()) {
+      for (int i = 0; i < 100; i++) {
+        MultiMessage original = randomMultiMessage(tempFileContext, 0);
+        StringWriter writer = new StringWriter();
+        original.appendTo(writer);
+        StringBuilder sb = new StringBuilder();
+        original.appendTo(sb);
+        String expected = original.encodeAsString();
+        assertEquals(expected, writer.toString());
+        assertEquals(expected, sb.toString());
+        try (MultiMessage decoded = MultiMessage.decode(writer.toString(), () -> tempFileContext)) {
+          assertEquals(original, decoded);
+        }
+      }
+      // Chunked encoding of a view into the middle of an array
+      byte[] bytes = randomBytes(20000);
+      ByteArrayMessage message = new ByteArrayMessage(ByteBuffer.wrap(bytes, 1, bytes.length / 2).slice());
+      StringBuilder sb = new StringBuilder();
+      message.appendTo(sb);
+      assertEquals(message.encodeAsString(), sb.toString());
+    }
+  }
+
+  @Test
+  public void testLazyDecode() throws IOException {
+    try (TempFileContext tempFileContext = new TempFileContext()) {
+      for (int i = 0; i < 100; i++) {
+        MultiMessage original = randomMultiMessage(tempFileContext, 0);
+        ByteArray encodedBytes = original.encodeAsByteArray();
+        String encodedString = original.encodeAsString();
+        // Encoding and hashing must not spool to temporary files
+        IOSupplier<TempFileContext> noTempFiles = () -> {
+          throw new AssertionError("Temporary file created");
+        };
+        try (MultiMessage lazy = MultiMessage.decodeLazy(encodedBytes, noTempFiles)) {
+          assertSame(encodedBytes, lazy.encodeAsByteArray());
+          assertEquals(encodedString, lazy.encodeAsString());
+          assertEquals(original.hashCode(), lazy.hashCode());
+          assertEquals(lazy, MultiMessage.decodeLazy(new ByteArray(toByteArray(encodedBytes)), noTempFiles));
+        }
+        try (MultiMessage lazy = MultiMessage.decodeLazy(encodedString, noTempFiles)) {
+          assertSame(encodedString, lazy.encodeAsString());
+          assertArrayEquals(toByteArray(encodedBytes), toByteArray(lazy.encodeAsByteArray()));
+          assertEquals(original.hashCode(), lazy.hashCode());
+        }
+        // Accessing the messages decodes them
+        try (
+            MultiMessage lazyBytes = MultiMessage.decodeLazy(encodedBytes, () -> tempFileContext);
+            MultiMessage lazyString = MultiMessage.decodeLazy(encodedString, () -> tempFileContext)
+            ) {
+          assertEquals(original, lazyBytes);
+          assertEquals(original, lazyString);
+          assertEquals(lazyBytes, original);
+          assertEquals(new ArrayList<>(original.getMessages()), new ArrayList<>(lazyBytes.getMessages()));
+          assertSame(encodedBytes, lazyBytes.encodeAsByteArray());
+          assertSame(encodedString, lazyString.encodeAsString());
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testWireFormats() throws IOException {
+    try (TempFileContext tempFileContext = new TempFileContext()) {
+      for (int i = 0; i < 100; i++) {
+        MultiMessage original = randomMultiMessage(tempFileContext, 0);
+        for (WireFormat format : WireFormat.values()) {
+          ByteArray encodedBytes = original.encodeAsByteArray(format);
+          assertEquals(original.getEncodedByteArrayLength(format), encodedBytes.size);
+          AoByteArrayOutputStream bout = new AoByteArrayOutputStream();
+          original.writeTo(bout, format);
+          assertArrayEquals(toByteArray(encodedBytes), bout.toByteArray());
+          String encodedString = original.encodeAsString(format);
+          assertEquals(original.getEncodedStringLength(format), encodedString.length());
+          if (!original.getMessages().isEmpty()) {
+            assertSame(format, WireFormat.getFromEncoding(encodedBytes));
+            assertSame(format, WireFormat.getFromEncoding(encodedString));
+          }
+          try (MultiMessage decoded = MultiMessage.decode(encodedBytes, format, () -> tempFileContext)) {
+            assertEquals(original, decoded);
+          }
+          try (MultiMessage decoded = MultiMessage.decode(encodedString, format, () -> tempFileContext)) {
+            assertEquals(original, decoded);
+          }
+        }
+        assertArrayEquals(
+            toByteArray(original.encodeAsByteArray()),
+            toByteArray(original.encodeAsByteArray(WireFormat.V1))
+        );
+      }
+    }
+  }
+
+  @Test
+  public void testCompactWireFormatIsSmaller() throws IOException {
+    List<Message> messages = new ArrayList<>();
+    for (int i = 0; i < 300; i++) {
+      messages.add(new StringMessage("message " + i));
+    }
+    MultiMessage multiMessage = new MultiMessage(messages);
+    assertTrue(
+        multiMessage.getEncodedByteArrayLength(WireFormat.V2) < multiMessage.getEncodedByteArrayLength(WireFormat.V1)
+    );
+    assertTrue(multiMessage.getEncodedStringLength(WireFormat.V2) < multiMessage.getEncodedStringLength(WireFormat.V1));
+  }
+
+  @Test
+  public void testEncodeAndDecode() throws IOException {
+    try (TempFileContext tempFileContext = new TempFileContext()) {
+      for (int i = 0; i < 100; i++) {
+        MultiMessage original = randomMultiMessage(tempFileContext, 0);
+        try (MultiMessage decoded = MultiMessage.decode(original.encodeAsByteArray(), () -> tempFileContext)) {
+          assertEquals(original, decoded);
+        }
+        try (MultiMessage decoded = MultiMessage.decode(original.encodeAsString(), () -> tempFileContext)) {
+          assertEquals(original, decoded);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testParallelEncode() throws IOException {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try (TempFileContext tempFileContext = new TempFileContext()) {
+      for (int i = 0; i < 100; i++) {
+        MultiMessage original = randomMultiMessage(tempFileContext, 0);
+        for (WireFormat format : WireFormat.values()) {
+          assertArrayEquals(
+              toByteArray(original.encodeAsByteArray(format)),
+              toByteArray(original.encodeAsByteArray(format, executor))
+          );
+        }
+      }
+      // The failure of a message is thrown after all messages complete
+      File missing = tempFileContext.createTempFile("MultiMessageTest_").getFile();
+      Files.delete(missing.toPath());
+      MultiMessage failing = new MultiMessage(Arrays.asList(
+          new StringMessage("Before"),
+          new FileMessage(missing),
+          new StringMessage("After")
+      ));
+      try {
+        failing.encodeAsByteArray(executor);
+        fail("Missing file encoded");
+      } catch (IOException e) {
+        // Expected
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testParallelDecode() throws IOException {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try (TempFileContext tempFileContext = new TempFileContext()) {
+      for (int i = 0; i < 100; i++) {
+        MultiMessage original = randomMultiMessage(tempFileContext, 0);
+        ByteArray encoded = original.encodeAsByteArray();
+        try (MultiMessage decoded = MultiMessage.decode(encoded, () -> tempFileContext, executor)) {
+          assertEquals(original, decoded);
+        }
+        try (MultiMessage decoded = MultiMessage.decode(original.encodeAsString(), () -> tempFileContext, executor)) {
+          assertEquals(original, decoded);
+        }
+      }
+      // Temporary files are deleted on failure
+      File dir = Files.createTempDirectory("MultiMessageTest_").toFile();
+      try (TempFileContext dirContext = new TempFileContext(dir)) {
+        String encoded = new MultiMessage(Arrays.asList(
+            new ByteArrayMessage(new byte[100000]),
+            new ByteArrayMessage(new byte[100000]),
+            new ByteArrayMessage(new byte[6])
+        )).encodeAsString();
+        // Spool the first two as files, then fail on the invalid Base-64 of the last
+        encoded = encoded.replaceFirst("b", "f").replaceFirst("b", "f");
+        encoded = encoded.substring(0, encoded.lastIndexOf(MultiMessage.DELIMITER) + 1) + "!!!!!!!!";
+        try {
+          MultiMessage.decode(encoded, () -> dirContext, executor);
+          fail("Malformed message decoded");
+        } catch (IllegalArgumentException e) {
+          // Expected
+        }
+        assertEquals(0, dir.list().length);
+      } finally {
+        Files.delete(dir.toPath());
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testParallelDecodeExecuteFails() throws IOException {
+    File dir = Files.createTempDirectory("MultiMessageTest_").toFile();
+    try (TempFileContext dirContext = new TempFileContext(dir)) {
+      ByteArray encoded = new MultiMessage(Arrays.asList(
+          new ByteArrayMessage(new byte[100000]),
+          new StringMessage("After")
+      )).encodeAsByteArray();
+      // Decode the first message as a file
+      encoded.array[encoded.offset + Integer.BYTES] = MessageType.FILE.getTypeByte();
+      // An executor failure other than rejection is thrown instead of waiting forever for the task
+      Executor failing = task -> {
+        throw new IllegalStateException("Shut down");
+      };
+      try {
+        MultiMessage.decode(encoded, () -> dirContext, failing);
+        fail("Decoded without executing");
+      } catch (IllegalStateException e) {
+        // Expected
+      }
+      assertEquals(0, dir.list().length);
+    } finally {
+      Files.delete(dir.toPath());
+    }
+  }
+
+  @Test
+  public void testStreamingDecode() throws IOException {
+    try (TempFileContext tempFileContext = new TempFileContext()) {
+      for (int i = 0; i < 100; i++) {
+        MultiMessage original = randomMultiMessage(tempFileContext, 0);
+        byte[] encoded = toByteArray(original.encodeAsByteArray());
+        try (MultiMessage decoded = MultiMessage.decode(new ByteArrayInputStream(encoded), () -> tempFileContext)) {
+          assertEquals(original, decoded);
+        }
+        try (MultiMessage decoded = MultiMessage.decode(
+            Channels.newChannel(new ByteArrayInputStream(encoded)), () -> tempFileContext)) {
+          assertEquals(original, decoded);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testChannelEncodeAndDecode() throws IOException {
+    try (TempFileContext tempFileContext = new TempFileContext()) {
+      for (int i = 0; i < 100; i++) {
+        MultiMessage original = randomMultiMessage(tempFileContext, 0);
+        File encoded = tempFileContext.createTempFile("MultiMessageTest_").getFile();
+        try (FileChannel out = FileChannel.open(encoded.toPath(), StandardOpenOption.WRITE)) {
+          original.writeTo(out);
+        }
+        assertArrayEquals(toByteArray(original.encodeAsByteArray()), Files.readAllBytes(encoded.toPath()));
+        try (
+            FileChannel in = FileChannel.open(encoded.toPath(), StandardOpenOption.READ);
+            MultiMessage decoded = MultiMessage.decode(in, () -> tempFileContext)
+        ) {
+          assertEquals(original, decoded);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testDecodeFromOffset() throws IOException {
+    try (TempFileContext tempFileContext = new TempFileContext()) {
+      for (int i = 0; i < 100; i++) {
+        MultiMessage original = randomMultiMessage(tempFileContext, 0);
+        ByteArray encoded = original.encodeAsByteArray();
+        int offset = fastRandom.nextInt(10);
+        byte[] padded = new byte[offset + encoded.size + fastRandom.nextInt(10)];
+        System.arraycopy(encoded.array, encoded.offset, padded, offset, encoded.size);
+        ByteArray view = new ByteArray(padded, offset, encoded.size);
+        try (MultiMessage decoded = MultiMessage.decode(view, () -> tempFileContext)) {
+          assertEquals(original, decoded);
+          assertArrayEquals(toByteArray(encoded), toByteArray(decoded.encodeAsByteArray()));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testDecodeStringRange() throws IOException {
+    try (TempFileContext tempFileContext = new TempFileContext()) {
+      for (int i = 0; i < 100; i++) {
+        MultiMessage original = randomMultiMessage(tempFileContext, 0);
+        String encoded = original.encodeAsString();
+        // Surround with framing characters that must not be parsed
+        StringBuilder padded = new StringBuilder("1,s").append(encoded).append(",9");
+        int start = 3;
+        int end = start + encoded.length();
+        try (MultiMessage decoded = MultiMessage.decode(padded, start, end, () -> tempFileContext)) {
+          assertEquals(original, decoded);
+          assertEquals(encoded, decoded.encodeAsString());
+        }
+        try (Message decoded = MessageType.MULTI.decode(padded, start, end, () -> tempFileContext)) {
+          assertEquals(original, decoded);
+        }
+        // Each message, including nested multi-messages, decodes from its own range
+        for (Message message : original.getMessages()) {
+          String child = message.encodeAsString();
+          padded.setLength(0);
+          padded.append("1,s").append(child).append(",9");
+          try (Message decoded = message.getMessageType().decode(padded, start, start + child.length(),
+              () -> tempFileContext)) {
+            assertEquals(message, decoded);
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testDecodeNestedStringRange() throws IOException {
+    MultiMessage inner = new MultiMessage(Arrays.asList(new StringMessage("a,b"), new StringMessage("")));
+    MultiMessage outer = new MultiMessage(Arrays.asList(inner, new StringMessage("c"), inner));
+    String encoded = outer.encodeAsString();
+    assertEquals("3,m11,2,s3,a,bs0,s1,cm11,2,s3,a,bs0,", encoded);
+    try (MultiMessage decoded = MultiMessage.decode(encoded, () -> null)) {
+      assertEquals(outer, decoded);
+    }
+    try (MultiMessage decoded = MultiMessage.decode(new StringBuilder(encoded), 0, encoded.length(), () -> null)) {
+      assertEquals(outer, decoded);
+    }
+  }
+
+  /**
+   * Decodes a malformed string encoding both as a whole string and from a range within surrounding characters,
+   * expecting the same type of exception from each.
+   */
+  private static void assertMalformed(String encoded, Class<? extends RuntimeException> expected) throws IOException {
+    try {
+      MultiMessage.decode(encoded, () -> null);
+      fail("Malformed message accepted: " + encoded);
+    } catch (RuntimeException e) {
+      assertEquals(expected, e.getClass());
+    }
+    try {
+      // Characters after the range would complete the message if read
+      MultiMessage.decode(",," + encoded + ",abcdefghij", 2, 2 + encoded.length(), () -> null);
+      fail("Malformed message accepted in range: " + encoded);
+    } catch (RuntimeException e) {
+      assertEquals(expected, e.getClass());
+    }
+    try {
+      // Fails the same as decode, once the malformed message is accessed
+      decodeAll(MultiMessage.decodeLazy(encoded, () -> null));
+      fail("Malformed message accepted lazily: " + encoded);
+    } catch (RuntimeException e) {
+      assertEquals(expected, e.getClass());
+    }
+  }
+
+  private static void decodeAll(MultiMessage multiMessage) {
+    // Indexed, since the iterator of AbstractList reports a failure to get as NoSuchElementException
+    List<? extends Message> messages = (List<? extends Message>) multiMessage.getMessages();
+    for (int i = 0; i < messages.size(); i++) {
+      Message message = messages.get(i);
+      if (message instanceof MultiMessage) {
+        decodeAll((MultiMessage) message);
+      }
+    }
+  }
+
+  @Test
+  public void testDecodeMalformedString() throws IOException {
+    assertMalformed("1", IllegalArgumentException.class);
+    assertMalformed("1,s22", IllegalArgumentException.class);
+    // Too short for the count of messages
+    assertMalformed("1,s5", IllegalArgumentException.class);
+    assertMalformed("3,s0,", StringIndexOutOfBoundsException.class);
+    assertMalformed("x,s1,a", NumberFormatException.class);
+    assertMalformed("1,sx,a", NumberFormatException.class);
+    assertMalformed("-1,", IllegalArgumentException.class);
+    assertMalformed("2,s1,a", StringIndexOutOfBoundsException.class);
+    assertMalformed("1,s5,ab", StringIndexOutOfBoundsException.class);
+    assertMalformed("1,s-1,ab", StringIndexOutOfBoundsException.class);
+    assertMalformed("1,s1,ab", IllegalArgumentException.class);
+    // Overrun within a nested multi-message
+    assertMalformed("1,m6,1,s5,a", StringIndexOutOfBoundsException.class);
+    // Trailing characters within a nested multi-message
+    assertMalformed("1,m7,1,s1,ab", IllegalArgumentException.class);
+  }
+
+  @Test
+  public void testDirectByteBufferEncodeAndDecode() throws IOException {
+    try (TempFileContext tempFileContext = new TempFileContext()) {
+      for (int i = 0; i < 100; i++) {
+        MultiMessage original = randomMultiMessage(tempFileContext, 0);
+        ByteArray encoded = original.encodeAsByteArray();
+        ByteBuffer direct = ByteBuffer.allocateDirect(encoded.size);
+        direct.put(encoded.array, encoded.offset, encoded.size).flip();
+        try (MultiMessage decoded = MultiMessage.decode(direct, () -> tempFileContext)) {
+          assertEquals(original, decoded);
+          AoByteArrayOutputStream bout = new AoByteArrayOutputStream();
+          decoded.writeTo(bout);
+          assertArrayEquals(toByteArray(encoded), bout.toByteArray());
+        }
+      }
+    }
+    // Temporary files are deleted on failure
+    File dir = Files.createTempDirectory("MultiMessageTest_").toFile();
+    try (TempFileContext dirContext = new TempFileContext(dir)) {
+      ByteArray encoded = new MultiMessage(Arrays.asList(
+          new ByteArrayMessage(new byte[100]),
+          new StringMessage("After")
+      )).encodeAsByteArray();
+      encoded.array[encoded.offset + Integer.BYTES] = MessageType.FILE.getTypeByte();
+      // Trailing byte after the last message
+      ByteBuffer direct = ByteBuffer.allocateDirect(encoded.size + 1);
+      direct.put(encoded.array, encoded.offset, encoded.size).put((byte) 0).flip();
+      try {
+        MultiMessage.decode(direct, () -> dirContext);
+        fail("Malformed message decoded");
+      } catch (IllegalArgumentException e) {
+        // Expected
+      }
+      assertEquals(0, dir.list().length);
+    } finally {
+      Files.delete(dir.toPath());
+    }
+  }
+
+  @Test
+  public void testPooledEncode() throws IOException {
+    ByteArrayPool pool = new ByteArrayPool();
+    try (TempFileContext tempFileContext = new TempFileContext()) {
+      for (int i = 0; i < 100; i++) {
+        MultiMessage original = randomMultiMessage(tempFileContext, 0);
+        ByteArray encoded = original.encodeAsByteArray(pool);
+        try {
+          assertArrayEquals(toByteArray(original.encodeAsByteArray()), toByteArray(encoded));
+        } finally {
+          encoded.release();
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testEncodedLengths() throws IOException {
+    try (TempFileContext tempFileContext = new TempFileContext()) {
+      for (int i = 0; i < 100; i++) {
+        MultiMessage original = randomMultiMessage(tempFileContext, 0);
+        assertEquals(original.encodeAsByteArray().size, original.getEncodedByteArrayLength());
+        assertEquals(original.encodeAsString().length(), original.getEncodedStringLength());
+      }
+    }
+  }
+
+  @Test
+  public void testStringMessageEncodedByteArrayLength() {
+    for (int i = 0; i < 1000; i++) {
+      // Any characters, including unpaired surrogates
+      char[] chars = new char[fastRandom.nextInt(100)];
+      for (int j = 0; j < chars.length; j++) {
+        chars[j] = (char) fastRandom.nextInt(fastRandom.nextBoolean() ? 0x100 : 0x10000);
+      }
+      StringMessage message = new StringMessage(new String(chars));
+      assertEquals(message.encodeAsByteArray().size, message.getEncodedByteArrayLength());
+    }
+  }
+}
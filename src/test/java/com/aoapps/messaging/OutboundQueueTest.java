@@ -0,0 +1,352 @@
+/*
+ * ao-messaging-api - Asynchronous bidirectional messaging over various protocols API.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-messaging-api.
+ *
+ * ao-messaging-api is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-messaging-api is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-messaging-api.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoapps.messaging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.Test;
+
+/**
+ * Tests {@link OutboundQueue}.
+ */
+public class OutboundQueueTest {
+
+  private static ByteArrayMessage message(int size) {
+    return new ByteArrayMessage(new byte[size]);
+  }
+
+  @Test
+  public void testLimits() throws IOException {
+    OutboundQueue queue = new OutboundQueue(new OutboundLimits(3, 100), null, null);
+    assertTrue(queue.offer(Arrays.asList(message(40), message(40))));
+    // All-or-nothing
+    assertFalse(queue.offer(Arrays.asList(message(10), message(30))));
+    assertFalse(queue.offer(Arrays.asList(message(1), message(1))));
+    assertEquals(2, queue.size());
+    assertEquals(80, queue.getBytes());
+    assertTrue(queue.offer(Collections.singletonList(message(20))));
+    assertFalse(queue.offer(Collections.singletonList(message(0))));
+    assertEquals(3, queue.clear().size());
+    assertEquals(0, queue.size());
+    assertEquals(0, queue.getBytes());
+  }
+
+  @Test
+  public void testPoll() throws IOException {
+    OutboundQueue queue = new OutboundQueue(OutboundLimits.UNLIMITED, null, null);
+    ByteArrayMessage large = message(1000);
+    queue.offer(Arrays.asList(large, message(10), message(20), message(30)));
+    // The first message is always polled
+    assertEquals(Collections.singletonList(large), queue.poll(10, 100));
+    assertEquals(2, queue.poll(10, 30).size());
+    assertEquals(1, queue.poll(1, Long.MAX_VALUE).size());
+    assertTrue(queue.poll(10, 100).isEmpty());
+  }
+
+  @Test
+  public void testWatermarks() throws IOException {
+    List<String> events = new ArrayList<>();
+    OutboundQueue queue = new OutboundQueue(
+        new OutboundLimits(100, 1000, 10, 500, 2, 100),
+        () -> events.add("high"),
+        () -> events.add("low")
+    );
+    for (int i = 0; i < 10; i++) {
+      queue.offer(Collections.singletonList(message(10)));
+    }
+    assertEquals(Collections.emptyList(), events);
+    queue.offer(Collections.singletonList(message(10)));
+    assertTrue(queue.isAboveHighWatermark());
+    assertEquals(Collections.singletonList("high"), events);
+    queue.offer(Collections.singletonList(message(10)));
+    assertEquals(Collections.singletonList("high"), events);
+    queue.poll(9, Long.MAX_VALUE);
+    assertEquals(Collections.singletonList("high"), events);
+    queue.poll(1, Long.MAX_VALUE);
+    assertFalse(queue.isAboveHighWatermark());
+    assertEquals(Arrays.asList("high", "low"), events);
+    // Bytes alone also reach the high watermark
+    queue.offer(Collections.singletonList(message(600)));
+    assertEquals(Arrays.asList("high", "low", "high"), events);
+    queue.clear();
+    assertEquals(Arrays.asList("high", "low", "high", "low"), events);
+  }
+
+  @Test
+  public void testUnlimitedWatermarks() {
+    // At the maximums, which the queue never exceeds
+    OutboundLimits limits = OutboundLimits.UNLIMITED;
+    assertEquals(limits.getMaxMessages(), limits.getHighWatermarkMessages());
+    assertEquals(limits.getMaxBytes(), limits.getHighWatermarkBytes());
+    assertEquals(0, limits.getLowWatermarkMessages());
+    assertEquals(0, limits.getLowWatermarkBytes());
+  }
+
+  @Test
+  public void testWatermarkCallbacksOutsideLock() throws Exception {
+    List<String> events = new ArrayList<>();
+    OutboundQueue[] queue = new OutboundQueue[1];
+    queue[0] = new OutboundQueue(
+        new OutboundLimits(100, 1000, 1, 500, 0, 0),
+        () -> {
+          events.add("high");
+          try {
+            // Another thread may use the queue while the callback runs
+            assertEquals(2, (int) CompletableFuture.supplyAsync(queue[0]::size).get(10, TimeUnit.SECONDS));
+            // Re-entering the queue crosses the low watermark, which is called once this callback returns
+            assertEquals(2, queue[0].poll(10, Long.MAX_VALUE).size());
+          } catch (IOException | InterruptedException | ExecutionException | TimeoutException e) {
+            throw new AssertionError(e);
+          }
+          events.add("high done");
+        },
+        () -> events.add("low")
+    );
+    queue[0].offer(Arrays.asList(message(1), message(1)));
+    assertEquals(Arrays.asList("high", "high done", "low"), events);
+    assertFalse(queue[0].isAboveHighWatermark());
+    assertEquals(0, queue[0].size());
+  }
+
+  @Test
+  public void testWrittenFutures() throws IOException {
+    OutboundQueue queue = new OutboundQueue(OutboundLimits.UNLIMITED, null, null);
+    CompletableFuture<Void> first = new CompletableFuture<>();
+    CompletableFuture<Void> second = new CompletableFuture<>();
+    CompletableFuture<Void> empty = new CompletableFuture<>();
+    queue.offer(Arrays.asList(message(1), message(2), message(3)), first);
+    queue.offer(Collections.singletonList(message(4)), second);
+    queue.offer(Collections.emptyList(), empty);
+    assertTrue(empty.isDone());
+    queue.poll(2, Long.MAX_VALUE);
+    queue.written(2);
+    assertFalse(first.isDone());
+    queue.poll(10, Long.MAX_VALUE);
+    queue.written(1);
+    assertTrue(first.isDone());
+    assertFalse(second.isDone());
+    try {
+      queue.written(2);
+      fail("More written than polled");
+    } catch (IllegalArgumentException e) {
+      // Expected
+    }
+    queue.written(1);
+    assertTrue(second.isDone());
+    assertFalse(second.isCompletedExceptionally());
+  }
+
+  @Test
+  public void testFail() throws IOException {
+    OutboundQueue queue = new OutboundQueue(OutboundLimits.UNLIMITED, null, null);
+    CompletableFuture<Void> polled = new CompletableFuture<>();
+    CompletableFuture<Void> queued = new CompletableFuture<>();
+    queue.offer(Collections.singletonList(message(1)), polled);
+    queue.offer(Arrays.asList(message(2), message(3)), queued);
+    queue.poll(1, Long.MAX_VALUE);
+    assertEquals(2, queue.fail(new IOException("Closed")).size());
+    assertTrue(polled.isCompletedExceptionally());
+    assertTrue(queued.isCompletedExceptionally());
+    assertEquals(0, queue.size());
+    assertEquals(0, queue.getBytes());
+  }
+
+  @Test
+  public void testClearCancelsFutures() throws IOException {
+    OutboundQueue queue = new OutboundQueue(OutboundLimits.UNLIMITED, null, null);
+    CompletableFuture<Void> polled = new CompletableFuture<>();
+    CompletableFuture<Void> queued = new CompletableFuture<>();
+    queue.offer(Collections.singletonList(message(1)), polled);
+    queue.offer(Arrays.asList(message(2), message(3)), queued);
+    queue.poll(1, Long.MAX_VALUE);
+    assertEquals(2, queue.clear().size());
+    assertTrue(queued.isCancelled());
+    assertFalse(polled.isDone());
+    assertEquals(0, queue.size());
+    assertEquals(0, queue.getBytes());
+    // The cleared messages are not counted as polled, so the polled message may still be acknowledged
+    try {
+      queue.written(2);
+      fail("Cleared messages acknowledged");
+    } catch (IllegalArgumentException e) {
+      // Expected
+    }
+    queue.written(1);
+    assertTrue(polled.isDone());
+    assertFalse(polled.isCompletedExceptionally());
+  }
+
+  @Test
+  public void testCoalescing() throws IOException {
+    OutboundQueue queue = new OutboundQueue(
+        OutboundLimits.UNLIMITED,
+        new CoalescingPolicy(Duration.ofSeconds(10), 3, 100),
+        null,
+        null
+    );
+    long now = System.nanoTime();
+    assertEquals(Long.MAX_VALUE, queue.getBatchDelayNanos(now));
+    queue.offer(Arrays.asList(message(10), message(20)));
+    // Waits for more messages
+    assertTrue(queue.getBatchDelayNanos(now) > 0);
+    assertTrue(queue.pollBatch(now).isEmpty());
+    // Until the maximum delay
+    long later = now + Duration.ofSeconds(11).toNanos();
+    assertEquals(0, queue.getBatchDelayNanos(later));
+    assertEquals(2, queue.pollBatch(later).size());
+    // Or maximum messages, limiting the batch size
+    queue.offer(Arrays.asList(message(1), message(1), message(1), message(1)));
+    assertEquals(0, queue.getBatchDelayNanos(now));
+    assertEquals(3, queue.pollBatch(now).size());
+    assertTrue(queue.pollBatch(now).isEmpty());
+    // Or flush
+    queue.flush();
+    assertEquals(1, queue.pollBatch(now).size());
+    queue.offer(Collections.singletonList(message(1)));
+    assertTrue(queue.pollBatch(now).isEmpty());
+    // Or maximum bytes
+    queue.offer(Collections.singletonList(message(99)));
+    assertEquals(2, queue.pollBatch(now).size());
+    OutboundStatistics stats = queue.getStatistics();
+    assertEquals(4, stats.getBatches());
+    assertEquals(8, stats.getMessages());
+    assertEquals(134, stats.getBytes());
+    assertEquals(3, stats.getMaxBatchMessages());
+    assertEquals(100, stats.getMaxBatchBytes());
+  }
+
+  @Test
+  public void testPriority() throws IOException {
+    OutboundQueue queue = new OutboundQueue(OutboundLimits.UNLIMITED, null, null);
+    ByteArrayMessage low = message(1);
+    ByteArrayMessage normal = message(2);
+    ByteArrayMessage high1 = message(3);
+    ByteArrayMessage high2 = message(4);
+    queue.offer(Collections.singletonList(low), MessagePriority.LOW, null, null);
+    queue.offer(Collections.singletonList(normal));
+    queue.offer(Arrays.asList(high1, high2), MessagePriority.HIGH, null, null);
+    assertEquals(Arrays.asList(high1, high2, normal, low), queue.poll(10, 100));
+  }
+
+  @Test
+  public void testExpiry() throws IOException {
+    OutboundQueue queue = new OutboundQueue(OutboundLimits.UNLIMITED, null, null);
+    List<Message> closed = new ArrayList<>();
+    class ClosingMessage extends ByteArrayMessage {
+      ClosingMessage() {
+        super(new byte[10]);
+      }
+
+      @Override
+      public void close() {
+        closed.add(this);
+      }
+    }
+    ClosingMessage expiring = new ClosingMessage();
+    ClosingMessage kept = new ClosingMessage();
+    CompletableFuture<Void> onWritten = new CompletableFuture<>();
+    queue.offer(Collections.singletonList(expiring), MessagePriority.HIGH, Duration.ofSeconds(1), onWritten);
+    queue.offer(Collections.singletonList(kept), MessagePriority.NORMAL, Duration.ofHours(1), null);
+    assertEquals(0, queue.expire(System.nanoTime()));
+    assertEquals(1, queue.expire(System.nanoTime() + Duration.ofSeconds(2).toNanos()));
+    assertEquals(1, closed.size());
+    assertSame(expiring, closed.get(0));
+    assertTrue(onWritten.isCompletedExceptionally());
+    assertEquals(1, queue.size());
+    assertEquals(10, queue.getBytes());
+    List<Message> polled = queue.poll(10, 100);
+    assertEquals(1, polled.size());
+    assertSame(kept, polled.get(0));
+    OutboundStatistics stats = queue.getStatistics();
+    assertEquals(1, stats.getDroppedMessages());
+    assertEquals(10, stats.getDroppedBytes());
+  }
+
+  @Test
+  public void testExpiringNotCompressed() throws IOException {
+    int[] encoded = new int[1];
+    class EncodingMessage extends StringMessage {
+      EncodingMessage() {
+        super("a".repeat(10000));
+      }
+
+      @Override
+      public ByteArray encodeAsByteArray() {
+        encoded[0]++;
+        return super.encodeAsByteArray();
+      }
+    }
+    CompressedMessage compressed = new CompressedMessage(new EncodingMessage(), 0);
+    // Counted by its uncompressed length, which is still limited
+    long bound = 2 + 10000;
+    assertEquals(bound, OutboundQueue.getEncodedByteArrayLengthBound(compressed));
+    assertEquals(bound, OutboundQueue.getEncodedByteArrayLengthBound(SharedMessage.share(compressed)));
+    OutboundQueue limited = new OutboundQueue(new OutboundLimits(100, bound - 1), null, null);
+    assertFalse(limited.offer(Collections.singletonList(compressed), MessagePriority.LOW, Duration.ofSeconds(1), null));
+    OutboundQueue queue = new OutboundQueue(OutboundLimits.UNLIMITED, null, null);
+    assertTrue(queue.offer(Collections.singletonList(compressed), MessagePriority.LOW, Duration.ofSeconds(1), null));
+    assertEquals(bound, queue.getBytes());
+    assertEquals(1, queue.expire(System.nanoTime() + Duration.ofSeconds(2).toNanos()));
+    assertEquals(0, encoded[0]);
+    assertEquals(0, queue.getBytes());
+    // Sized exactly when queued without a time to live
+    CompressedMessage sized = new CompressedMessage(new EncodingMessage(), 0);
+    assertTrue(queue.offer(Collections.singletonList(sized)));
+    assertEquals(1, encoded[0]);
+    assertEquals(sized.getEncodedByteArrayLength(), queue.getBytes());
+    assertTrue(queue.getBytes() < bound);
+    // Exact once compressed
+    assertEquals(sized.getEncodedByteArrayLength(), OutboundQueue.getEncodedByteArrayLengthBound(sized));
+  }
+
+  @Test
+  public void testInvalidLimits() {
+    try {
+      new OutboundLimits(10, 100, 20, 50, 5, 10);
+      fail("High watermark above maximum accepted");
+    } catch (IllegalArgumentException e) {
+      // Expected
+    }
+    try {
+      new OutboundLimits(10, 100, 5, 50, 5, 60);
+      fail("Low watermark above high watermark accepted");
+    } catch (IllegalArgumentException e) {
+      // Expected
+    }
+  }
+}
@@ -0,0 +1,236 @@
+/*
+ * ao-messaging-api - Asynchronous bidirectional messaging over various protocols API.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-messaging-api.
+ *
+ * ao-messaging-api is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-messaging-api is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-messaging-api.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoapps.messaging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.aoapps.security.Identifier;
+import com.aoapps.tempfiles.TempFileContext;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import org.junit.Test;
+
+/**
+ * Tests {@link SharedMessage}.
+ */
+public class SharedMessageTest {
+
+  @Test
+  public void testEncodedOnce() throws IOException {
+    AtomicInteger encodeCount = new AtomicInteger();
+    ByteArrayMessage message = new ByteArrayMessage(new byte[] {1, 2, 3}) {
+      @Override
+      public String encodeAsString() {
+        encodeCount.incrementAndGet();
+        return super.encodeAsString();
+      }
+    };
+    Message shared = SharedMessage.share(message);
+    assertSame(shared, SharedMessage.share(shared));
+    assertEquals(MessageType.BYTE_ARRAY, shared.getMessageType());
+    String encoded = shared.encodeAsString();
+    for (int i = 0; i < 10; i++) {
+      assertSame(encoded, shared.encodeAsString());
+    }
+    assertEquals(1, encodeCount.get());
+    assertEquals(message.encodeAsByteArray(), shared.encodeAsByteArray());
+  }
+
+  @Test
+  public void testMultiMessage() throws IOException {
+    MultiMessage message = new MultiMessage(Arrays.asList(
+        new StringMessage("Broadcast"),
+        new MultiMessage(Arrays.asList(new ByteArrayMessage(new byte[] {4, 5}), new StringMessage("")))
+    ));
+    Message shared = SharedMessage.share(message);
+    assertTrue(shared instanceof MultiMessage);
+    for (Message child : ((MultiMessage) shared).getMessages()) {
+      assertTrue(child instanceof SharedMessage || child instanceof MultiMessage);
+    }
+    try (TempFileContext tempFileContext = new TempFileContext()) {
+      for (WireFormat format : WireFormat.values()) {
+        MultiMessage sharedMulti = (MultiMessage) shared;
+        ByteArray encodedByteArray = sharedMulti.encodeAsByteArray(format);
+        assertEquals(message, MultiMessage.decode(encodedByteArray, format, () -> tempFileContext));
+        String encodedString = sharedMulti.encodeAsString(format);
+        assertEquals(message, MultiMessage.decode(encodedString, format, () -> tempFileContext));
+      }
+    }
+  }
+
+  private static void assertSharedEquals(Message message) {
+    Message shared = SharedMessage.share(message);
+    assertEquals(shared, message);
+    assertEquals(message, shared);
+    assertEquals(message.hashCode(), shared.hashCode());
+    assertEquals(shared, SharedMessage.share(message));
+  }
+
+  @Test
+  public void testEqualsOriginal() throws IOException {
+    assertSharedEquals(new ByteArrayMessage(new byte[] {1, 2, 3}));
+    assertSharedEquals(new StringMessage("Broadcast"));
+    assertSharedEquals(new CompressedMessage(new StringMessage("Broadcast"), 0));
+    assertSharedEquals(new MultiMessage(Arrays.asList(
+        new StringMessage("Broadcast"),
+        new MultiMessage(Collections.singletonList(new ByteArrayMessage(new byte[] {4, 5})))
+    )));
+    File file = File.createTempFile("SharedMessageTest.", null);
+    try {
+      Files.write(file.toPath(), "Broadcast".getBytes(StandardCharsets.UTF_8));
+      assertSharedEquals(new FileMessage(file));
+    } finally {
+      assertTrue(file.delete());
+    }
+    // Same content as a different type
+    Message shared = SharedMessage.share(new StringMessage("Broadcast"));
+    ByteArrayMessage bytes = new ByteArrayMessage("Broadcast".getBytes(StandardCharsets.UTF_8));
+    assertNotEquals(shared, bytes);
+    assertNotEquals(bytes, shared);
+    assertNotEquals(shared, SharedMessage.share(bytes));
+  }
+
+  @Test
+  public void testCloseNoOp() throws IOException {
+    AtomicInteger closeCount = new AtomicInteger();
+    StringMessage message = new StringMessage("Broadcast") {
+      @Override
+      public void close() {
+        closeCount.incrementAndGet();
+      }
+    };
+    Message shared = SharedMessage.share(message);
+    String encoded = shared.encodeAsString();
+    shared.close();
+    shared.close();
+    assertEquals(0, closeCount.get());
+    // Still usable by the owner and by other sockets
+    assertEquals("Broadcast", message.getMessage());
+    assertSame(encoded, shared.encodeAsString());
+    assertEquals(message.encodeAsByteArray(), shared.encodeAsByteArray());
+    message.close();
+    assertEquals(1, closeCount.get());
+  }
+
+  /**
+   * A context of a fixed set of sockets, only implementing the abstract methods of {@link SocketContext}.
+   */
+  private static class TestSocketContext implements SocketContext {
+
+    private final Map<Identifier, Socket> sockets = new LinkedHashMap<>();
+
+    private void add(Socket socket) {
+      sockets.put(socket.getId(), socket);
+    }
+
+    @Override
+    public Map<Identifier, ? extends Socket> getSockets() {
+      throw new AssertionError("Broadcast built a snapshot");
+    }
+
+    @Override
+    public Socket getSocket(Identifier id) {
+      return sockets.get(id);
+    }
+
+    @Override
+    public void forEachSocket(Consumer<? super Socket> action) {
+      sockets.values().forEach(action);
+    }
+
+    @Override
+    public void close() {
+      sockets.clear();
+    }
+
+    @Override
+    public boolean isClosed() {
+      return false;
+    }
+
+    @Override
+    public void addSocketContextListener(SocketContextListener listener, boolean synchronous) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean removeSocketContextListener(SocketContextListener listener) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  @Test
+  public void testBroadcast() throws IOException {
+    TestSocketContext context = new TestSocketContext();
+    SocketTest.TestSocket open1 = new SocketTest.TestSocket(context, OutboundLimits.UNLIMITED);
+    SocketTest.TestSocket open2 = new SocketTest.TestSocket(context, OutboundLimits.UNLIMITED);
+    SocketTest.TestSocket full = new SocketTest.TestSocket(context, new OutboundLimits(1, Long.MAX_VALUE));
+    assertTrue(full.trySendMessages(Collections.singletonList(new StringMessage("Queued"))));
+    SocketTest.TestSocket closed = new SocketTest.TestSocket(context, OutboundLimits.UNLIMITED);
+    closed.close();
+    SocketTest.TestSocket filtered = new SocketTest.TestSocket(context, OutboundLimits.UNLIMITED);
+    for (Socket socket : Arrays.asList(open1, open2, full, closed, filtered)) {
+      context.add(socket);
+    }
+    AtomicInteger encodeCount = new AtomicInteger();
+    StringMessage message = new StringMessage("Broadcast") {
+      @Override
+      public String encodeAsString() {
+        encodeCount.incrementAndGet();
+        return super.encodeAsString();
+      }
+    };
+    assertEquals(2, context.broadcast(message, socket -> socket != filtered));
+    assertEquals(1, full.getQueue().size());
+    assertEquals(0, closed.getQueue().size());
+    assertEquals(0, filtered.getQueue().size());
+    List<Message> sent1 = open1.getQueue().poll(10, Long.MAX_VALUE);
+    List<Message> sent2 = open2.getQueue().poll(10, Long.MAX_VALUE);
+    assertEquals(1, sent1.size());
+    assertEquals(1, sent2.size());
+    assertTrue(sent1.get(0) instanceof SharedMessage);
+    assertSame(sent1.get(0), sent2.get(0));
+    assertEquals(message, sent1.get(0));
+    // Encoded once for all sockets
+    assertEquals(sent1.get(0).encodeAsString(), sent2.get(0).encodeAsString());
+    assertEquals(1, encodeCount.get());
+    // No filter sends to all open sockets with room
+    assertEquals(3, context.broadcast(message, null));
+    assertEquals(1, full.getQueue().size());
+    assertEquals(1, filtered.getQueue().size());
+    assertEquals(0, closed.getQueue().size());
+  }
+}
@@ -0,0 +1,184 @@
+/*
+ * ao-messaging-api - Asynchronous bidirectional messaging over various protocols API.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-messaging-api.
+ *
+ * ao-messaging-api is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-messaging-api is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-messaging-api.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoapps.messaging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.aoapps.concurrent.Callback;
+import com.aoapps.security.Identifier;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.junit.Test;
+
+/**
+ * Tests the default methods of {@link Socket}.
+ */
+public class SocketTest {
+
+  /**
+   * A socket that queues its messages in an {@link OutboundQueue} and never writes them, only implementing the
+   * abstract methods of {@link Socket}.
+   */
+  static class TestSocket implements Socket {
+
+    private final SocketContext context;
+    private final Identifier id = new Identifier();
+    private final OutboundQueue queue;
+    private volatile boolean closed;
+
+    TestSocket(SocketContext context, OutboundLimits limits) {
+      this.context = context;
+      this.queue = new OutboundQueue(limits, null, null);
+    }
+
+    OutboundQueue getQueue() {
+      return queue;
+    }
+
+    @Override
+    public SocketContext getSocketContext() {
+      return context;
+    }
+
+    @Override
+    public Identifier getId() {
+      return id;
+    }
+
+    @Override
+    public long getConnectTime() {
+      return 0;
+    }
+
+    @Override
+    public Long getCloseTime() {
+      return closed ? 0L : null;
+    }
+
+    @Override
+    public String getProtocol() {
+      return "test";
+    }
+
+    @Override
+    public SocketAddress getConnectRemoteSocketAddress() {
+      return null;
+    }
+
+    @Override
+    public SocketAddress getRemoteSocketAddress() {
+      return null;
+    }
+
+    @Override
+    public void start(Callback<? super Socket> onStart, Callback<? super Throwable> onError) {
+      // Nothing to do
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+
+    @Override
+    public boolean isClosed() {
+      return closed;
+    }
+
+    @Override
+    public void addSocketListener(SocketListener listener, boolean synchronous) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean removeSocketListener(SocketListener listener) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void sendMessage(Message message) {
+      sendMessages(Collections.singletonList(message));
+    }
+
+    @Override
+    public void sendMessages(Collection<? extends Message> messages) {
+      if (!trySendMessages(messages)) {
+        throw new IllegalStateException("Outbound limits exceeded");
+      }
+    }
+
+    @Override
+    public boolean trySendMessages(Collection<? extends Message> messages) {
+      if (closed) {
+        throw new IllegalStateException("Closed");
+      }
+      try {
+        return queue.offer(messages);
+      } catch (IOException e) {
+        throw new AssertionError(e);
+      }
+    }
+  }
+
+  @Test
+  public void testSendMessagesAsyncDefault() throws IOException {
+    TestSocket socket = new TestSocket(null, new OutboundLimits(2, Long.MAX_VALUE));
+    CompletableFuture<Void> future = socket.sendMessagesAsync(Collections.singletonList(new StringMessage("a")));
+    // Complete once accepted
+    assertTrue(future.isDone());
+    assertFalse(future.isCompletedExceptionally());
+    assertEquals(1, socket.getQueue().size());
+    try {
+      socket.sendMessagesAsync(Arrays.asList(new StringMessage("b"), new StringMessage("c")));
+      fail("Outbound limits exceeded");
+    } catch (IllegalStateException e) {
+      // Expected
+    }
+  }
+
+  @Test
+  public void testSendMessagesCallbacksDefault() throws IOException {
+    TestSocket socket = new TestSocket(null, OutboundLimits.UNLIMITED);
+    List<Object> called = new ArrayList<>();
+    socket.sendMessages(Collections.singletonList(new StringMessage("a")), called::add, called::add);
+    assertEquals(Collections.singletonList(socket), called);
+    socket.close();
+    try {
+      socket.sendMessages(Collections.singletonList(new StringMessage("b")), called::add, called::add);
+      fail("Sent on closed socket");
+    } catch (IllegalStateException e) {
+      // Expected
+    }
+    assertEquals(Collections.singletonList(socket), called);
+  }
+}
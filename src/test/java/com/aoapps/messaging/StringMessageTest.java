@@ -0,0 +1,126 @@
+/*
+ * ao-messaging-api - Asynchronous bidirectional messaging over various protocols API.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of ao-messaging-api.
+ *
+ * ao-messaging-api is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * ao-messaging-api is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with ao-messaging-api.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoapps.messaging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.junit.Test;
+
+/**
+ * Tests {@link StringMessage}.
+ */
+public class StringMessageTest {
+
+  @Test
+  public void testEncodeAsByteArrayCached() {
+    String str = "Caché 😀";
+    StringMessage message = new StringMessage(str);
+    ByteArray encoded = message.encodeAsByteArray();
+    assertSame(encoded, message.encodeAsByteArray());
+    assertEquals(new ByteArray(str.getBytes(StandardCharsets.UTF_8)), encoded);
+    assertEquals(encoded.size, message.getEncodedByteArrayLength());
+  }
+
+  @Test
+  public void testDecodeLazyReturnsOriginalBytes() {
+    byte[] bytes = "Caché 😀".getBytes(StandardCharsets.UTF_8);
+    // A view into the middle of a larger array
+    byte[] padded = new byte[bytes.length + 4];
+    System.arraycopy(bytes, 0, padded, 2, bytes.length);
+    ByteArray original = new ByteArray(padded, 2, bytes.length);
+    StringMessage lazy = StringMessage.decodeLazy(original);
+    assertSame(original, lazy.encodeAsByteArray());
+    assertEquals(bytes.length, lazy.getEncodedByteArrayLength());
+    assertEquals("Caché 😀", lazy.getMessage());
+    // Still the original bytes after decoding the text
+    assertSame(original, lazy.encodeAsByteArray());
+  }
+
+  @Test
+  public void testDecodeLazyEqualsEager() {
+    for (String str : new String[] {"", "a", "Caché 😀", "\u0000\uFFFF"}) {
+      ByteArray encoded = new ByteArray(str.getBytes(StandardCharsets.UTF_8));
+      StringMessage eager = StringMessage.decode(encoded);
+      StringMessage lazy = StringMessage.decodeLazy(encoded);
+      StringMessage otherLazy = StringMessage.decodeLazy(new ByteArray(encoded.array.clone()));
+      // Compare before either is decoded
+      assertEquals(lazy, otherLazy);
+      assertEquals(otherLazy.hashCode(), lazy.hashCode());
+      assertEquals(eager, lazy);
+      assertEquals(lazy, eager);
+      assertEquals(eager.hashCode(), lazy.hashCode());
+      assertEquals(new StringMessage(str), lazy);
+      assertEquals(str.hashCode(), lazy.hashCode());
+    }
+    assertNotEquals(StringMessage.decodeLazy(new ByteArray(new byte[] {'a'})),
+        StringMessage.decodeLazy(new ByteArray(new byte[] {'b'})));
+  }
+
+  @Test
+  public void testDecodeLazyMalformed() {
+    // Truncated two-byte sequence, lone continuation byte, and overlong encoding
+    byte[] malformed = {'a', (byte) 0xC3, 'b', (byte) 0x80, (byte) 0xC0, (byte) 0xAF};
+    StringMessage eager = StringMessage.decode(new ByteArray(malformed));
+    StringMessage lazy = StringMessage.decodeLazy(new ByteArray(malformed));
+    assertEquals(new String(malformed, StandardCharsets.UTF_8), lazy.getMessage());
+    assertEquals(eager, lazy);
+    assertEquals(eager.hashCode(), lazy.hashCode());
+    // Forwarded unchanged
+    assertEquals(new ByteArray(malformed), lazy.encodeAsByteArray());
+    // Different malformed sequences decode to the same replacement, so are equal
+    byte[] otherMalformed = {'a', (byte) 0xC3, 'b', (byte) 0xBF, (byte) 0xC0, (byte) 0xAF};
+    StringMessage otherLazy = StringMessage.decodeLazy(new ByteArray(otherMalformed));
+    assertEquals(lazy, otherLazy);
+    assertEquals(lazy.hashCode(), otherLazy.hashCode());
+  }
+
+  @Test
+  public void testDecodeCopies() throws IOException {
+    byte[] bytes = "message".getBytes(StandardCharsets.UTF_8);
+    Message decoded = MessageType.STRING.decode(new ByteArray(bytes), () -> null);
+    Arrays.fill(bytes, (byte) 'x');
+    assertEquals(new StringMessage("message"), decoded);
+    assertEquals(new ByteArray("message".getBytes(StandardCharsets.UTF_8)), decoded.encodeAsByteArray());
+  }
+
+  @Test
+  public void testMultiMessageDecodeLazyKeepsStringBytes() throws IOException {
+    MultiMessage multi = new MultiMessage(Arrays.asList(new StringMessage("one"), new StringMessage("two")));
+    ByteArray encoded = multi.encodeAsByteArray();
+    for (Message message : MultiMessage.decodeLazy(encoded, () -> null).getMessages()) {
+      ByteArray bytes = message.encodeAsByteArray();
+      assertSame(encoded.array, bytes.array);
+    }
+    for (Message message : MultiMessage.decode(encoded, () -> null).getMessages()) {
+      ByteArray bytes = message.encodeAsByteArray();
+      assertNotSame(encoded.array, bytes.array);
+    }
+  }
+}